@@ -0,0 +1,476 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.data.dataset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.SequenceExample;
+import it.uniroma2.sag.kelp.data.example.SimpleExample;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.data.label.StringLabel;
+import it.uniroma2.sag.kelp.data.representation.Representation;
+import it.uniroma2.sag.kelp.data.representation.structure.StructureElement;
+import it.uniroma2.sag.kelp.data.representation.structure.StructureElementFactory;
+import it.uniroma2.sag.kelp.data.representation.tree.TreeRepresentation;
+import it.uniroma2.sag.kelp.data.representation.tree.node.TreeNode;
+import it.uniroma2.sag.kelp.data.representation.vector.SparseVector;
+
+/**
+ * This class describes the compact binary format KeLP can use as an
+ * alternative to the textual <code>.klp</code> format. A binary dataset
+ * avoids re-parsing the <code>|BV:..|EV|</code>, <code>|BT:..|ET|</code>
+ * markup every time a dataset is loaded: sparse vectors are stored
+ * pre-tokenized, trees are stored as the pre-order sequence of their nodes,
+ * each one with its id and number of children, while labels, representation
+ * names, feature names and node contents are interned in a dictionary. Thus,
+ * a tree is rebuilt without scanning its brackets, and the content of each
+ * node is read from the dictionary. The other representations, including
+ * the graphs, whose textual form is already a flat list of nodes and edges,
+ * are stored through the body produced by their
+ * <code>getTextFromData()</code>, so that only their own parser is invoked
+ * when loading.
+ * <p>
+ * A binary dataset block has the following layout:
+ * <ul>
+ * <li>header: magic number, format version and flags (reserved)</li>
+ * <li>records: one record per example, each one prefixed by its length</li>
+ * <li>dictionary: the interned strings</li>
+ * <li>index: the offset of every record</li>
+ * <li>footer: dictionary offset, index offset, number of examples and
+ * magic number</li>
+ * </ul>
+ * All the offsets are relative to the beginning of the block, so that a block
+ * can also be embedded in a bigger file.
+ *
+ * @see BinaryDatasetWriter
+ * @see BinaryDatasetReader
+ */
+public class BinaryDatasetFormat {
+
+	/**
+	 * The magic number identifying a binary dataset ("KLPB")
+	 */
+	public static final int MAGIC = 0x4B4C5042;
+
+	/**
+	 * The current version of the format. The version 2 introduced the binary
+	 * encoding of the trees; datasets of the version 1 can still be read.
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * The suggested extension for binary datasets
+	 */
+	public static final String FILE_EXTENSION = ".klpb";
+
+	/**
+	 * The size in bytes of the header: magic, version and flags
+	 */
+	public static final int HEADER_SIZE = 12;
+
+	/**
+	 * The size in bytes of the footer: dictionary offset, index offset, number
+	 * of examples and magic
+	 */
+	public static final int FOOTER_SIZE = 24;
+
+	static final byte SIMPLE_EXAMPLE = 0;
+	static final byte SEQUENCE_EXAMPLE = 1;
+
+	static final byte TEXT_ENCODING = 0;
+	static final byte SPARSE_VECTOR_ENCODING = 1;
+	static final byte TREE_ENCODING = 2;
+
+	static final String ENCODING = "UTF-8";
+
+	/**
+	 * Checks whether a file is a binary dataset, looking at its magic number
+	 *
+	 * @param file
+	 *            the file to be checked
+	 * @return <code>true</code> if the file starts with the binary dataset
+	 *         magic number, <code>false</code> otherwise
+	 * @throws IOException
+	 */
+	public static boolean isBinaryDataset(File file) throws IOException {
+		if (!file.isFile() || file.length() < HEADER_SIZE + FOOTER_SIZE) {
+			return false;
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			int magic = 0;
+			for (int i = 0; i < 4; i++) {
+				int b = in.read();
+				if (b < 0) {
+					return false;
+				}
+				magic = (magic << 8) | b;
+			}
+			return magic == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The dictionary of the strings interned in a binary dataset
+	 */
+	static class Dictionary {
+		private List<String> strings = new ArrayList<String>();
+		private Map<String, Integer> indices = new HashMap<String, Integer>();
+
+		int intern(String s) {
+			Integer index = indices.get(s);
+			if (index == null) {
+				index = strings.size();
+				strings.add(s);
+				indices.put(s, index);
+			}
+			return index;
+		}
+
+		String get(int index) {
+			return strings.get(index);
+		}
+
+		int size() {
+			return strings.size();
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(strings.size());
+			for (String s : strings) {
+				writeString(out, s);
+			}
+		}
+
+		static Dictionary read(ByteBuffer buffer) throws UnsupportedEncodingException {
+			Dictionary dictionary = new Dictionary();
+			int size = buffer.getInt();
+			for (int i = 0; i < size; i++) {
+				dictionary.intern(readString(buffer));
+			}
+			return dictionary;
+		}
+	}
+
+	/**
+	 * Encodes examples into record payloads, interning strings in a
+	 * dictionary
+	 */
+	static class Encoder {
+		private Dictionary dictionary;
+
+		Encoder(Dictionary dictionary) {
+			this.dictionary = dictionary;
+		}
+
+		void encode(Example example, DataOutputStream out) throws IOException {
+			if (example instanceof SequenceExample) {
+				SequenceExample sequence = (SequenceExample) example;
+				out.writeByte(SEQUENCE_EXAMPLE);
+				out.writeInt(sequence.getLenght());
+				for (int i = 0; i < sequence.getLenght(); i++) {
+					encodeSimpleExample(sequence.getExample(i), out);
+				}
+			} else {
+				out.writeByte(SIMPLE_EXAMPLE);
+				encodeSimpleExample(example, out);
+			}
+		}
+
+		private void encodeSimpleExample(Example example, DataOutputStream out) throws IOException {
+			List<Label> classificationLabels = new ArrayList<Label>();
+			for (Label label : example.getClassificationLabels()) {
+				classificationLabels.add(label);
+			}
+			out.writeInt(classificationLabels.size());
+			for (Label label : classificationLabels) {
+				out.writeInt(dictionary.intern(label.toString()));
+			}
+
+			List<Label> regressionProperties = new ArrayList<Label>();
+			for (Label property : example.getRegressionProperties()) {
+				regressionProperties.add(property);
+			}
+			out.writeInt(regressionProperties.size());
+			for (Label property : regressionProperties) {
+				out.writeInt(dictionary.intern(property.toString()));
+				out.writeFloat(example.getRegressionValue(property));
+			}
+
+			Map<String, Representation> representations = example.getRepresentations();
+			out.writeInt(representations.size());
+			for (Map.Entry<String, Representation> entry : representations.entrySet()) {
+				Representation representation = entry.getValue();
+				out.writeInt(dictionary.intern(entry.getKey()));
+				out.writeInt(dictionary.intern(representation.getClass().getName()));
+				if (representation instanceof SparseVector) {
+					out.writeByte(SPARSE_VECTOR_ENCODING);
+					encodeSparseVector((SparseVector) representation, out);
+				} else if (representation.getClass() == TreeRepresentation.class) {
+					out.writeByte(TREE_ENCODING);
+					encodeTree((TreeRepresentation) representation, out);
+				} else {
+					out.writeByte(TEXT_ENCODING);
+					writeString(out, representation.getTextFromData());
+				}
+			}
+		}
+
+		private void encodeSparseVector(SparseVector vector, DataOutputStream out) throws IOException {
+			Map<?, ? extends Number> features = vector.getActiveFeatures();
+			out.writeInt(features.size());
+			for (Map.Entry<?, ? extends Number> feature : features.entrySet()) {
+				out.writeInt(dictionary.intern(String.valueOf(feature.getKey())));
+				out.writeFloat(feature.getValue().floatValue());
+			}
+		}
+
+		/**
+		 * Writes the nodes of a tree in pre-order, each one as its id, the
+		 * dictionary index of its content and its number of children. The
+		 * nodes are prefixed by their size in bytes, so that the tree can be
+		 * skipped as a textual body.
+		 */
+		private void encodeTree(TreeRepresentation tree, DataOutputStream out) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream nodes = new DataOutputStream(bytes);
+			StructureElementFactory factory = StructureElementFactory.getInstance();
+			int numberOfNodes = 0;
+			ArrayDeque<TreeNode> pending = new ArrayDeque<TreeNode>();
+			pending.push(tree.getRoot());
+			while (!pending.isEmpty()) {
+				TreeNode node = pending.pop();
+				List<TreeNode> children = node.getChildren();
+				nodes.writeInt(node.getId());
+				nodes.writeInt(dictionary.intern(factory.getTextualRepresentation(node.getContent())));
+				nodes.writeInt(children.size());
+				for (int i = children.size() - 1; i >= 0; i--) {
+					pending.push(children.get(i));
+				}
+				numberOfNodes++;
+			}
+			nodes.flush();
+			out.writeInt(bytes.size() + 4);
+			out.writeInt(numberOfNodes);
+			bytes.writeTo(out);
+		}
+	}
+
+	/**
+	 * Decodes record payloads into examples, resolving the strings through a
+	 * dictionary. A decoder can be shared among threads, as long as each
+	 * thread decodes its own buffer.
+	 */
+	static class Decoder {
+		private Dictionary dictionary;
+		private Map<Integer, Label> labels = new ConcurrentHashMap<Integer, Label>();
+		private Map<Integer, Class<?>> representationClasses = new ConcurrentHashMap<Integer, Class<?>>();
+
+		Decoder(Dictionary dictionary) {
+			this.dictionary = dictionary;
+		}
+
+		Example decode(ByteBuffer buffer) throws IOException {
+			byte kind = buffer.get();
+			if (kind == SEQUENCE_EXAMPLE) {
+				int length = buffer.getInt();
+				List<Example> items = new ArrayList<Example>(length);
+				for (int i = 0; i < length; i++) {
+					items.add(decodeSimpleExample(buffer));
+				}
+				return new SequenceExample(items);
+			}
+			if (kind != SIMPLE_EXAMPLE) {
+				throw new IOException("Unknown example kind " + kind);
+			}
+			return decodeSimpleExample(buffer);
+		}
+
+		SimpleExample decodeSimpleExample(ByteBuffer buffer) throws IOException {
+			SimpleExample example = new SimpleExample();
+			decodeLabels(buffer, example);
+			int numberOfRepresentations = buffer.getInt();
+			for (int i = 0; i < numberOfRepresentations; i++) {
+				String name = decodeRepresentationName(buffer);
+				example.addRepresentation(name, decodeRepresentation(buffer));
+			}
+			return example;
+		}
+
+		/**
+		 * Reads the labels and the regression values of an example, leaving
+		 * the buffer positioned on its representations
+		 */
+		void decodeLabels(ByteBuffer buffer, Example example) {
+			int numberOfLabels = buffer.getInt();
+			for (int i = 0; i < numberOfLabels; i++) {
+				example.addLabel(getLabel(buffer.getInt()));
+			}
+			int numberOfProperties = buffer.getInt();
+			for (int i = 0; i < numberOfProperties; i++) {
+				Label property = getLabel(buffer.getInt());
+				example.setRegressionValue(property, buffer.getFloat());
+			}
+		}
+
+		/**
+		 * Reads the name of the next representation, leaving the buffer
+		 * positioned on the representation body
+		 */
+		String decodeRepresentationName(ByteBuffer buffer) {
+			return dictionary.get(buffer.getInt());
+		}
+
+		/**
+		 * Skips a representation body without decoding it
+		 */
+		void skipRepresentation(ByteBuffer buffer) {
+			buffer.getInt();
+			byte encoding = buffer.get();
+			int size = buffer.getInt();
+			if (encoding == SPARSE_VECTOR_ENCODING) {
+				buffer.position(buffer.position() + size * 8);
+			} else {
+				buffer.position(buffer.position() + size);
+			}
+		}
+
+		/**
+		 * Decodes a representation body
+		 */
+		Representation decodeRepresentation(ByteBuffer buffer) throws IOException {
+			Class<?> representationClass = getRepresentationClass(buffer.getInt());
+			byte encoding = buffer.get();
+			try {
+				if (encoding == SPARSE_VECTOR_ENCODING) {
+					SparseVector vector = (SparseVector) representationClass.newInstance();
+					int size = buffer.getInt();
+					for (int i = 0; i < size; i++) {
+						String feature = dictionary.get(buffer.getInt());
+						vector.setFeatureValue(feature, buffer.getFloat());
+					}
+					return vector;
+				}
+				if (encoding == TREE_ENCODING) {
+					buffer.getInt();
+					return decodeTree(buffer);
+				}
+				Representation representation = (Representation) representationClass.newInstance();
+				representation.setDataFromText(readString(buffer));
+				return representation;
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException("Unable to decode a representation of type " + representationClass.getName()
+						+ ": " + e.getMessage());
+			}
+		}
+
+		/**
+		 * Rebuilds a tree from the pre-order sequence of its nodes
+		 */
+		private TreeRepresentation decodeTree(ByteBuffer buffer) throws Exception {
+			StructureElementFactory factory = StructureElementFactory.getInstance();
+			int numberOfNodes = buffer.getInt();
+			// the ancestors still missing some children, with their number
+			TreeNode[] ancestors = new TreeNode[numberOfNodes];
+			int[] missingChildren = new int[numberOfNodes];
+			int depth = 0;
+			TreeNode root = null;
+			for (int i = 0; i < numberOfNodes; i++) {
+				int id = buffer.getInt();
+				StructureElement content = factory.parseStructureElement(dictionary.get(buffer.getInt()));
+				int numberOfChildren = buffer.getInt();
+				TreeNode father = depth == 0 ? null : ancestors[depth - 1];
+				TreeNode node = new TreeNode(id, content, father);
+				if (father == null) {
+					root = node;
+				} else {
+					father.getChildren().add(node);
+					missingChildren[depth - 1]--;
+				}
+				if (numberOfChildren > 0) {
+					ancestors[depth] = node;
+					missingChildren[depth] = numberOfChildren;
+					depth++;
+				}
+				while (depth > 0 && missingChildren[depth - 1] == 0) {
+					depth--;
+				}
+			}
+			return new TreeRepresentation(root);
+		}
+
+		private Label getLabel(int index) {
+			Label label = labels.get(index);
+			if (label == null) {
+				label = new StringLabel(dictionary.get(index));
+				labels.put(index, label);
+			}
+			return label;
+		}
+
+		private Class<?> getRepresentationClass(int index) throws IOException {
+			Class<?> representationClass = representationClasses.get(index);
+			if (representationClass == null) {
+				String className = dictionary.get(index);
+				try {
+					representationClass = Class.forName(className);
+				} catch (ClassNotFoundException e) {
+					throw new IOException("Unknown representation class " + className);
+				}
+				representationClasses.put(index, representationClass);
+			}
+			return representationClass;
+		}
+	}
+
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(ENCODING);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(ByteBuffer buffer) throws UnsupportedEncodingException {
+		int length = buffer.getInt();
+		String s;
+		if (buffer.hasArray()) {
+			s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, ENCODING);
+			buffer.position(buffer.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			s = new String(bytes, ENCODING);
+		}
+		return s;
+	}
+}
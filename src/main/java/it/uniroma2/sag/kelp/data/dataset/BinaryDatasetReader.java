@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.data.dataset;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import it.uniroma2.sag.kelp.data.dataset.BinaryDatasetFormat.Decoder;
+import it.uniroma2.sag.kelp.data.dataset.BinaryDatasetFormat.Dictionary;
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * Sequentially reads the examples of a binary dataset written by a
+ * {@link BinaryDatasetWriter}.
+ */
+public class BinaryDatasetReader {
+
+	private DataInputStream in;
+	private Decoder decoder;
+	private int numberOfExamples;
+	private int readExamples = 0;
+	private byte[] record = new byte[1024];
+
+	/**
+	 * Opens a binary dataset
+	 *
+	 * @param filePath
+	 *            the path of the binary dataset
+	 * @throws IOException
+	 */
+	public BinaryDatasetReader(String filePath) throws IOException {
+		this(new File(filePath));
+	}
+
+	/**
+	 * Opens a binary dataset
+	 *
+	 * @param file
+	 *            the binary dataset
+	 * @throws IOException
+	 */
+	public BinaryDatasetReader(File file) throws IOException {
+		this(file, 0, file.length());
+	}
+
+	/**
+	 * Opens a binary dataset block embedded in a bigger file, e.g. the support
+	 * vectors of a binary model
+	 *
+	 * @param file
+	 *            the file containing the block
+	 * @param blockStart
+	 *            the position of the block in the file
+	 * @param blockLength
+	 *            the length in bytes of the block
+	 * @throws IOException
+	 */
+	public BinaryDatasetReader(File file, long blockStart, long blockLength) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		long dictionaryOffset;
+		long indexOffset;
+		try {
+			raf.seek(blockStart);
+			checkMagic(raf.readInt());
+			int version = raf.readInt();
+			if (version > BinaryDatasetFormat.VERSION) {
+				throw new IOException("Unsupported binary dataset version " + version);
+			}
+
+			raf.seek(blockStart + blockLength - BinaryDatasetFormat.FOOTER_SIZE);
+			dictionaryOffset = raf.readLong();
+			indexOffset = raf.readLong();
+			numberOfExamples = raf.readInt();
+			checkMagic(raf.readInt());
+
+			byte[] dictionaryBytes = new byte[(int) (indexOffset - dictionaryOffset)];
+			raf.seek(blockStart + dictionaryOffset);
+			raf.readFully(dictionaryBytes);
+			decoder = new Decoder(Dictionary.read(ByteBuffer.wrap(dictionaryBytes)));
+		} finally {
+			raf.close();
+		}
+
+		FileInputStream fileIn = new FileInputStream(file);
+		fileIn.getChannel().position(blockStart + BinaryDatasetFormat.HEADER_SIZE);
+		in = new DataInputStream(new BufferedInputStream(fileIn, 1 << 16));
+	}
+
+	private static void checkMagic(int magic) throws IOException {
+		if (magic != BinaryDatasetFormat.MAGIC) {
+			throw new IOException("The file is not a KeLP binary dataset");
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if there are examples that have not been read
+	 *         yet
+	 */
+	public boolean hasNext() {
+		return readExamples < numberOfExamples;
+	}
+
+	/**
+	 * Reads the next example
+	 *
+	 * @return the next example, or <code>null</code> if all the examples have
+	 *         been read
+	 * @throws IOException
+	 */
+	public Example readNextExample() throws IOException {
+		if (!hasNext()) {
+			return null;
+		}
+		int length = in.readInt();
+		if (length > record.length) {
+			record = new byte[Math.max(length, record.length * 2)];
+		}
+		in.readFully(record, 0, length);
+		readExamples++;
+		return decoder.decode(ByteBuffer.wrap(record, 0, length));
+	}
+
+	/**
+	 * @return the number of examples stored in the binary dataset
+	 */
+	public int getNumberOfExamples() {
+		return numberOfExamples;
+	}
+
+	/**
+	 * Closes the reader
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.data.dataset;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import it.uniroma2.sag.kelp.data.dataset.BinaryDatasetFormat.Dictionary;
+import it.uniroma2.sag.kelp.data.dataset.BinaryDatasetFormat.Encoder;
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * Writes examples in the binary dataset format described in
+ * {@link BinaryDatasetFormat}. Examples are written one at a time, so a
+ * dataset can be converted without keeping it in memory.
+ * <p>
+ * The writer can also write a binary block inside a bigger stream: in this
+ * case {@link #finish()} completes the block without closing the underlying
+ * stream.
+ */
+public class BinaryDatasetWriter {
+
+	private DataOutputStream out;
+	private boolean closeStream;
+	private long position;
+	private boolean finished = false;
+
+	private Dictionary dictionary = new Dictionary();
+	private Encoder encoder = new Encoder(dictionary);
+	private ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+	private DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+
+	private long[] offsets = new long[1024];
+	private int numberOfExamples = 0;
+
+	/**
+	 * Creates a writer on a new file
+	 *
+	 * @param outputFilePath
+	 *            the path of the binary dataset to be written
+	 * @throws IOException
+	 */
+	public BinaryDatasetWriter(String outputFilePath) throws IOException {
+		this(new FileOutputStream(outputFilePath), true);
+	}
+
+	/**
+	 * Creates a writer that writes a binary block on a stream. The stream is
+	 * not closed when the block is completed.
+	 *
+	 * @param outputStream
+	 *            the stream the binary block is written on
+	 * @throws IOException
+	 */
+	public BinaryDatasetWriter(OutputStream outputStream) throws IOException {
+		this(outputStream, false);
+	}
+
+	private BinaryDatasetWriter(OutputStream outputStream, boolean closeStream) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+		this.closeStream = closeStream;
+		out.writeInt(BinaryDatasetFormat.MAGIC);
+		out.writeInt(BinaryDatasetFormat.VERSION);
+		out.writeInt(0);
+		position = BinaryDatasetFormat.HEADER_SIZE;
+	}
+
+	/**
+	 * Appends an example to the binary dataset
+	 *
+	 * @param example
+	 *            the example to be written
+	 * @throws IOException
+	 */
+	public void write(Example example) throws IOException {
+		if (finished) {
+			throw new IllegalStateException("The binary dataset has already been completed");
+		}
+		recordBuffer.reset();
+		encoder.encode(example, recordOut);
+		recordOut.flush();
+
+		if (numberOfExamples == offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[numberOfExamples++] = position;
+
+		out.writeInt(recordBuffer.size());
+		recordBuffer.writeTo(out);
+		position += 4 + recordBuffer.size();
+	}
+
+	/**
+	 * Appends all the examples of a dataset to the binary dataset
+	 *
+	 * @param dataset
+	 *            the dataset to be written
+	 * @throws IOException
+	 */
+	public void write(Dataset dataset) throws IOException {
+		for (Example example : dataset.getExamples()) {
+			write(example);
+		}
+	}
+
+	/**
+	 * Completes the binary block writing the dictionary, the index and the
+	 * footer. The underlying stream is flushed, but not closed.
+	 *
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		finished = true;
+
+		long dictionaryOffset = position;
+		ByteArrayOutputStream dictionaryBuffer = new ByteArrayOutputStream();
+		DataOutputStream dictionaryOut = new DataOutputStream(dictionaryBuffer);
+		dictionary.write(dictionaryOut);
+		dictionaryOut.flush();
+		dictionaryBuffer.writeTo(out);
+		position += dictionaryBuffer.size();
+
+		long indexOffset = position;
+		for (int i = 0; i < numberOfExamples; i++) {
+			out.writeLong(offsets[i]);
+		}
+		position += 8L * numberOfExamples;
+
+		out.writeLong(dictionaryOffset);
+		out.writeLong(indexOffset);
+		out.writeInt(numberOfExamples);
+		out.writeInt(BinaryDatasetFormat.MAGIC);
+		position += BinaryDatasetFormat.FOOTER_SIZE;
+		out.flush();
+	}
+
+	/**
+	 * Completes the binary block and, if the writer has been created on a
+	 * file, closes it
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		finish();
+		if (closeStream) {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return the number of examples written so far
+	 */
+	public int getNumberOfExamples() {
+		return numberOfExamples;
+	}
+
+	/**
+	 * @return the number of bytes written so far
+	 */
+	public long getSize() {
+		return position;
+	}
+}
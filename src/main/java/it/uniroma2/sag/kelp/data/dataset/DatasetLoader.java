@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.data.dataset;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFactory;
+import it.uniroma2.sag.kelp.data.example.SimpleExample;
+import it.uniroma2.sag.kelp.utils.DaemonThreadFactory;
+
+/**
+ * Utility methods to populate datasets from files, transparently handling
+ * both the textual <code>.klp</code> format (optionally gzipped) and the
+ * binary format described in {@link BinaryDatasetFormat}.
+ */
+public class DatasetLoader {
+
+	/**
+	 * The number of lines parsed by a single task during a parallel
+	 * population
+	 */
+	private static final int CHUNK_SIZE = 512;
+
+	/**
+	 * Populates a dataset with the examples contained in a file. The format
+	 * of the file is automatically detected: binary datasets are decoded
+	 * through a {@link BinaryDatasetReader}, while any other file is parsed
+	 * by the <code>populate</code> method of the dataset itself.
+	 *
+	 * @param dataset
+	 *            the dataset to be populated
+	 * @param datasetFilePath
+	 *            the path of the dataset file
+	 * @throws Exception
+	 */
+	public static void populate(SimpleDataset dataset, String datasetFilePath) throws Exception {
+		File file = new File(datasetFilePath);
+		if (!BinaryDatasetFormat.isBinaryDataset(file)) {
+			dataset.populate(datasetFilePath);
+			return;
+		}
+		BinaryDatasetReader reader = new BinaryDatasetReader(file);
+		try {
+			while (reader.hasNext()) {
+				dataset.addExample(reader.readNextExample());
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Populates a dataset with the examples contained in a textual file,
+	 * parsing them with multiple threads. The lines are read in chunks by the
+	 * calling thread, while a pool of workers parses them into examples,
+	 * which are added to the dataset in their original order.
+	 * <p>
+	 * The ids of the examples are the same that a sequential population would
+	 * assign, so that the kernel caches indexed by example ids keep working.
+	 * This only holds for simple examples: the examples containing other
+	 * examples, e.g. the <code>ExamplePair</code>s, would receive their inner
+	 * ids in the order the workers create them. Therefore, when the first
+	 * example of the file is not a <code>SimpleExample</code> the file is
+	 * parsed sequentially, and when a later one is not, the parsed examples
+	 * are discarded and the file is parsed again sequentially (the ids then
+	 * follow the file order, after the ones consumed by the discarded
+	 * examples). Binary datasets and sequence datasets, whose examples span
+	 * multiple lines, are populated sequentially as well.
+	 *
+	 * @param dataset
+	 *            the dataset to be populated
+	 * @param datasetFilePath
+	 *            the path of the dataset file
+	 * @param parallelism
+	 *            the number of parsing threads
+	 * @throws Exception
+	 */
+	public static void populate(SimpleDataset dataset, String datasetFilePath, int parallelism) throws Exception {
+		if (parallelism <= 1 || dataset instanceof SequenceDataset
+				|| BinaryDatasetFormat.isBinaryDataset(new File(datasetFilePath))) {
+			populate(dataset, datasetFilePath);
+			return;
+		}
+
+		List<Example> examples = new ArrayList<Example>();
+		BufferedReader in = openTextDataset(datasetFilePath);
+		ExecutorService executor = null;
+		try {
+			// the first example is parsed by the calling thread: the files of
+			// examples containing other examples are parsed sequentially
+			String line = readNonEmptyLine(in);
+			if (line == null) {
+				return;
+			}
+			Example first = ExampleFactory.parseExample(line);
+			if (!(first instanceof SimpleExample)) {
+				dataset.addExample(first);
+				while ((line = readNonEmptyLine(in)) != null) {
+					dataset.addExample(ExampleFactory.parseExample(line));
+				}
+				return;
+			}
+			examples.add(first);
+
+			executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("kelp-dataset-parser"));
+			LinkedList<Future<List<Example>>> pending = new LinkedList<Future<List<Example>>>();
+			List<String> chunk = new ArrayList<String>(CHUNK_SIZE);
+			while ((line = readNonEmptyLine(in)) != null) {
+				chunk.add(line);
+				if (chunk.size() == CHUNK_SIZE) {
+					pending.add(executor.submit(new ParsingTask(chunk)));
+					chunk = new ArrayList<String>(CHUNK_SIZE);
+					// bounds the number of parsed examples waiting to be collected
+					if (pending.size() > 2 * parallelism) {
+						collect(pending.removeFirst(), examples);
+					}
+				}
+			}
+			if (!chunk.isEmpty()) {
+				pending.add(executor.submit(new ParsingTask(chunk)));
+			}
+			while (!pending.isEmpty()) {
+				collect(pending.removeFirst(), examples);
+			}
+		} finally {
+			in.close();
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+
+		for (Example example : examples) {
+			if (!(example instanceof SimpleExample)) {
+				populate(dataset, datasetFilePath);
+				return;
+			}
+		}
+
+		// the examples received their ids in the order the workers created
+		// them: the same ids are reassigned following the file order
+		long[] ids = new long[examples.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = examples.get(i).getId();
+		}
+		Arrays.sort(ids);
+		for (int i = 0; i < ids.length; i++) {
+			Example example = examples.get(i);
+			example.setId(ids[i]);
+			dataset.addExample(example);
+		}
+	}
+
+	/**
+	 * @return the next line that is not blank, or <code>null</code> at the
+	 *         end of the stream
+	 */
+	private static String readNonEmptyLine(BufferedReader in) throws IOException {
+		String line = in.readLine();
+		while (line != null && line.trim().length() == 0) {
+			line = in.readLine();
+		}
+		return line;
+	}
+
+	private static void collect(Future<List<Example>> future, List<Example> examples) throws Exception {
+		try {
+			examples.addAll(future.get());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Parses a chunk of lines of a textual dataset
+	 */
+	private static class ParsingTask implements Callable<List<Example>> {
+		private List<String> lines;
+
+		public ParsingTask(List<String> lines) {
+			this.lines = lines;
+		}
+
+		@Override
+		public List<Example> call() throws Exception {
+			List<Example> examples = new ArrayList<Example>(lines.size());
+			for (String line : lines) {
+				examples.add(ExampleFactory.parseExample(line));
+			}
+			return examples;
+		}
+	}
+
+	/**
+	 * Converts a textual dataset into the binary format.
+	 * <p>
+	 * Datasets of simple examples are converted one line at a time, without
+	 * keeping them in memory. Sequence datasets, whose examples span multiple
+	 * lines, are loaded through a {@link SequenceDataset} before being
+	 * written.
+	 *
+	 * @param inputFilePath
+	 *            the path of the textual dataset
+	 * @param outputFilePath
+	 *            the path of the binary dataset to be written
+	 * @param sequences
+	 *            whether the input file contains sequence examples
+	 * @return the number of converted examples
+	 * @throws Exception
+	 */
+	public static int convertToBinary(String inputFilePath, String outputFilePath, boolean sequences)
+			throws Exception {
+		BinaryDatasetWriter writer = new BinaryDatasetWriter(outputFilePath);
+		try {
+			if (sequences) {
+				SequenceDataset dataset = new SequenceDataset();
+				dataset.populate(inputFilePath);
+				writer.write(dataset);
+			} else {
+				BufferedReader in = openTextDataset(inputFilePath);
+				try {
+					String line;
+					while ((line = in.readLine()) != null) {
+						if (line.trim().length() == 0) {
+							continue;
+						}
+						Example example = ExampleFactory.parseExample(line);
+						writer.write(example);
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			writer.close();
+		}
+		return writer.getNumberOfExamples();
+	}
+
+	/**
+	 * Opens a textual dataset, decompressing it when its name ends with
+	 * <code>.gz</code>
+	 *
+	 * @param datasetFilePath
+	 *            the path of the textual dataset
+	 * @return a reader over the lines of the dataset
+	 * @throws IOException
+	 */
+	public static BufferedReader openTextDataset(String datasetFilePath) throws IOException {
+		InputStream in = new FileInputStream(datasetFilePath);
+		if (datasetFilePath.endsWith(".gz")) {
+			in = new GZIPInputStream(in, 1 << 16);
+		}
+		return new BufferedReader(new InputStreamReader(in, BinaryDatasetFormat.ENCODING), 1 << 16);
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.data.dataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import it.uniroma2.sag.kelp.data.dataset.BinaryDatasetFormat.Decoder;
+import it.uniroma2.sag.kelp.data.dataset.BinaryDatasetFormat.Dictionary;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.manipulator.Manipulator;
+import it.uniroma2.sag.kelp.data.representation.Representation;
+
+/**
+ * A dataset backed by a memory-mapped binary dataset (see
+ * {@link BinaryDatasetFormat}).
+ * <p>
+ * When the dataset is opened, only the labels of the examples are decoded:
+ * each example is a lightweight {@link MappedExample} that materializes a
+ * representation only when it is requested, e.g. the first time a kernel
+ * operates on it. Materialized representations are softly referenced, so the
+ * JVM can reclaim them under memory pressure and they are decoded again from
+ * the mapped file when needed. This allows to learn over datasets whose
+ * representations do not fit in the heap.
+ * <p>
+ * Being a <code>SimpleDataset</code>, a <code>MappedDataset</code> can be
+ * directly provided to any learning algorithm, as well as to
+ * <code>ExperimentUtils</code>. Only datasets of simple examples are
+ * supported.
+ * <p>
+ * NOTE: the representations modified by a {@link Manipulator} applied through
+ * {@link #manipulate(Manipulator)} are kept in memory, otherwise the
+ * modifications would be lost when a representation is reclaimed.
+ */
+public class MappedDataset extends SimpleDataset {
+
+	private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+	private transient ByteBuffer[] segments;
+	private transient long[] segmentStarts;
+	private transient long[] recordOffsets;
+	private transient Decoder decoder;
+
+	/**
+	 * Opens a binary dataset
+	 *
+	 * @param filePath
+	 *            the path of the binary dataset
+	 * @throws IOException
+	 */
+	public MappedDataset(String filePath) throws IOException {
+		this(new File(filePath), 0, new File(filePath).length());
+	}
+
+	/**
+	 * Opens a binary dataset block embedded in a bigger file
+	 *
+	 * @param file
+	 *            the file containing the binary dataset block
+	 * @param blockStart
+	 *            the position of the block in the file
+	 * @param blockLength
+	 *            the length in bytes of the block
+	 * @throws IOException
+	 */
+	public MappedDataset(File file, long blockStart, long blockLength) throws IOException {
+		super();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		long dictionaryOffset;
+		try {
+			FileChannel channel = raf.getChannel();
+
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, blockStart, BinaryDatasetFormat.HEADER_SIZE);
+			checkMagic(header.getInt());
+			int version = header.getInt();
+			if (version > BinaryDatasetFormat.VERSION) {
+				throw new IOException("Unsupported binary dataset version " + version);
+			}
+
+			ByteBuffer footer = channel.map(MapMode.READ_ONLY,
+					blockStart + blockLength - BinaryDatasetFormat.FOOTER_SIZE, BinaryDatasetFormat.FOOTER_SIZE);
+			dictionaryOffset = footer.getLong();
+			long indexOffset = footer.getLong();
+			int numberOfExamples = footer.getInt();
+			checkMagic(footer.getInt());
+
+			decoder = new Decoder(Dictionary.read(
+					channel.map(MapMode.READ_ONLY, blockStart + dictionaryOffset, indexOffset - dictionaryOffset)));
+
+			recordOffsets = new long[numberOfExamples];
+			ByteBuffer index = channel.map(MapMode.READ_ONLY, blockStart + indexOffset, 8L * numberOfExamples);
+			for (int i = 0; i < numberOfExamples; i++) {
+				recordOffsets[i] = index.getLong();
+			}
+
+			mapSegments(channel, blockStart, dictionaryOffset);
+		} finally {
+			// the mappings remain valid after the channel is closed
+			raf.close();
+		}
+
+		for (int i = 0; i < recordOffsets.length; i++) {
+			this.addExample(createExample(i));
+		}
+	}
+
+	private static void checkMagic(int magic) throws IOException {
+		if (magic != BinaryDatasetFormat.MAGIC) {
+			throw new IOException("The file is not a KeLP binary dataset");
+		}
+	}
+
+	/**
+	 * Maps the records region in segments smaller than 2GB, each one starting
+	 * at a record boundary
+	 */
+	private void mapSegments(FileChannel channel, long blockStart, long recordsEnd) throws IOException {
+		List<ByteBuffer> segmentList = new ArrayList<ByteBuffer>();
+		List<Long> startList = new ArrayList<Long>();
+		if (recordOffsets.length > 0) {
+			long segmentStart = recordOffsets[0];
+			for (int i = 1; i <= recordOffsets.length; i++) {
+				long recordEnd = i < recordOffsets.length ? recordOffsets[i] : recordsEnd;
+				if (recordEnd - segmentStart > MAX_SEGMENT_SIZE) {
+					// the record i-1 does not fit in the current segment
+					long segmentEnd = recordOffsets[i - 1];
+					segmentList.add(channel.map(MapMode.READ_ONLY, blockStart + segmentStart, segmentEnd - segmentStart));
+					startList.add(segmentStart);
+					segmentStart = segmentEnd;
+				}
+			}
+			segmentList.add(channel.map(MapMode.READ_ONLY, blockStart + segmentStart, recordsEnd - segmentStart));
+			startList.add(segmentStart);
+		}
+		segments = segmentList.toArray(new ByteBuffer[segmentList.size()]);
+		segmentStarts = new long[startList.size()];
+		for (int i = 0; i < segmentStarts.length; i++) {
+			segmentStarts[i] = startList.get(i);
+		}
+	}
+
+	/**
+	 * Returns a buffer containing the payload of a record
+	 */
+	private ByteBuffer getRecord(int recordIndex) {
+		long offset = recordOffsets[recordIndex];
+		int segmentIndex = Arrays.binarySearch(segmentStarts, offset);
+		if (segmentIndex < 0) {
+			segmentIndex = -segmentIndex - 2;
+		}
+		ByteBuffer segment = segments[segmentIndex].duplicate();
+		int position = (int) (offset - segmentStarts[segmentIndex]);
+		int length = segment.getInt(position);
+		segment.position(position + 4);
+		segment.limit(position + 4 + length);
+		return segment.slice();
+	}
+
+	private MappedExample createExample(int recordIndex) throws IOException {
+		ByteBuffer record = getRecord(recordIndex);
+		if (record.get() != BinaryDatasetFormat.SIMPLE_EXAMPLE) {
+			throw new IOException("MappedDataset supports only datasets of simple examples");
+		}
+		MappedExample example = new MappedExample(this, recordIndex);
+		decoder.decodeLabels(record, example);
+		int numberOfRepresentations = record.getInt();
+		String[] names = new String[numberOfRepresentations];
+		int[] positions = new int[numberOfRepresentations];
+		for (int i = 0; i < numberOfRepresentations; i++) {
+			names[i] = decoder.decodeRepresentationName(record);
+			positions[i] = record.position();
+			decoder.skipRepresentation(record);
+		}
+		example.setRepresentationLayout(names, positions);
+		return example;
+	}
+
+	/**
+	 * Decodes a representation from the mapped file
+	 *
+	 * @param recordIndex
+	 *            the index of the record containing the representation
+	 * @param position
+	 *            the position of the representation body in the record
+	 * @return the decoded representation
+	 * @throws IOException
+	 */
+	Representation decodeRepresentation(int recordIndex, int position) throws IOException {
+		ByteBuffer record = getRecord(recordIndex);
+		record.position(position);
+		return decoder.decodeRepresentation(record);
+	}
+
+	@Override
+	public void manipulate(Manipulator manipulator) {
+		for (Example example : this.getExamples()) {
+			if (example instanceof MappedExample) {
+				((MappedExample) example).pin();
+			}
+		}
+		super.manipulate(manipulator);
+	}
+}
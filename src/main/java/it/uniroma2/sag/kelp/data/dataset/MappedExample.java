@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.data.dataset;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.SimpleExample;
+import it.uniroma2.sag.kelp.data.representation.Representation;
+
+/**
+ * A <code>SimpleExample</code> whose representations are stored in a
+ * {@link MappedDataset} and decoded only when they are requested.
+ * <p>
+ * Decoded representations are softly referenced, so that they can be
+ * reclaimed by the garbage collector and decoded again later. Representations
+ * added at runtime through <code>addRepresentation</code> are instead kept in
+ * memory as in any <code>SimpleExample</code>, and they hide the mapped
+ * representations having the same name.
+ * <p>
+ * When serialized in JSON, a <code>MappedExample</code> is written as a
+ * regular simple example with all its representations.
+ */
+@JsonTypeName("simple")
+public class MappedExample extends SimpleExample {
+
+	private static final long serialVersionUID = 6214873850192371165L;
+
+	private transient MappedDataset storage;
+	private transient int recordIndex;
+	private transient String[] representationNames;
+	private transient int[] representationPositions;
+	private transient SoftReference<?>[] decodedRepresentations;
+	private transient Representation[] pinnedRepresentations;
+
+	MappedExample(MappedDataset storage, int recordIndex) {
+		super();
+		this.storage = storage;
+		this.recordIndex = recordIndex;
+	}
+
+	void setRepresentationLayout(String[] names, int[] positions) {
+		this.representationNames = names;
+		this.representationPositions = positions;
+		this.decodedRepresentations = new SoftReference<?>[names.length];
+	}
+
+	@Override
+	public Representation getRepresentation(String representationIdentifier) {
+		Representation representation = super.getRepresentation(representationIdentifier);
+		if (representation != null) {
+			return representation;
+		}
+		for (int i = 0; i < representationNames.length; i++) {
+			if (representationNames[i].equals(representationIdentifier)) {
+				return materialize(i);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Map<String, Representation> getRepresentations() {
+		Map<String, Representation> representations = new HashMap<String, Representation>();
+		for (int i = 0; i < representationNames.length; i++) {
+			representations.put(representationNames[i], materialize(i));
+		}
+		representations.putAll(super.getRepresentations());
+		return representations;
+	}
+
+	/**
+	 * Decodes all the representations and keeps them in memory, so that
+	 * they can be safely modified
+	 */
+	synchronized void pin() {
+		Representation[] pinned = new Representation[representationNames.length];
+		for (int i = 0; i < representationNames.length; i++) {
+			pinned[i] = materialize(i);
+		}
+		pinnedRepresentations = pinned;
+	}
+
+	/**
+	 * @return whether any mapped representation is currently decoded in
+	 *         memory
+	 */
+	public synchronized boolean isDecoded() {
+		if (pinnedRepresentations != null) {
+			return true;
+		}
+		for (SoftReference<?> reference : decodedRepresentations) {
+			if (reference != null && reference.get() != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized Representation materialize(int index) {
+		if (pinnedRepresentations != null) {
+			return pinnedRepresentations[index];
+		}
+		SoftReference<?> reference = decodedRepresentations[index];
+		Representation representation = reference == null ? null : (Representation) reference.get();
+		if (representation == null) {
+			try {
+				representation = storage.decodeRepresentation(recordIndex, representationPositions[index]);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to decode the representation " + representationNames[index]
+						+ " of the mapped example " + recordIndex + ": " + e.getMessage());
+			}
+			decodedRepresentations[index] = new SoftReference<Representation>(representation);
+		}
+		return representation;
+	}
+}
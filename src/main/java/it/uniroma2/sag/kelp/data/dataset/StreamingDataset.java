@@ -0,0 +1,389 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.data.dataset;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFactory;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.utils.DaemonThreadFactory;
+
+/**
+ * A dataset that reads its examples on demand, without keeping them in
+ * memory. It is meant for single-pass (or multi-epoch) online learning
+ * algorithms, such as the Passive Aggressive, that consume one example at a
+ * time through <code>hasNextExample</code> and <code>getNextExample</code>.
+ * <p>
+ * Examples are read and parsed by a background thread that keeps at most
+ * <code>readAhead</code> examples ready to be consumed, so that parsing
+ * overlaps with learning while memory stays bounded.
+ * <p>
+ * When the dataset is read from a file (textual, optionally gzipped, or
+ * binary), <code>reset</code> restarts the reading from the beginning, so
+ * that multiple epochs are possible. A dataset read from an
+ * <code>InputStream</code> can be traversed only once.
+ * <p>
+ * NOTE: methods requiring random access to the examples, or a complete view
+ * of them, such as <code>getExamples</code>, <code>getExample</code>,
+ * <code>getRandExamples</code>, <code>getShuffledDataset</code>,
+ * <code>nFolding</code>, <code>split</code> or
+ * <code>getClassificationLabels</code>, are not supported and throw an
+ * <code>UnsupportedOperationException</code>. The number of examples is
+ * available only after a complete pass.
+ * <p>
+ * Therefore, only the learners reading the examples sequentially can learn
+ * from a <code>StreamingDataset</code>, e.g. the
+ * <code>LinearPassiveAggressiveClassification</code>, the
+ * <code>KernelizedPassiveAggressiveClassification</code> and the
+ * <code>SoftConfidenceWeightedClassification</code>. The
+ * <code>PegasosLearningAlgorithm</code>, that samples its mini-batches
+ * through <code>getRandExamples</code>, and the
+ * <code>MultiEpochLearning</code>, that shuffles the dataset at each epoch,
+ * are not supported: multiple epochs can be obtained by invoking the
+ * <code>learn</code> method of an online learner several times, as
+ * <code>reset</code> restarts the reading.
+ */
+public class StreamingDataset extends SimpleDataset {
+
+	/**
+	 * The default number of examples read in advance
+	 */
+	public static final int DEFAULT_READ_AHEAD = 1024;
+
+	private static final Object END_OF_STREAM = new Object();
+
+	private static final DaemonThreadFactory THREAD_FACTORY = new DaemonThreadFactory("kelp-streaming-dataset");
+
+	private String datasetFilePath;
+	private InputStream inputStream;
+	private int readAhead;
+
+	private BlockingQueue<Object> queue;
+	private Thread readerThread;
+	private ExampleSource source;
+	private Example nextExample;
+	private boolean finished;
+	private int examplesRead;
+	private int numberOfExamples = -1;
+	private volatile Throwable readerError;
+
+	/**
+	 * @param datasetFilePath
+	 *            the path of a textual (optionally gzipped) or binary dataset
+	 */
+	public StreamingDataset(String datasetFilePath) {
+		this(datasetFilePath, DEFAULT_READ_AHEAD);
+	}
+
+	/**
+	 * @param datasetFilePath
+	 *            the path of a textual (optionally gzipped) or binary dataset
+	 * @param readAhead
+	 *            the maximum number of examples read in advance
+	 */
+	public StreamingDataset(String datasetFilePath, int readAhead) {
+		super();
+		this.datasetFilePath = datasetFilePath;
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * @param inputStream
+	 *            a stream containing a textual dataset, encoded in UTF-8
+	 * @param readAhead
+	 *            the maximum number of examples read in advance
+	 */
+	public StreamingDataset(InputStream inputStream, int readAhead) {
+		super();
+		this.inputStream = inputStream;
+		this.readAhead = readAhead;
+	}
+
+	@Override
+	public synchronized boolean hasNextExample() {
+		if (nextExample != null) {
+			return true;
+		}
+		if (finished) {
+			return false;
+		}
+		if (queue == null) {
+			start();
+		}
+		Object item;
+		try {
+			item = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the next example");
+		}
+		if (item == END_OF_STREAM) {
+			finished = true;
+			Throwable error = readerError;
+			if (error != null) {
+				throw new IllegalStateException("Unable to read the dataset: " + error.getMessage(), error);
+			}
+			numberOfExamples = examplesRead;
+			return false;
+		}
+		nextExample = (Example) item;
+		return true;
+	}
+
+	@Override
+	public synchronized Example getNextExample() {
+		if (!hasNextExample()) {
+			return null;
+		}
+		Example example = nextExample;
+		nextExample = null;
+		examplesRead++;
+		return example;
+	}
+
+	/**
+	 * Restarts the reading from the beginning of the file. When the dataset
+	 * is read from an <code>InputStream</code>, the reading is stopped and no
+	 * further examples are returned.
+	 */
+	@Override
+	public synchronized void reset() {
+		if (queue == null) {
+			return;
+		}
+		stop();
+		nextExample = null;
+		examplesRead = 0;
+		if (datasetFilePath != null) {
+			queue = null;
+			finished = false;
+		} else {
+			finished = true;
+		}
+	}
+
+	/**
+	 * Returns the number of examples of the dataset, available only after a
+	 * complete pass over it
+	 */
+	@Override
+	public int getNumberOfExamples() {
+		if (numberOfExamples < 0) {
+			throw new UnsupportedOperationException(
+					"The number of examples of a StreamingDataset is known only after a complete pass");
+		}
+		return numberOfExamples;
+	}
+
+	@Override
+	public List<Example> getExamples() {
+		throw new UnsupportedOperationException("A StreamingDataset does not keep its examples in memory");
+	}
+
+	@Override
+	public Example getExample(int exampleIndex) {
+		throw new UnsupportedOperationException("A StreamingDataset does not support random access");
+	}
+
+	@Override
+	public List<Example> getRandExamples(int n) {
+		throw new UnsupportedOperationException("A StreamingDataset does not support random access");
+	}
+
+	@Override
+	public SimpleDataset getShuffledDataset() {
+		throw new UnsupportedOperationException("A StreamingDataset does not keep its examples in memory");
+	}
+
+	@Override
+	public void shuffleExamples(Random randomGenerator) {
+		throw new UnsupportedOperationException("A StreamingDataset does not keep its examples in memory");
+	}
+
+	@Override
+	public SimpleDataset[] nFolding(int n) {
+		throw new UnsupportedOperationException("A StreamingDataset does not keep its examples in memory");
+	}
+
+	@Override
+	public SimpleDataset[] nFoldingClassDistributionInvariant(int n) {
+		throw new UnsupportedOperationException("A StreamingDataset does not keep its examples in memory");
+	}
+
+	@Override
+	public SimpleDataset[] split(float percentage) {
+		throw new UnsupportedOperationException("A StreamingDataset does not keep its examples in memory");
+	}
+
+	@Override
+	public SimpleDataset[] splitClassDistributionInvariant(float percentage) {
+		throw new UnsupportedOperationException("A StreamingDataset does not keep its examples in memory");
+	}
+
+	@Override
+	public int getNumberOfPositiveExamples(Label positiveLabel) {
+		throw new UnsupportedOperationException("A StreamingDataset does not keep its examples in memory");
+	}
+
+	@Override
+	public int getNumberOfNegativeExamples(Label positiveLabel) {
+		throw new UnsupportedOperationException("A StreamingDataset does not keep its examples in memory");
+	}
+
+	@Override
+	public List<Label> getClassificationLabels() {
+		throw new UnsupportedOperationException("A StreamingDataset does not keep its examples in memory");
+	}
+
+	/**
+	 * Stops the reading, releasing the underlying file
+	 */
+	public synchronized void close() {
+		stop();
+		finished = true;
+	}
+
+	private void start() {
+		try {
+			source = openSource();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open the dataset: " + e.getMessage(), e);
+		}
+		final BlockingQueue<Object> target = new ArrayBlockingQueue<Object>(Math.max(1, readAhead));
+		final ExampleSource reading = source;
+		queue = target;
+		readerError = null;
+		readerThread = THREAD_FACTORY.newThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Example example;
+					while ((example = reading.read()) != null) {
+						target.put(example);
+					}
+				} catch (InterruptedException e) {
+					// the reading has been stopped
+					return;
+				} catch (Throwable e) {
+					// the error is reported by the consumer once it has
+					// consumed the examples read so far
+					readerError = e;
+				}
+				try {
+					target.put(END_OF_STREAM);
+				} catch (InterruptedException e) {
+					// the reading has been stopped
+				}
+			}
+		});
+		readerThread.start();
+	}
+
+	private void stop() {
+		if (readerThread != null) {
+			readerThread.interrupt();
+			try {
+				readerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			readerThread = null;
+		}
+		if (source != null) {
+			try {
+				source.close();
+			} catch (IOException e) {
+				// nothing to do, the dataset is not used anymore
+			}
+			source = null;
+		}
+	}
+
+	private ExampleSource openSource() throws IOException {
+		if (datasetFilePath == null) {
+			return new TextSource(new BufferedReader(new InputStreamReader(inputStream, BinaryDatasetFormat.ENCODING),
+					1 << 16));
+		}
+		if (BinaryDatasetFormat.isBinaryDataset(new File(datasetFilePath))) {
+			return new BinarySource(new BinaryDatasetReader(datasetFilePath));
+		}
+		return new TextSource(DatasetLoader.openTextDataset(datasetFilePath));
+	}
+
+	/**
+	 * A sequential source of examples
+	 */
+	private interface ExampleSource {
+		/**
+		 * @return the next example, or <code>null</code> at the end of the
+		 *         source
+		 */
+		Example read() throws Exception;
+
+		void close() throws IOException;
+	}
+
+	private static class TextSource implements ExampleSource {
+		private BufferedReader in;
+
+		public TextSource(BufferedReader in) {
+			this.in = in;
+		}
+
+		@Override
+		public Example read() throws Exception {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() != 0) {
+					return ExampleFactory.parseExample(line);
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private static class BinarySource implements ExampleSource {
+		private BinaryDatasetReader reader;
+
+		public BinarySource(BinaryDatasetReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public Example read() throws Exception {
+			return reader.hasNext() ? reader.readNextExample() : null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.data.example;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import it.uniroma2.sag.kelp.data.dataset.Dataset;
+import it.uniroma2.sag.kelp.data.representation.Representation;
+import it.uniroma2.sag.kelp.data.representation.vector.SparseVector;
+
+/**
+ * Computes content-based fingerprints of examples and datasets.
+ * <p>
+ * Differently from the example ids, that depend on the order in which the
+ * examples are created in a JVM, the fingerprint of an example only depends
+ * on its representations: the same example loaded in different JVMs has the
+ * same fingerprint, while examples with different representations have
+ * different fingerprints with overwhelming probability. Labels are not
+ * considered, as they do not affect kernel computations.
+ */
+public class ExampleFingerprint {
+
+	private static final String ALGORITHM = "MD5";
+	private static final String ENCODING = "UTF-8";
+
+	/**
+	 * Returns the fingerprint of an example
+	 *
+	 * @param example
+	 *            the example
+	 * @return a 64 bit hash of the representations of the example
+	 */
+	public static long of(Example example) {
+		MessageDigest digest = newDigest();
+		update(digest, example);
+		return toLong(digest.digest());
+	}
+
+	/**
+	 * Returns the fingerprint of a dataset, depending on the fingerprints of
+	 * its examples and on their order
+	 *
+	 * @param dataset
+	 *            the dataset
+	 * @return a 64 bit hash of the examples in the dataset
+	 */
+	public static long of(Dataset dataset) {
+		MessageDigest digest = newDigest();
+		for (Example example : dataset.getExamples()) {
+			updateLong(digest, of(example));
+		}
+		return toLong(digest.digest());
+	}
+
+	/**
+	 * Returns a fingerprint of a string
+	 *
+	 * @param text
+	 *            the string
+	 * @return a 64 bit hash of the string
+	 */
+	public static long of(String text) {
+		MessageDigest digest = newDigest();
+		updateString(digest, text);
+		return toLong(digest.digest());
+	}
+
+	/**
+	 * Returns a fixed length hexadecimal encoding of a fingerprint, suitable
+	 * for file names
+	 *
+	 * @param fingerprint
+	 *            the fingerprint
+	 * @return the hexadecimal encoding of the fingerprint
+	 */
+	public static String toHex(long fingerprint) {
+		String hex = Long.toHexString(fingerprint);
+		StringBuilder builder = new StringBuilder(16);
+		for (int i = hex.length(); i < 16; i++) {
+			builder.append('0');
+		}
+		return builder.append(hex).toString();
+	}
+
+	private static void update(MessageDigest digest, Example example) {
+		if (example instanceof SequenceExample) {
+			SequenceExample sequence = (SequenceExample) example;
+			updateString(digest, "sequence");
+			for (int i = 0; i < sequence.getLenght(); i++) {
+				update(digest, sequence.getExample(i));
+			}
+			return;
+		}
+		// representations are sorted by name to obtain an order-independent hash
+		Map<String, Representation> representations = new TreeMap<String, Representation>(
+				example.getRepresentations());
+		for (Map.Entry<String, Representation> entry : representations.entrySet()) {
+			updateString(digest, entry.getKey());
+			updateString(digest, entry.getValue().getClass().getName());
+			updateString(digest, getCanonicalText(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Returns the textual description of a representation in a canonical
+	 * form: the features of a <code>SparseVector</code> are listed in the
+	 * iteration order of a hash map, that depends on how the vector has been
+	 * built, thus they are sorted
+	 */
+	private static String getCanonicalText(Representation representation) {
+		String text = representation.getTextFromData();
+		if (!(representation instanceof SparseVector)) {
+			return text;
+		}
+		String[] features = text.trim().split("\\s+");
+		Arrays.sort(features);
+		StringBuilder builder = new StringBuilder(text.length());
+		for (String feature : features) {
+			if (builder.length() > 0) {
+				builder.append(' ');
+			}
+			builder.append(feature);
+		}
+		return builder.toString();
+	}
+
+	private static void updateString(MessageDigest digest, String text) {
+		try {
+			byte[] bytes = text.getBytes(ENCODING);
+			updateLong(digest, bytes.length);
+			digest.update(bytes);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void updateLong(MessageDigest digest, long value) {
+		for (int i = 7; i >= 0; i--) {
+			digest.update((byte) (value >>> (8 * i)));
+		}
+	}
+
+	private static long toLong(byte[] hash) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (hash[i] & 0xFF);
+		}
+		return value;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -25,8 +25,8 @@ import it.uniroma2.sag.kelp.kernel.cache.FixSizeKernelCache;
 import it.uniroma2.sag.kelp.kernel.graph.ShortestPathKernel;
 import it.uniroma2.sag.kelp.kernel.standard.LinearKernelCombination;
 import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
-import it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm.BinaryCSvmClassification;
-import it.uniroma2.sag.kelp.utils.ExperimentUtils;
+import it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm.SmoCSvmClassification;
+import it.uniroma2.sag.kelp.utils.ParallelExperimentUtils;
 import it.uniroma2.sag.kelp.utils.evaluation.BinaryClassificationEvaluator;
 
 /**
@@ -75,11 +75,14 @@ public class MutagClassification {
 	    ShortestPathKernel spk = new ShortestPathKernel(GRAPH_REPRESENTATION_NAME);
 	    comb.addKernel(1, spk);
 	    comb.setKernelCache(new FixSizeKernelCache(trainingSet.getNumberOfExamples()));
-	    BinaryCSvmClassification svmSolver = new BinaryCSvmClassification(comb, targetLabel, 1, 1);
+	    // the folds are learned in parallel, sharing the kernel values, thus
+	    // each SVM solver computes its kernel columns in a single thread
+	    SmoCSvmClassification svmSolver = new SmoCSvmClassification(comb, targetLabel, 1, 1);
+	    svmSolver.setParallelism(1);
 		
 	    float meanAcc = 0;
 	    int nFold = 10;
-	    List<BinaryClassificationEvaluator> evalutators = ExperimentUtils.nFoldCrossValidation(nFold, svmSolver, trainingSet, evaluator);
+	    List<BinaryClassificationEvaluator> evalutators = ParallelExperimentUtils.nFoldCrossValidation(nFold, svmSolver, trainingSet, evaluator);
 	    
 		for(int i=0;i<nFold;i++){
 			float accuracy = evalutators.get(i).getPerformanceMeasure("accuracy");
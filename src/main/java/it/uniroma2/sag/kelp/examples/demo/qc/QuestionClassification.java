@@ -17,6 +17,7 @@ package it.uniroma2.sag.kelp.examples.demo.qc;
 
 import java.io.IOException;
 
+import it.uniroma2.sag.kelp.data.dataset.DatasetLoader;
 import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
 import it.uniroma2.sag.kelp.data.example.Example;
 import it.uniroma2.sag.kelp.data.label.Label;
@@ -24,8 +25,8 @@ import it.uniroma2.sag.kelp.data.manipulator.LexicalStructureElementManipulator;
 import it.uniroma2.sag.kelp.data.representation.structure.similarity.LexicalStructureElementSimilarity;
 import it.uniroma2.sag.kelp.data.representation.structure.similarity.compositional.sum.CompositionalNodeSimilaritySum;
 import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.cache.ConcurrentKernelCache;
 import it.uniroma2.sag.kelp.kernel.cache.FixIndexSquaredNormCache;
-import it.uniroma2.sag.kelp.kernel.cache.FixSizeKernelCache;
 import it.uniroma2.sag.kelp.kernel.standard.NormalizationKernel;
 import it.uniroma2.sag.kelp.kernel.tree.PartialTreeKernel;
 import it.uniroma2.sag.kelp.kernel.tree.SmoothedPartialTreeKernel;
@@ -33,6 +34,7 @@ import it.uniroma2.sag.kelp.kernel.tree.SubSetTreeKernel;
 import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
 import it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm.BinaryCSvmClassification;
 import it.uniroma2.sag.kelp.learningalgorithm.classification.multiclassification.OneVsAllLearning;
+import it.uniroma2.sag.kelp.learningalgorithm.classification.multiclassification.ParallelOneVsAllLearning;
 import it.uniroma2.sag.kelp.predictionfunction.classifier.ClassificationOutput;
 import it.uniroma2.sag.kelp.predictionfunction.classifier.Classifier;
 import it.uniroma2.sag.kelp.utils.JacksonSerializerWrapper;
@@ -87,12 +89,14 @@ public class QuestionClassification {
 			System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "INFO");
 
 			/*
-			 * Read both training and testing dataset
+			 * Read both training and testing dataset, parsing the trees with
+			 * all the available cores
 			 */
+			int parallelism = Runtime.getRuntime().availableProcessors();
 			SimpleDataset trainingSet = new SimpleDataset();
-			trainingSet.populate("src/main/resources/qc/train_5500.coarse.klp.gz");
+			DatasetLoader.populate(trainingSet, "src/main/resources/qc/train_5500.coarse.klp.gz", parallelism);
 			SimpleDataset testSet = new SimpleDataset();
-			testSet.populate("src/main/resources/qc/TREC_10.coarse.klp.gz");
+			DatasetLoader.populate(testSet, "src/main/resources/qc/TREC_10.coarse.klp.gz", parallelism);
 
 			/*
 			 * Select a specific kernel from the existing ones:
@@ -153,7 +157,8 @@ public class QuestionClassification {
 			 * Instantiate the multi-class classifier that apply a One-vs-All
 			 * schema
 			 */
-			OneVsAllLearning ovaLearner = new OneVsAllLearning();
+			// the binary classifiers of the different classes are learned in parallel
+			OneVsAllLearning ovaLearner = new ParallelOneVsAllLearning();
 			/*
 			 * Use the binary classifier defined above
 			 */
@@ -349,9 +354,12 @@ public class QuestionClassification {
 			System.err.println("The kernel " + kernelId + " has not been defined.");
 		}
 		/*
-		 * Set cache to the kernel
+		 * Set cache to the kernel: it is shared by the binary classifiers
+		 * learned in parallel, thus a thread-safe cache with an entry for
+		 * each pair of training examples is adopted
 		 */
-		usedKernel.setKernelCache(new FixSizeKernelCache(cacheSize));
+		int trainingSize = trainingSet.getNumberOfExamples();
+		usedKernel.setKernelCache(new ConcurrentKernelCache(trainingSize * (trainingSize + 1) / 2));
 		return usedKernel;
 	}
 }
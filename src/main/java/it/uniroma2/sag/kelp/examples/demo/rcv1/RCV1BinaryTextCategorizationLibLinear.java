@@ -15,6 +15,7 @@
 
 package it.uniroma2.sag.kelp.examples.demo.rcv1;
 
+import it.uniroma2.sag.kelp.data.dataset.DatasetLoader;
 import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
 import it.uniroma2.sag.kelp.data.label.StringLabel;
 import it.uniroma2.sag.kelp.learningalgorithm.LearningAlgorithm;
@@ -32,7 +33,7 @@ public class RCV1BinaryTextCategorizationLibLinear extends RCV1BinaryTextCategor
 
 		SimpleDataset allData = new SimpleDataset();
 		try {
-			allData.populate(train_file);
+			DatasetLoader.populate(allData, train_file);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
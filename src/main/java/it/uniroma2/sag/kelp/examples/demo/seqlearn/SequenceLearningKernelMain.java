@@ -21,7 +21,7 @@ import it.uniroma2.sag.kelp.data.dataset.SequenceDataset;
 import it.uniroma2.sag.kelp.data.example.Example;
 import it.uniroma2.sag.kelp.data.example.SequenceExample;
 import it.uniroma2.sag.kelp.kernel.Kernel;
-import it.uniroma2.sag.kelp.kernel.cache.SimpleDynamicKernelCache;
+import it.uniroma2.sag.kelp.kernel.cache.LruKernelCache;
 import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
 import it.uniroma2.sag.kelp.learningalgorithm.classification.hmm.SequenceClassificationKernelBasedLearningAlgorithm;
 import it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm.BinaryCSvmClassification;
@@ -128,7 +128,9 @@ public class SequenceLearningKernelMain {
 				binaryCSvmClassification, transitionsOrder, weight);
 		sequenceClassificationLearningAlgorithm.setBeamSize(beamSize);
 		sequenceClassificationLearningAlgorithm.setMaxEmissionCandidates(maxEmissionCandidates);
-		sequenceClassificationLearningAlgorithm.setKernelCache(new SimpleDynamicKernelCache());
+		// the kernel values are cached within a memory budget of 512MB,
+		// keeping the most recently used ones
+		sequenceClassificationLearningAlgorithm.setKernelCache(new LruKernelCache(512L * 1024 * 1024));
 
 		sequenceClassificationLearningAlgorithm.learn(sequenceTrainDataset);
 
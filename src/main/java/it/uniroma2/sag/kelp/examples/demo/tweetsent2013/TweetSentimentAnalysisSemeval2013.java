@@ -15,6 +15,7 @@
 
 package it.uniroma2.sag.kelp.examples.demo.tweetsent2013;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
@@ -27,6 +28,7 @@ import it.uniroma2.sag.kelp.data.label.Label;
 import it.uniroma2.sag.kelp.kernel.Kernel;
 import it.uniroma2.sag.kelp.kernel.cache.FixIndexSquaredNormCache;
 import it.uniroma2.sag.kelp.kernel.cache.FixSizeKernelCache;
+import it.uniroma2.sag.kelp.kernel.cache.PersistentKernelCache;
 import it.uniroma2.sag.kelp.kernel.standard.LinearKernelCombination;
 import it.uniroma2.sag.kelp.kernel.standard.NormalizationKernel;
 import it.uniroma2.sag.kelp.kernel.standard.PolynomialKernel;
@@ -34,6 +36,7 @@ import it.uniroma2.sag.kelp.kernel.standard.RbfKernel;
 import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
 import it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm.BinaryCSvmClassification;
 import it.uniroma2.sag.kelp.learningalgorithm.classification.multiclassification.OneVsAllLearning;
+import it.uniroma2.sag.kelp.learningalgorithm.classification.multiclassification.ParallelOneVsAllLearning;
 import it.uniroma2.sag.kelp.predictionfunction.classifier.multiclass.OneVsAllClassificationOutput;
 import it.uniroma2.sag.kelp.predictionfunction.classifier.multiclass.OneVsAllClassifier;
 import it.uniroma2.sag.kelp.utils.JacksonSerializerWrapper;
@@ -44,6 +47,8 @@ import it.uniroma2.sag.kelp.utils.exception.NoSuchPerformanceMeasureException;
 public class TweetSentimentAnalysisSemeval2013 {
 	private static String FIELD_SEP = "\t";
 	private static String errors_file = "src/main/resources/tweetSentiment2013/errors.txt";
+	private static String kernel_cache_dir = new File(System.getProperty("java.io.tmpdir"),
+			"kelp-tweetSentiment2013-kernelCache").getPath();
 
 	public static void main(String[] args) throws Exception {
 		float split = 0.8f;
@@ -90,12 +95,22 @@ public class TweetSentimentAnalysisSemeval2013 {
 			break;
 		}
 
+		// Reuse the kernel values computed in previous runs over the same
+		// data with the same kernel. The binary classifiers learned in
+		// parallel share it behind a single lock, trading some speedup for
+		// the persistence of the values (see ParallelOneVsAllLearning)
+		PersistentKernelCache kernelCache = PersistentKernelCache.open(kernel_cache_dir, trainingSet, kernel);
+		kernel.setKernelCache(kernelCache);
+
 		// Find optimal C
 		float c = tune(trainingSet, kernel, split, Cs);
 		System.out.println("start testing with C=" + c);
 		// test
 		float f1 = test(trainingSet, kernel, c, testSet, true);
 		System.out.println("Mean F1 on test set=" + f1);
+
+		// Store the kernel values for the next runs
+		kernelCache.save();
 	}
 
 	private static float test(SimpleDataset trainingSet, Kernel kernel,
@@ -112,7 +127,8 @@ public class TweetSentimentAnalysisSemeval2013 {
 		svmSolver.setFairness(true);
 
 		// Instantiate a OneVsAll multiclassification schema
-		OneVsAllLearning ovaLearner = new OneVsAllLearning();
+		// the binary classifiers of the different classes are learned in parallel
+		OneVsAllLearning ovaLearner = new ParallelOneVsAllLearning();
 		ovaLearner.setBaseAlgorithm(svmSolver);
 		ovaLearner.setLabels(classes);
 		// Learn
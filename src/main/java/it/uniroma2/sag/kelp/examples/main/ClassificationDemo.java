@@ -19,6 +19,7 @@ import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
 import it.uniroma2.sag.kelp.data.example.Example;
 import it.uniroma2.sag.kelp.data.label.Label;
 import it.uniroma2.sag.kelp.learningalgorithm.classification.ClassificationLearningAlgorithm;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BatchPredictor;
 import it.uniroma2.sag.kelp.predictionfunction.classifier.ClassificationOutput;
 import it.uniroma2.sag.kelp.predictionfunction.classifier.Classifier;
 import it.uniroma2.sag.kelp.utils.JacksonSerializerWrapper;
@@ -88,9 +89,13 @@ public class ClassificationDemo {
 			evaluator = new MulticlassClassificationEvaluator(trainDataset.getClassificationLabels());
 		}
 		
-		for(Example ex: testDataset.getExamples()){
-			ClassificationOutput prediction = classifier.predict(ex);
-			evaluator.addCount(ex, prediction);
+		// classify the whole test set in batches, using all the available cores
+		BatchPredictor predictor = new BatchPredictor(classifier, Runtime.getRuntime().availableProcessors());
+		List<ClassificationOutput> predictions = predictor.predictAll(testDataset);
+		predictor.close();
+		List<Example> testExamples = testDataset.getExamples();
+		for(int i=0; i<testExamples.size(); i++){
+			evaluator.addCount(testExamples.get(i), predictions.get(i));
 		}
 		
 		System.out.println("ACC: " + evaluator.getPerformanceMeasure("accuracy"));
@@ -21,10 +21,12 @@ import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
 import it.uniroma2.sag.kelp.data.example.Example;
 import it.uniroma2.sag.kelp.data.label.Label;
 import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.cache.ContentHashKernelCache;
+import it.uniroma2.sag.kelp.kernel.cache.ContentHashSquaredNormCache;
 import it.uniroma2.sag.kelp.kernel.cache.FixIndexSquaredNormCache;
 import it.uniroma2.sag.kelp.kernel.cache.FixSizeKernelCache;
-import it.uniroma2.sag.kelp.kernel.cache.KernelCache;
-import it.uniroma2.sag.kelp.kernel.cache.SquaredNormCache;
+import it.uniroma2.sag.kelp.kernel.cache.MonitoredKernelCache;
+import it.uniroma2.sag.kelp.kernel.cache.MonitoredSquaredNormCache;
 import it.uniroma2.sag.kelp.kernel.standard.LinearKernelCombination;
 import it.uniroma2.sag.kelp.kernel.standard.NormalizationKernel;
 import it.uniroma2.sag.kelp.kernel.standard.PolynomialKernel;
@@ -105,9 +107,16 @@ public class KernelCacheExample {
 			// normalize the weights such that their sum is 1
 			linearCombination.normalizeWeights();
 
-			// set up a cache
-			KernelCache cache = new FixSizeKernelCache(5000);
-			SquaredNormCache normCache = new FixIndexSquaredNormCache(5000);
+			// set up a cache, collecting its statistics. The statistics are
+			// also published as JMX MBeans, that can be inspected with JConsole.
+			// The examples are identified by their content, so that the caches
+			// can be used also when classifying new examples (see below)
+			MonitoredKernelCache cache = new MonitoredKernelCache(
+					new ContentHashKernelCache(new FixSizeKernelCache(5000)),
+					"KernelCacheExample-kernel");
+			MonitoredSquaredNormCache normCache = new MonitoredSquaredNormCache(
+					new ContentHashSquaredNormCache(new FixIndexSquaredNormCache(5000)),
+					"KernelCacheExample-norm");
 
 			// set the kernel for the PA algorithm
 			kPA.setKernel(linearCombination);
@@ -128,11 +137,15 @@ public class KernelCacheExample {
 			OneVsAllClassifier f = metaOneVsAllLearner.getPredictionFunction();
 			long endLearningTime = System.currentTimeMillis();
 
-			// disable cache for testing
-			// usually it is needed when saving/loading models
-			// because a test example in a new JVM instance can receive the same
-			// id of a training example
-			linearCombination.disableCache();
+			// print the statistics of the caches, useful to size them
+			System.out.println("Kernel cache: " + cache.getStats());
+			System.out.println("Squared norm cache: " + normCache.getStats());
+
+			// the cache can be kept enabled for testing: a test example in a
+			// new JVM instance can receive the same id of a training example,
+			// e.g. when loading a saved model, but the content-hash caches do
+			// not rely on the example ids. Caches indexing the examples by id
+			// must instead be disabled with linearCombination.disableCache()
 
 			// classify examples and compute some statistics
 			MulticlassClassificationEvaluator ev = new MulticlassClassificationEvaluator(
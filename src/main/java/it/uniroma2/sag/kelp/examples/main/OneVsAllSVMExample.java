@@ -26,6 +26,7 @@ import it.uniroma2.sag.kelp.kernel.Kernel;
 import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
 import it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm.BinaryCSvmClassification;
 import it.uniroma2.sag.kelp.learningalgorithm.classification.multiclassification.OneVsAllLearning;
+import it.uniroma2.sag.kelp.learningalgorithm.classification.multiclassification.ParallelOneVsAllLearning;
 import it.uniroma2.sag.kelp.predictionfunction.classifier.ClassificationOutput;
 import it.uniroma2.sag.kelp.predictionfunction.classifier.Classifier;
 import it.uniroma2.sag.kelp.utils.evaluation.MulticlassClassificationEvaluator;
@@ -75,7 +76,8 @@ public class OneVsAllSVMExample {
 			svmSolver.setCp(1);
 			svmSolver.setCn(1);
 
-			OneVsAllLearning ovaLearner = new OneVsAllLearning();
+			// the binary classifiers of the different classes are learned in parallel
+			OneVsAllLearning ovaLearner = new ParallelOneVsAllLearning();
 			ovaLearner.setBaseAlgorithm(svmSolver);
 			ovaLearner.setLabels(classes);
 
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.kernel.cache.ConcurrentKernelCache;
+import it.uniroma2.sag.kelp.kernel.cache.KernelCache;
+import it.uniroma2.sag.kelp.kernel.cache.PinnedSquaredNormCache;
+import it.uniroma2.sag.kelp.kernel.cache.SquaredNormCache;
+import it.uniroma2.sag.kelp.kernel.cache.SynchronizedKernelCache;
+import it.uniroma2.sag.kelp.utils.JacksonSerializerWrapper;
+
+/**
+ * Utility methods operating on kernel functions
+ */
+public class KernelUtils {
+
+	/**
+	 * Returns all the kernels composing a kernel function, i.e. the kernel
+	 * itself and, recursively, the base kernels of the
+	 * <code>KernelComposition</code>s and the kernels combined by the
+	 * <code>KernelCombination</code>s
+	 *
+	 * @param kernel
+	 *            the root of the kernel function
+	 * @return the kernels composing the kernel function, in depth-first order
+	 */
+	public static List<Kernel> getAllKernels(Kernel kernel) {
+		List<Kernel> kernels = new ArrayList<Kernel>();
+		collectKernels(kernel, kernels);
+		return kernels;
+	}
+
+	private static void collectKernels(Kernel kernel, List<Kernel> kernels) {
+		if (kernel == null) {
+			return;
+		}
+		kernels.add(kernel);
+		if (kernel instanceof KernelComposition) {
+			collectKernels(((KernelComposition) kernel).getBaseKernel(), kernels);
+		}
+		if (kernel instanceof KernelCombination) {
+			for (Kernel combined : ((KernelCombination) kernel).getToCombine()) {
+				collectKernels(combined, kernels);
+			}
+		}
+	}
+
+	/**
+	 * Returns a deep copy of a kernel function, that can be used by a thread
+	 * concurrently with the original kernel and with other copies. The copy
+	 * is obtained through the JSON serialization of the kernel, thus it
+	 * does not share any internal data structure with the original one.
+	 * <p>
+	 * The copy has no kernel caches, as they are not thread-safe in general.
+	 * Its squared norm caches are shared with the original kernel when they are
+	 * thread-safe <code>PinnedSquaredNormCache</code>s, otherwise they are
+	 * removed.
+	 *
+	 * @param kernel
+	 *            the kernel to be copied
+	 * @return a copy of the kernel
+	 * @throws IOException
+	 */
+	public static Kernel copyForConcurrentUse(Kernel kernel) throws IOException {
+		List<Kernel> originals = getAllKernels(kernel);
+		KernelCache[] kernelCaches = new KernelCache[originals.size()];
+		SquaredNormCache[] squaredNormCaches = new SquaredNormCache[originals.size()];
+		String description;
+		try {
+			// the caches are detached, so that they are neither serialized nor
+			// allocated again in the copy
+			for (int i = 0; i < originals.size(); i++) {
+				kernelCaches[i] = originals.get(i).getKernelCache();
+				squaredNormCaches[i] = originals.get(i).getSquaredNormCache();
+				originals.get(i).setKernelCache(null);
+				originals.get(i).setSquaredNormCache(null);
+			}
+			description = new JacksonSerializerWrapper().writeValueAsString(kernel);
+		} finally {
+			for (int i = 0; i < originals.size(); i++) {
+				originals.get(i).setKernelCache(kernelCaches[i]);
+				originals.get(i).setSquaredNormCache(squaredNormCaches[i]);
+			}
+		}
+
+		Kernel copy = new JacksonSerializerWrapper().readValue(description, Kernel.class);
+		List<Kernel> copies = getAllKernels(copy);
+		for (int i = 0; i < copies.size(); i++) {
+			if (squaredNormCaches[i] instanceof PinnedSquaredNormCache) {
+				copies.get(i).setSquaredNormCache(squaredNormCaches[i]);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns copies of a kernel function to be used by concurrent threads
+	 * operating on the same examples, e.g. learners trained in parallel, that
+	 * share the kernel values. The copies share the kernel caches of the
+	 * kernel function: the {@link ConcurrentKernelCache}s as they are, the
+	 * other caches, which are not thread-safe, behind a lock (see
+	 * {@link SynchronizedKernelCache}), so that their type, size and content,
+	 * e.g. the values of a <code>PersistentKernelCache</code>, are preserved.
+	 * The squared norm caches are replaced, in the copies, by
+	 * {@link PinnedSquaredNormCache}s. The squared norms of the examples are
+	 * computed once, before the copies are returned.
+	 *
+	 * @param kernel
+	 *            the kernel to be copied
+	 * @param numberOfCopies
+	 *            the number of copies
+	 * @param examples
+	 *            the examples the copies will operate on
+	 * @return the copies of the kernel
+	 * @throws IOException
+	 */
+	public static List<Kernel> copiesSharingCaches(Kernel kernel, int numberOfCopies, Collection<Example> examples)
+			throws IOException {
+		List<Kernel> components = getAllKernels(kernel);
+		KernelCache[] kernelCaches = new KernelCache[components.size()];
+		SquaredNormCache[] squaredNormCaches = new SquaredNormCache[components.size()];
+		for (int i = 0; i < components.size(); i++) {
+			KernelCache kernelCache = components.get(i).getKernelCache();
+			if (kernelCache instanceof ConcurrentKernelCache || kernelCache instanceof SynchronizedKernelCache) {
+				kernelCaches[i] = kernelCache;
+			} else if (kernelCache != null) {
+				kernelCaches[i] = new SynchronizedKernelCache(kernelCache);
+			}
+			if (components.get(i).getSquaredNormCache() != null) {
+				squaredNormCaches[i] = new PinnedSquaredNormCache();
+			}
+		}
+
+		List<Kernel> copies = new ArrayList<Kernel>(numberOfCopies);
+		for (int c = 0; c < numberOfCopies; c++) {
+			Kernel copy = copyForConcurrentUse(kernel);
+			List<Kernel> copyComponents = getAllKernels(copy);
+			for (int i = 0; i < copyComponents.size(); i++) {
+				copyComponents.get(i).setKernelCache(kernelCaches[i]);
+				copyComponents.get(i).setSquaredNormCache(squaredNormCaches[i]);
+			}
+			copies.add(copy);
+		}
+
+		// the norms and the structures lazily derived by the representations
+		// are computed once, before the examples are shared among threads
+		if (!copies.isEmpty()) {
+			List<Kernel> firstCopy = getAllKernels(copies.get(0));
+			for (Example example : examples) {
+				for (Kernel component : firstCopy) {
+					component.squaredNorm(example);
+				}
+			}
+		}
+		return copies;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * A kernel cache whose size is bounded by a memory budget, expressed in
+ * bytes. When the budget is exhausted, storing a new kernel value requires
+ * the eviction of a stored one, chosen according to the policy implemented
+ * by the subclasses.
+ * <p>
+ * The memory used by each stored value is estimated considering the objects
+ * allocated by the cache on a 64 bit JVM with compressed references.
+ */
+public abstract class BoundedKernelCache extends KernelCache implements MeasurableCache {
+
+	private static final long serialVersionUID = -6030178446231851934L;
+
+	/**
+	 * The default memory budget: 256MB
+	 */
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	private long maxBytes = DEFAULT_MAX_BYTES;
+
+	private transient volatile long evictions;
+
+	/**
+	 * @return the memory budget of the cache, in bytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Sets the memory budget of the cache, discarding all the stored values
+	 *
+	 * @param maxBytes
+	 *            the memory budget of the cache, in bytes
+	 */
+	public void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		this.flushCache();
+	}
+
+	/**
+	 * @return the maximum number of kernel values that can be stored within
+	 *         the memory budget
+	 */
+	@JsonIgnore
+	public int getCapacity() {
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / getBytesPerValue()));
+	}
+
+	/**
+	 * @return the estimated memory used by the stored kernel values, in bytes
+	 */
+	@Override
+	@JsonIgnore
+	public long getUsedBytes() {
+		return (long) getNumberOfStoredValues() * getBytesPerValue();
+	}
+
+	/**
+	 * @return the number of kernel values discarded to respect the memory
+	 *         budget
+	 */
+	@Override
+	@JsonIgnore
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Records the eviction of a kernel value. It must be invoked by the
+	 * subclasses holding the lock of the cache.
+	 */
+	protected void recordEviction() {
+		evictions++;
+	}
+
+	/**
+	 * @return the number of stored kernel values
+	 */
+	@JsonIgnore
+	public abstract int getNumberOfStoredValues();
+
+	/**
+	 * @return the estimated memory required to store a kernel value, in bytes
+	 */
+	protected abstract int getBytesPerValue();
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * The statistics of a cache: hits, misses and the time spent in computing the
+ * missing values. The latter is measured as the time elapsed between a miss
+ * and the storage of the missing value by the same thread, i.e. the time
+ * spent by a kernel in computing it.
+ * <p>
+ * The used memory and the evictions are reported by the caches implementing
+ * {@link MeasurableCache}. For the fixed size caches of KeLP, i.e. the
+ * <code>FixIndexKernelCache</code>, the <code>FixSizeKernelCache</code> and
+ * the <code>FixIndexSquaredNormCache</code>, the used memory is estimated
+ * from their capacity, while their evictions are not observable and are
+ * reported as -1.
+ * <p>
+ * The statistics can be published as a JMX MBean through
+ * {@link #registerMBean(String)}, in order to be monitored with tools like
+ * JConsole.
+ */
+public class CacheStats implements CacheStatsMXBean {
+
+	/**
+	 * The domain of the JMX MBeans registered by KeLP caches
+	 */
+	public static final String JMX_DOMAIN = "it.uniroma2.sag.kelp";
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong missComputationNanos = new AtomicLong();
+
+	private final ThreadLocal<PendingMiss> pendingMisses = new ThreadLocal<PendingMiss>() {
+		@Override
+		protected PendingMiss initialValue() {
+			return new PendingMiss();
+		}
+	};
+
+	private static class PendingMiss {
+		private Object key;
+		private long startTime;
+	}
+
+	/**
+	 * Records a request satisfied by the cache
+	 */
+	public void recordHit() {
+		hits.incrementAndGet();
+	}
+
+	/**
+	 * Records a request not satisfied by the cache
+	 *
+	 * @param key
+	 *            the key of the missing value
+	 */
+	public void recordMiss(Object key) {
+		misses.incrementAndGet();
+		PendingMiss pending = pendingMisses.get();
+		pending.key = key;
+		pending.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Records the storage of a value: if it is the last value missed by the
+	 * current thread, the time elapsed since the miss is accounted as
+	 * computation time
+	 *
+	 * @param key
+	 *            the key of the stored value
+	 */
+	public void recordStore(Object key) {
+		PendingMiss pending = pendingMisses.get();
+		if (pending.key != null && pending.key.equals(key)) {
+			missComputationNanos.addAndGet(System.nanoTime() - pending.startTime);
+			pending.key = null;
+		}
+	}
+
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long requests = hitCount + misses.get();
+		return requests == 0 ? 0 : (double) hitCount / requests;
+	}
+
+	@Override
+	public long getEvictions() {
+		return -1;
+	}
+
+	@Override
+	public long getUsedBytes() {
+		return -1;
+	}
+
+	@Override
+	public long getMissComputationTime() {
+		return missComputationNanos.get() / 1000000;
+	}
+
+	@Override
+	public void reset() {
+		hits.set(0);
+		misses.set(0);
+		missComputationNanos.set(0);
+	}
+
+	/**
+	 * Returns the memory used by a cache
+	 *
+	 * @param cache
+	 *            a kernel or squared norm cache
+	 * @return the memory reported by a {@link MeasurableCache}, an estimate
+	 *         for the fixed size caches of KeLP, or -1 for any other cache
+	 */
+	public static long getUsedBytes(Object cache) {
+		if (cache instanceof MeasurableCache) {
+			return ((MeasurableCache) cache).getUsedBytes();
+		}
+		// a float for each pair of stored examples, and the ids of the examples
+		if (cache instanceof FixIndexKernelCache) {
+			long examples = ((FixIndexKernelCache) cache).getExamplesToStore();
+			return examples * examples * 4 + examples * 8;
+		}
+		if (cache instanceof FixSizeKernelCache) {
+			long examples = ((FixSizeKernelCache) cache).getExamplesToStore();
+			return examples * examples * 4 + examples * 8;
+		}
+		// a float and an id for each stored example
+		if (cache instanceof FixIndexSquaredNormCache) {
+			return ((FixIndexSquaredNormCache) cache).getSize() * (4L + 8);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the evictions of a cache
+	 *
+	 * @param cache
+	 *            a kernel or squared norm cache
+	 * @return the evictions reported by a {@link MeasurableCache}, or -1 for
+	 *         any other cache
+	 */
+	public static long getEvictions(Object cache) {
+		if (cache instanceof MeasurableCache) {
+			return ((MeasurableCache) cache).getEvictions();
+		}
+		return -1;
+	}
+
+	/**
+	 * Registers these statistics in the platform MBean server, with the name
+	 * <code>it.uniroma2.sag.kelp:type=Cache,name=&lt;name&gt;</code>
+	 *
+	 * @param name
+	 *            the name identifying the cache
+	 * @return the name of the registered MBean
+	 * @throws JMException
+	 */
+	public ObjectName registerMBean(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Cache,name=" + ObjectName.quote(name));
+		if (server.isRegistered(objectName)) {
+			server.unregisterMBean(objectName);
+		}
+		server.registerMBean(new StandardMBean(this, CacheStatsMXBean.class, true), objectName);
+		return objectName;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("hits=").append(getHits());
+		builder.append(", misses=").append(getMisses());
+		builder.append(", hitRate=").append(String.format("%.4f", getHitRate()));
+		if (getEvictions() >= 0) {
+			builder.append(", evictions=").append(getEvictions());
+		}
+		if (getUsedBytes() >= 0) {
+			builder.append(", usedBytes=").append(getUsedBytes());
+		}
+		builder.append(", missComputationTime=").append(getMissComputationTime()).append("ms");
+		return builder.toString();
+	}
+}
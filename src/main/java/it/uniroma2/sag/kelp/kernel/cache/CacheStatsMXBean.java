@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+/**
+ * The management interface exposing the statistics of a cache through JMX
+ */
+public interface CacheStatsMXBean {
+
+	/**
+	 * @return the number of requests satisfied by the cache
+	 */
+	public long getHits();
+
+	/**
+	 * @return the number of requests not satisfied by the cache
+	 */
+	public long getMisses();
+
+	/**
+	 * @return the fraction of requests satisfied by the cache
+	 */
+	public double getHitRate();
+
+	/**
+	 * @return the number of values discarded by the cache, or -1 if the
+	 *         cache does not provide such information
+	 */
+	public long getEvictions();
+
+	/**
+	 * @return the memory used by the cache in bytes, or -1 if the cache does
+	 *         not provide such information
+	 */
+	public long getUsedBytes();
+
+	/**
+	 * @return the time spent in computing the values not found in the cache,
+	 *         in milliseconds
+	 */
+	public long getMissComputationTime();
+
+	/**
+	 * Resets the counters
+	 */
+	public void reset();
+}
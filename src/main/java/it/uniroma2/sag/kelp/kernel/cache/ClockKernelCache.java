@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A bounded kernel cache adopting the CLOCK eviction policy, an approximation
+ * of the Least Recently Used policy with a cheaper bookkeeping: each stored
+ * value has a reference bit, set when the value is accessed. When the memory
+ * budget is exhausted, a clock hand scans the values, clearing the set bits,
+ * until it finds a value not referenced since the last scan, that is
+ * discarded.
+ */
+@JsonTypeName("clock")
+public class ClockKernelCache extends BoundedKernelCache {
+
+	private static final long serialVersionUID = 5581317398001209733L;
+
+	private static final int BYTES_PER_VALUE = 96;
+
+	private transient Map<ExamplePair, Integer> positions;
+	private transient ExamplePair[] keys;
+	private transient float[] values;
+	private transient boolean[] referenced;
+	private transient int size;
+	private transient int hand;
+
+	public ClockKernelCache() {
+
+	}
+
+	/**
+	 * @param maxBytes
+	 *            the memory budget of the cache, in bytes
+	 */
+	public ClockKernelCache(long maxBytes) {
+		this.setMaxBytes(maxBytes);
+	}
+
+	private void initialize() {
+		if (positions == null) {
+			int capacity = getCapacity();
+			positions = new HashMap<ExamplePair, Integer>();
+			keys = new ExamplePair[capacity];
+			values = new float[capacity];
+			referenced = new boolean[capacity];
+			size = 0;
+			hand = 0;
+		}
+	}
+
+	@Override
+	protected synchronized Float getStoredKernelValue(Example exA, Example exB) {
+		if (positions == null) {
+			return null;
+		}
+		Integer position = positions.get(new ExamplePair(exA, exB));
+		if (position == null) {
+			return null;
+		}
+		referenced[position] = true;
+		return values[position];
+	}
+
+	@Override
+	public synchronized void setKernelValue(Example exA, Example exB, float value) {
+		initialize();
+		ExamplePair key = new ExamplePair(exA, exB);
+		Integer position = positions.get(key);
+		if (position == null) {
+			if (size < keys.length) {
+				position = size++;
+			} else {
+				position = evict();
+			}
+			keys[position] = key;
+			positions.put(key, position);
+		}
+		values[position] = value;
+		referenced[position] = true;
+	}
+
+	/**
+	 * Moves the clock hand up to a value not recently referenced, and discards
+	 * it
+	 *
+	 * @return the position of the discarded value
+	 */
+	private int evict() {
+		while (referenced[hand]) {
+			referenced[hand] = false;
+			hand = (hand + 1) % keys.length;
+		}
+		int victim = hand;
+		positions.remove(keys[victim]);
+		recordEviction();
+		hand = (hand + 1) % keys.length;
+		return victim;
+	}
+
+	@Override
+	public synchronized void flushCache() {
+		positions = null;
+		keys = null;
+		values = null;
+		referenced = null;
+	}
+
+	@Override
+	public synchronized int getNumberOfStoredValues() {
+		return positions == null ? 0 : positions.size();
+	}
+
+	@Override
+	protected int getBytesPerValue() {
+		return BYTES_PER_VALUE;
+	}
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A thread-safe kernel cache, that can be shared among multiple threads
+ * computing kernel values in parallel, e.g. the binary learners of a
+ * one-vs-all schema trained concurrently.
+ * <p>
+ * The cache is a table of <code>size</code> entries (by default
+ * {@value #DEFAULT_SIZE}), each one storing the kernel value of an unordered
+ * pair of examples. A pair is stored in the entry selected by hashing the
+ * ids of its examples, replacing the pair previously stored there, if any.
+ * The entries are partitioned in <code>concurrencyLevel</code> stripes, each
+ * one protected by its own lock, so that threads accessing different stripes
+ * never contend.
+ */
+@JsonTypeName("concurrent")
+public class ConcurrentKernelCache extends KernelCache implements MeasurableCache {
+
+	private static final long serialVersionUID = -4416893126457301865L;
+
+	/**
+	 * The default number of kernel values that can be stored
+	 */
+	public static final int DEFAULT_SIZE = 1000000;
+
+	/**
+	 * The default number of lock stripes
+	 */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 64;
+
+	private static final long EMPTY = -1;
+
+	/**
+	 * The memory required by an entry: the ids of the two examples and the
+	 * kernel value
+	 */
+	private static final int BYTES_PER_ENTRY = 8 + 8 + 4;
+
+	private int size = DEFAULT_SIZE;
+	private int concurrencyLevel = DEFAULT_CONCURRENCY_LEVEL;
+
+	private transient volatile Table table;
+
+	/**
+	 * The storage of the cache, allocated at the first use
+	 */
+	private static class Table {
+		private final long[] lowIds;
+		private final long[] highIds;
+		private final float[] values;
+		private final Object[] locks;
+		private final AtomicLong evictions = new AtomicLong();
+
+		Table(int size, int concurrencyLevel) {
+			lowIds = new long[size];
+			highIds = new long[size];
+			values = new float[size];
+			Arrays.fill(lowIds, EMPTY);
+			locks = new Object[concurrencyLevel];
+			for (int i = 0; i < concurrencyLevel; i++) {
+				locks[i] = new Object();
+			}
+		}
+	}
+
+	public ConcurrentKernelCache() {
+
+	}
+
+	/**
+	 * @param size
+	 *            the number of kernel values that can be stored
+	 */
+	public ConcurrentKernelCache(int size) {
+		setSize(size);
+	}
+
+	/**
+	 * @param size
+	 *            the number of kernel values that can be stored
+	 * @param concurrencyLevel
+	 *            the number of lock stripes
+	 */
+	public ConcurrentKernelCache(int size, int concurrencyLevel) {
+		setSize(size);
+		setConcurrencyLevel(concurrencyLevel);
+	}
+
+	/**
+	 * @return the number of kernel values that can be stored
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @param size
+	 *            the number of kernel values that can be stored
+	 */
+	public void setSize(int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("The size of a ConcurrentKernelCache must be positive");
+		}
+		this.size = size;
+		this.table = null;
+	}
+
+	/**
+	 * @return the number of lock stripes
+	 */
+	public int getConcurrencyLevel() {
+		return concurrencyLevel;
+	}
+
+	/**
+	 * @param concurrencyLevel
+	 *            the number of lock stripes
+	 */
+	public void setConcurrencyLevel(int concurrencyLevel) {
+		if (concurrencyLevel <= 0) {
+			throw new IllegalArgumentException("The concurrency level of a ConcurrentKernelCache must be positive");
+		}
+		this.concurrencyLevel = concurrencyLevel;
+		this.table = null;
+	}
+
+	private Table getTable() {
+		Table current = table;
+		if (current == null) {
+			synchronized (this) {
+				current = table;
+				if (current == null) {
+					current = new Table(size, Math.max(1, Math.min(concurrencyLevel, size)));
+					table = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	private int getEntry(long lowId, long highId) {
+		long hash = lowId * 0x9E3779B97F4A7C15L + highId;
+		hash ^= (hash >>> 31);
+		hash *= 0xBF58476D1CE4E5B9L;
+		hash ^= (hash >>> 29);
+		return (int) ((hash & Long.MAX_VALUE) % size);
+	}
+
+	@Override
+	protected Float getStoredKernelValue(Example exA, Example exB) {
+		Table current = table;
+		if (current == null) {
+			return null;
+		}
+		long lowId = Math.min(exA.getId(), exB.getId());
+		long highId = Math.max(exA.getId(), exB.getId());
+		int entry = getEntry(lowId, highId);
+		synchronized (current.locks[entry % current.locks.length]) {
+			if (current.lowIds[entry] == lowId && current.highIds[entry] == highId) {
+				return current.values[entry];
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void setKernelValue(Example exA, Example exB, float value) {
+		Table current = getTable();
+		long lowId = Math.min(exA.getId(), exB.getId());
+		long highId = Math.max(exA.getId(), exB.getId());
+		int entry = getEntry(lowId, highId);
+		synchronized (current.locks[entry % current.locks.length]) {
+			if (current.lowIds[entry] != EMPTY
+					&& (current.lowIds[entry] != lowId || current.highIds[entry] != highId)) {
+				current.evictions.incrementAndGet();
+			}
+			current.lowIds[entry] = lowId;
+			current.highIds[entry] = highId;
+			current.values[entry] = value;
+		}
+	}
+
+	/**
+	 * @return the memory allocated for the entries, in bytes
+	 */
+	@Override
+	@JsonIgnore
+	public long getUsedBytes() {
+		return table == null ? 0 : (long) size * BYTES_PER_ENTRY;
+	}
+
+	/**
+	 * @return the number of kernel values replaced by the value of a
+	 *         different pair stored in the same entry
+	 */
+	@Override
+	@JsonIgnore
+	public long getEvictions() {
+		Table current = table;
+		return current == null ? 0 : current.evictions.get();
+	}
+
+	@Override
+	public void flushCache() {
+		Table current = table;
+		if (current == null) {
+			return;
+		}
+		for (int stripe = 0; stripe < current.locks.length; stripe++) {
+			synchronized (current.locks[stripe]) {
+				for (int entry = stripe; entry < current.lowIds.length; entry += current.locks.length) {
+					current.lowIds[entry] = EMPTY;
+				}
+			}
+		}
+	}
+
+}
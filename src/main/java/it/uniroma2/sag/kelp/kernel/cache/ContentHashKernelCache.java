@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A kernel cache that identifies the examples by their content, rather than
+ * by their ids, and stores the kernel values in another kernel cache.
+ * <p>
+ * Example ids are unique only within a JVM: a test example can receive the
+ * same id of a support vector loaded from a model learned in another JVM, and
+ * a cache indexed by ids would return wrong kernel values. Identifying the
+ * examples by a fingerprint of their representations (see
+ * <code>ExampleFingerprint</code>), this cache can be safely used at
+ * prediction time, e.g. to avoid recomputing the norms of the support
+ * vectors. Examples must not be modified after being used with the cache.
+ */
+@JsonTypeName("contentHash")
+public class ContentHashKernelCache extends KernelCache {
+
+	private static final long serialVersionUID = -1269032843817458032L;
+
+	private KernelCache cache;
+
+	private int maxIdentities = ContentIdentities.DEFAULT_MAX_IDENTITIES;
+
+	private transient volatile ContentIdentities identities;
+
+	public ContentHashKernelCache() {
+
+	}
+
+	/**
+	 * @param cache
+	 *            the cache storing the kernel values
+	 */
+	public ContentHashKernelCache(KernelCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the cache storing the kernel values
+	 */
+	public KernelCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param cache
+	 *            the cache storing the kernel values
+	 */
+	public void setCache(KernelCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the maximum number of distinct examples identified by the
+	 *         cache; the least recently used ones are forgotten, together
+	 *         with their kernel values
+	 */
+	public int getMaxIdentities() {
+		return maxIdentities;
+	}
+
+	/**
+	 * @param maxIdentities
+	 *            the maximum number of distinct examples identified by the
+	 *            cache
+	 */
+	public synchronized void setMaxIdentities(int maxIdentities) {
+		this.maxIdentities = maxIdentities;
+		this.identities = null;
+	}
+
+	private ContentIdentities getIdentities() {
+		ContentIdentities current = identities;
+		if (current == null) {
+			synchronized (this) {
+				current = identities;
+				if (current == null) {
+					current = new ContentIdentities(maxIdentities);
+					identities = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	@Override
+	protected Float getStoredKernelValue(Example exA, Example exB) {
+		ContentIdentities contentIdentities = getIdentities();
+		return cache.getKernelValue(contentIdentities.getIdentity(exA), contentIdentities.getIdentity(exB));
+	}
+
+	@Override
+	public void setKernelValue(Example exA, Example exB, float value) {
+		ContentIdentities contentIdentities = getIdentities();
+		cache.setKernelValue(contentIdentities.getIdentity(exA), contentIdentities.getIdentity(exB), value);
+	}
+
+	@Override
+	public void flushCache() {
+		cache.flushCache();
+		getIdentities().clear();
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A squared norm cache that identifies the examples by their content, rather
+ * than by their ids, and stores the norms in another squared norm cache.
+ * <p>
+ * Example ids are unique only within a JVM: a test example can receive the
+ * same id of a support vector loaded from a model learned in another JVM.
+ * Identifying the examples by a fingerprint of their representations (see
+ * <code>ExampleFingerprint</code>), this cache can be safely used at
+ * prediction time. Examples must not be modified after being used with the
+ * cache.
+ */
+@JsonTypeName("contentHash")
+public class ContentHashSquaredNormCache implements SquaredNormCache, Serializable {
+
+	private static final long serialVersionUID = 4476410927783105166L;
+
+	private SquaredNormCache cache;
+
+	private int maxIdentities = ContentIdentities.DEFAULT_MAX_IDENTITIES;
+
+	private transient volatile ContentIdentities identities;
+
+	public ContentHashSquaredNormCache() {
+
+	}
+
+	/**
+	 * @param cache
+	 *            the cache storing the squared norms
+	 */
+	public ContentHashSquaredNormCache(SquaredNormCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the cache storing the squared norms
+	 */
+	public SquaredNormCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param cache
+	 *            the cache storing the squared norms
+	 */
+	public void setCache(SquaredNormCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the maximum number of distinct examples identified by the
+	 *         cache; the least recently used ones are forgotten, together
+	 *         with their squared norms
+	 */
+	public int getMaxIdentities() {
+		return maxIdentities;
+	}
+
+	/**
+	 * @param maxIdentities
+	 *            the maximum number of distinct examples identified by the
+	 *            cache
+	 */
+	public synchronized void setMaxIdentities(int maxIdentities) {
+		this.maxIdentities = maxIdentities;
+		this.identities = null;
+	}
+
+	private ContentIdentities getIdentities() {
+		ContentIdentities current = identities;
+		if (current == null) {
+			synchronized (this) {
+				current = identities;
+				if (current == null) {
+					current = new ContentIdentities(maxIdentities);
+					identities = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	@Override
+	public Float getSquaredNorm(Example example) {
+		return cache.getSquaredNorm(getIdentities().getIdentity(example));
+	}
+
+	@Override
+	public void setSquaredNormValue(Example example, float squaredNorm) {
+		cache.setSquaredNormValue(getIdentities().getIdentity(example), squaredNorm);
+	}
+
+	@Override
+	public void flushCache() {
+		cache.flushCache();
+		getIdentities().clear();
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFingerprint;
+import it.uniroma2.sag.kelp.data.example.SimpleExample;
+
+/**
+ * Maps examples to identities derived from their content: examples with the
+ * same representations are mapped to the same identity, i.e. an empty
+ * example with a unique id, while examples with different representations
+ * are mapped to different identities even if they share the same id.
+ * <p>
+ * Since computing the fingerprint of an example is expensive, it is computed
+ * once per example instance: the identities of the example instances are
+ * memoized in a table that does not prevent the examples from being garbage
+ * collected. The table is partitioned in stripes, each one protected by its
+ * own lock, so that threads looking up different examples never contend;
+ * only the first lookup of an instance, after its fingerprint has been
+ * computed, briefly locks the table of the identities.
+ * <p>
+ * At most <code>maxIdentities</code> identities are kept, discarding the
+ * least recently used ones: an example whose identity has been discarded
+ * receives a new identity, thus its values stored in a cache are not found
+ * anymore, but they are never confused with the values of other examples.
+ */
+class ContentIdentities {
+
+	/**
+	 * The default maximum number of identities
+	 */
+	static final int DEFAULT_MAX_IDENTITIES = 1000000;
+
+	private static final int MEMO_STRIPES = 64;
+
+	/**
+	 * A weak reference to an example instance, equal only to the references
+	 * to the same instance
+	 */
+	private static class InstanceKey extends WeakReference<Example> {
+		private final int hash;
+
+		InstanceKey(Example example, ReferenceQueue<Example> queue) {
+			super(example, queue);
+			this.hash = System.identityHashCode(example);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof InstanceKey)) {
+				return false;
+			}
+			Example example = get();
+			return example != null && example == ((InstanceKey) obj).get();
+		}
+	}
+
+	/**
+	 * A stripe of the memo: the identities of the example instances, from
+	 * which the collected instances are removed
+	 */
+	private static class MemoStripe {
+		private final ReferenceQueue<Example> collected = new ReferenceQueue<Example>();
+		private final Map<InstanceKey, Example> identities;
+
+		MemoStripe(final int capacity) {
+			identities = new LinkedHashMap<InstanceKey, Example>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<InstanceKey, Example> eldest) {
+					return size() > capacity;
+				}
+			};
+		}
+
+		synchronized Example get(Example example) {
+			removeCollected();
+			return identities.get(new InstanceKey(example, null));
+		}
+
+		synchronized void put(Example example, Example identity) {
+			removeCollected();
+			identities.put(new InstanceKey(example, collected), identity);
+		}
+
+		synchronized void clear() {
+			identities.clear();
+			removeCollected();
+		}
+
+		private void removeCollected() {
+			Reference<? extends Example> key;
+			while ((key = collected.poll()) != null) {
+				identities.remove(key);
+			}
+		}
+	}
+
+	private final MemoStripe[] memo = new MemoStripe[MEMO_STRIPES];
+	private final Map<Long, Example> identities;
+
+	/**
+	 * @param maxIdentities
+	 *            the maximum number of identities
+	 */
+	ContentIdentities(final int maxIdentities) {
+		if (maxIdentities <= 0) {
+			throw new IllegalArgumentException("The maximum number of identities must be positive");
+		}
+		identities = new LinkedHashMap<Long, Example>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Example> eldest) {
+				return size() > maxIdentities;
+			}
+		};
+		int stripeCapacity = Math.max(1, (maxIdentities + MEMO_STRIPES - 1) / MEMO_STRIPES);
+		for (int i = 0; i < MEMO_STRIPES; i++) {
+			memo[i] = new MemoStripe(stripeCapacity);
+		}
+	}
+
+	/**
+	 * @return the identity of <code>example</code>
+	 */
+	Example getIdentity(Example example) {
+		MemoStripe stripe = memo[(System.identityHashCode(example) & Integer.MAX_VALUE) % MEMO_STRIPES];
+		Example identity = stripe.get(example);
+		if (identity != null) {
+			return identity;
+		}
+		long fingerprint = ExampleFingerprint.of(example);
+		synchronized (identities) {
+			identity = identities.get(fingerprint);
+			if (identity == null) {
+				identity = new SimpleExample();
+				identities.put(fingerprint, identity);
+			}
+		}
+		stripe.put(example, identity);
+		return identity;
+	}
+
+	/**
+	 * Discards all the identities
+	 */
+	void clear() {
+		synchronized (identities) {
+			identities.clear();
+		}
+		for (MemoStripe stripe : memo) {
+			stripe.clear();
+		}
+	}
+
+	/**
+	 * @return the number of distinct identities
+	 */
+	int size() {
+		synchronized (identities) {
+			return identities.size();
+		}
+	}
+}
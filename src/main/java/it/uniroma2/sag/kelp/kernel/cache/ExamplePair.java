@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * An unordered pair of example ids, used as key of the kernel values
+ */
+final class ExamplePair {
+
+	private final long lowId;
+	private final long highId;
+
+	ExamplePair(Example exA, Example exB) {
+		this.lowId = Math.min(exA.getId(), exB.getId());
+		this.highId = Math.max(exA.getId(), exB.getId());
+	}
+
+	@Override
+	public int hashCode() {
+		long hash = lowId * 0x9E3779B97F4A7C15L + highId;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ExamplePair)) {
+			return false;
+		}
+		ExamplePair other = (ExamplePair) obj;
+		return lowId == other.lowId && highId == other.highId;
+	}
+}
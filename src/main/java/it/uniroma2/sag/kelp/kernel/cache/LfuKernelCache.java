@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A bounded kernel cache adopting a Least Frequently Used eviction policy:
+ * when the memory budget is exhausted, the kernel value accessed the fewest
+ * times is discarded (among values with the same frequency, the least
+ * recently stored one). Both accesses and evictions require constant time.
+ */
+@JsonTypeName("lfu")
+public class LfuKernelCache extends BoundedKernelCache {
+
+	private static final long serialVersionUID = -3158846205790357116L;
+
+	private static final int BYTES_PER_VALUE = 144;
+
+	private static class Entry {
+		private float value;
+		private int frequency;
+
+		Entry(float value) {
+			this.value = value;
+			this.frequency = 1;
+		}
+	}
+
+	private transient Map<ExamplePair, Entry> values;
+	/**
+	 * The keys of the entries, grouped by frequency
+	 */
+	private transient Map<Integer, LinkedHashSet<ExamplePair>> frequencies;
+	private transient int minFrequency;
+
+	public LfuKernelCache() {
+
+	}
+
+	/**
+	 * @param maxBytes
+	 *            the memory budget of the cache, in bytes
+	 */
+	public LfuKernelCache(long maxBytes) {
+		this.setMaxBytes(maxBytes);
+	}
+
+	private void initialize() {
+		if (values == null) {
+			values = new HashMap<ExamplePair, Entry>();
+			frequencies = new HashMap<Integer, LinkedHashSet<ExamplePair>>();
+			minFrequency = 0;
+		}
+	}
+
+	private void addToFrequency(ExamplePair key, int frequency) {
+		LinkedHashSet<ExamplePair> keys = frequencies.get(frequency);
+		if (keys == null) {
+			keys = new LinkedHashSet<ExamplePair>();
+			frequencies.put(frequency, keys);
+		}
+		keys.add(key);
+	}
+
+	private void removeFromFrequency(ExamplePair key, int frequency) {
+		LinkedHashSet<ExamplePair> keys = frequencies.get(frequency);
+		keys.remove(key);
+		if (keys.isEmpty()) {
+			frequencies.remove(frequency);
+			if (minFrequency == frequency) {
+				minFrequency++;
+			}
+		}
+	}
+
+	@Override
+	protected synchronized Float getStoredKernelValue(Example exA, Example exB) {
+		if (values == null) {
+			return null;
+		}
+		ExamplePair key = new ExamplePair(exA, exB);
+		Entry entry = values.get(key);
+		if (entry == null) {
+			return null;
+		}
+		removeFromFrequency(key, entry.frequency);
+		entry.frequency++;
+		addToFrequency(key, entry.frequency);
+		return entry.value;
+	}
+
+	@Override
+	public synchronized void setKernelValue(Example exA, Example exB, float value) {
+		initialize();
+		ExamplePair key = new ExamplePair(exA, exB);
+		Entry entry = values.get(key);
+		if (entry != null) {
+			entry.value = value;
+			return;
+		}
+		if (values.size() >= getCapacity()) {
+			evict();
+		}
+		values.put(key, new Entry(value));
+		addToFrequency(key, 1);
+		minFrequency = 1;
+	}
+
+	private void evict() {
+		LinkedHashSet<ExamplePair> keys = frequencies.get(minFrequency);
+		Iterator<ExamplePair> iterator = keys.iterator();
+		ExamplePair victim = iterator.next();
+		iterator.remove();
+		if (keys.isEmpty()) {
+			frequencies.remove(minFrequency);
+		}
+		values.remove(victim);
+		recordEviction();
+	}
+
+	@Override
+	public synchronized void flushCache() {
+		values = null;
+		frequencies = null;
+	}
+
+	@Override
+	public synchronized int getNumberOfStoredValues() {
+		return values == null ? 0 : values.size();
+	}
+
+	@Override
+	protected int getBytesPerValue() {
+		return BYTES_PER_VALUE;
+	}
+
+}
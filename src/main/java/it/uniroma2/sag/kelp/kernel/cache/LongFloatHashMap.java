@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.util.Arrays;
+
+/**
+ * A compact open-addressing hash map from non-negative <code>long</code> keys
+ * to <code>float</code> values, avoiding the boxing overhead of a
+ * <code>HashMap</code> when caching millions of kernel values
+ */
+class LongFloatHashMap {
+
+	static final long EMPTY = -1;
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private float[] values;
+	private int size;
+
+	LongFloatHashMap() {
+		this(16);
+	}
+
+	LongFloatHashMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < expectedSize) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new float[capacity];
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	private int findPosition(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		int mask = keys.length - 1;
+		int position = (int) (hash ^ (hash >>> 32)) & mask;
+		while (keys[position] != EMPTY && keys[position] != key) {
+			position = (position + 1) & mask;
+		}
+		return position;
+	}
+
+	/**
+	 * @return the value associated to <code>key</code>, or
+	 *         <code>Float.NaN</code> if the key is not in the map
+	 */
+	float get(long key) {
+		int position = findPosition(key);
+		return keys[position] == EMPTY ? Float.NaN : values[position];
+	}
+
+	void put(long key, float value) {
+		int position = findPosition(key);
+		if (keys[position] == EMPTY) {
+			if (size + 1 > keys.length * LOAD_FACTOR) {
+				rehash(keys.length << 1);
+				position = findPosition(key);
+			}
+			keys[position] = key;
+			size++;
+		}
+		values[position] = value;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		float[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int position = findPosition(oldKeys[i]);
+				keys[position] = oldKeys[i];
+				values[position] = oldValues[i];
+				size++;
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * @return the number of positions of the table, to be scanned with
+	 *         {@link #keyAt(int)} and {@link #valueAt(int)}
+	 */
+	int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * @return the key stored at a position of the table, or {@link #EMPTY}
+	 */
+	long keyAt(int position) {
+		return keys[position];
+	}
+
+	float valueAt(int position) {
+		return values[position];
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A bounded kernel cache adopting a Least Recently Used eviction policy:
+ * when the memory budget is exhausted, the kernel value that has not been
+ * accessed for the longest time is discarded. It suits the access pattern of
+ * the SMO-like solvers, that repeatedly access the kernel values of the
+ * examples in the current working set.
+ */
+@JsonTypeName("lru")
+public class LruKernelCache extends BoundedKernelCache {
+
+	private static final long serialVersionUID = 2745089311528170432L;
+
+	private static final int BYTES_PER_VALUE = 96;
+
+	private transient Map<ExamplePair, Float> values;
+
+	public LruKernelCache() {
+
+	}
+
+	/**
+	 * @param maxBytes
+	 *            the memory budget of the cache, in bytes
+	 */
+	public LruKernelCache(long maxBytes) {
+		this.setMaxBytes(maxBytes);
+	}
+
+	private Map<ExamplePair, Float> getValues() {
+		if (values == null) {
+			final int capacity = getCapacity();
+			values = new LinkedHashMap<ExamplePair, Float>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ExamplePair, Float> eldest) {
+					if (size() > capacity) {
+						recordEviction();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+		return values;
+	}
+
+	@Override
+	protected synchronized Float getStoredKernelValue(Example exA, Example exB) {
+		return getValues().get(new ExamplePair(exA, exB));
+	}
+
+	@Override
+	public synchronized void setKernelValue(Example exA, Example exB, float value) {
+		getValues().put(new ExamplePair(exA, exB), value);
+	}
+
+	@Override
+	public synchronized void flushCache() {
+		values = null;
+	}
+
+	@Override
+	public synchronized int getNumberOfStoredValues() {
+		return values == null ? 0 : values.size();
+	}
+
+	@Override
+	protected int getBytesPerValue() {
+		return BYTES_PER_VALUE;
+	}
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+/**
+ * A cache reporting the memory allocated for its values and the number of
+ * values it discarded to make room for new ones. These figures are exposed
+ * by the statistics of the monitored caches (see {@link CacheStats}).
+ */
+public interface MeasurableCache {
+
+	/**
+	 * @return the memory used by the cache, in bytes
+	 */
+	public long getUsedBytes();
+
+	/**
+	 * @return the number of stored values discarded, or overwritten, to store
+	 *         other values
+	 */
+	public long getEvictions();
+}
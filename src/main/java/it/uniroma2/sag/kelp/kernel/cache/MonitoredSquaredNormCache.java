@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.io.Serializable;
+
+import javax.management.JMException;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A squared norm cache that collects the statistics (see {@link CacheStats})
+ * of another squared norm cache, i.e. hits, misses, the time spent by the
+ * kernel in computing the missing norms and, when the cache provides it, the
+ * used memory.
+ * <p>
+ * When the <code>name</code> property is specified, the statistics are
+ * published as a JMX MBean at the first use of the cache.
+ */
+@JsonTypeName("monitored")
+public class MonitoredSquaredNormCache implements SquaredNormCache, Serializable {
+
+	private static final long serialVersionUID = -7308271126745039815L;
+
+	private SquaredNormCache cache;
+	private String name;
+
+	private transient volatile CacheStats stats;
+
+	public MonitoredSquaredNormCache() {
+
+	}
+
+	/**
+	 * @param cache
+	 *            the monitored cache
+	 */
+	public MonitoredSquaredNormCache(SquaredNormCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @param cache
+	 *            the monitored cache
+	 * @param name
+	 *            the name of the JMX MBean publishing the statistics
+	 */
+	public MonitoredSquaredNormCache(SquaredNormCache cache, String name) {
+		this.cache = cache;
+		this.name = name;
+	}
+
+	/**
+	 * @return the monitored cache
+	 */
+	public SquaredNormCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param cache
+	 *            the monitored cache
+	 */
+	public void setCache(SquaredNormCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the name of the JMX MBean publishing the statistics
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param name
+	 *            the name of the JMX MBean publishing the statistics
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the statistics of the monitored cache
+	 */
+	@JsonIgnore
+	public CacheStats getStats() {
+		CacheStats current = stats;
+		if (current == null) {
+			current = initializeStats();
+		}
+		return current;
+	}
+
+	private synchronized CacheStats initializeStats() {
+		if (stats != null) {
+			return stats;
+		}
+		CacheStats newStats = new CacheStats() {
+			@Override
+			public long getEvictions() {
+				return getEvictions(cache);
+			}
+
+			@Override
+			public long getUsedBytes() {
+				return getUsedBytes(cache);
+			}
+		};
+		if (name != null) {
+			try {
+				newStats.registerMBean(name);
+			} catch (JMException e) {
+				throw new IllegalStateException("Unable to register the MBean of the squared norm cache " + name, e);
+			}
+		}
+		stats = newStats;
+		return newStats;
+	}
+
+	@Override
+	public Float getSquaredNorm(Example example) {
+		Float value = cache.getSquaredNorm(example);
+		CacheStats cacheStats = getStats();
+		if (value == null) {
+			cacheStats.recordMiss(example.getId());
+		} else {
+			cacheStats.recordHit();
+		}
+		return value;
+	}
+
+	@Override
+	public void setSquaredNormValue(Example example, float squaredNorm) {
+		cache.setSquaredNormValue(example, squaredNorm);
+		getStats().recordStore(example.getId());
+	}
+
+	@Override
+	public void flushCache() {
+		cache.flushCache();
+	}
+
+}
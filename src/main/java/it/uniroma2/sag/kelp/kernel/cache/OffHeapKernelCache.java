@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A kernel cache equivalent to <code>FixSizeKernelCache</code> that stores
+ * the kernel values outside the Java heap, in direct <code>ByteBuffer</code>s.
+ * <p>
+ * Each of the <code>examplesToStore</code> examples is assigned to a slot
+ * the first time it is involved in a kernel computation; when all the slots
+ * are taken, the oldest assigned slot is recycled. Being the kernel
+ * symmetric, a single value is stored for each unordered pair of slots, in a
+ * packed triangular matrix as in <code>SymmetricFixIndexKernelCache</code>.
+ * Since the storage is never scanned by the garbage collector, multi-GB
+ * kernel matrices do not cause long GC pauses.
+ * <p>
+ * The off-heap memory is allocated at the first use of the cache: in order to
+ * store N examples, 2*N*(N+1) bytes are required, and the JVM option
+ * <code>-XX:MaxDirectMemorySize</code> must be set accordingly.
+ */
+@JsonTypeName("offHeap")
+public class OffHeapKernelCache extends KernelCache implements MeasurableCache {
+
+	private static final long serialVersionUID = -2651478003926447122L;
+
+	private static final int FLOAT_SIZE = 4;
+
+	private static final int CLEAR_CHUNK_SIZE = 8192;
+
+	/**
+	 * The number of values of each direct buffer, whose capacity in bytes
+	 * must be an int
+	 */
+	private static final long VALUES_PER_BLOCK = 1L << 28;
+
+	private int examplesToStore;
+
+	/**
+	 * The packed triangular matrix: the row <code>j</code> contains the
+	 * values between the slot <code>j</code> and the slots <code>0..j</code>
+	 */
+	private transient ByteBuffer[] blocks;
+	private transient Map<Long, Integer> slots;
+	private transient long[] slotIds;
+	private transient int nextSlot;
+	private transient long evictions;
+
+	public OffHeapKernelCache() {
+
+	}
+
+	/**
+	 * @param examplesToStore
+	 *            the maximum number of examples whose kernel values are stored
+	 */
+	public OffHeapKernelCache(int examplesToStore) {
+		this.examplesToStore = examplesToStore;
+	}
+
+	/**
+	 * @return the maximum number of examples whose kernel values are stored
+	 */
+	public int getExamplesToStore() {
+		return examplesToStore;
+	}
+
+	/**
+	 * @param examplesToStore
+	 *            the maximum number of examples whose kernel values are stored
+	 */
+	public void setExamplesToStore(int examplesToStore) {
+		this.examplesToStore = examplesToStore;
+		this.blocks = null;
+	}
+
+	private void allocate() {
+		long numberOfValues = (long) examplesToStore * (examplesToStore + 1) / 2;
+		int numberOfBlocks = (int) ((numberOfValues + VALUES_PER_BLOCK - 1) / VALUES_PER_BLOCK);
+		blocks = new ByteBuffer[numberOfBlocks];
+		for (int i = 0; i < numberOfBlocks; i++) {
+			long values = Math.min(VALUES_PER_BLOCK, numberOfValues - i * VALUES_PER_BLOCK);
+			blocks[i] = ByteBuffer.allocateDirect((int) values * FLOAT_SIZE).order(ByteOrder.nativeOrder());
+		}
+		slots = new HashMap<Long, Integer>();
+		slotIds = new long[examplesToStore];
+		clear();
+	}
+
+	private void clear() {
+		float[] empty = new float[CLEAR_CHUNK_SIZE];
+		Arrays.fill(empty, Float.NaN);
+		for (ByteBuffer block : blocks) {
+			FloatBuffer values = block.duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+			while (values.hasRemaining()) {
+				values.put(empty, 0, Math.min(empty.length, values.remaining()));
+			}
+		}
+		slots.clear();
+		nextSlot = 0;
+	}
+
+	/**
+	 * @return the position of the value of two slots in the packed
+	 *         triangular matrix
+	 */
+	private static long getPosition(int slotA, int slotB) {
+		int low = Math.min(slotA, slotB);
+		long high = Math.max(slotA, slotB);
+		return high * (high + 1) / 2 + low;
+	}
+
+	private float getValue(int slotA, int slotB) {
+		long position = getPosition(slotA, slotB);
+		return blocks[(int) (position / VALUES_PER_BLOCK)]
+				.getFloat((int) (position % VALUES_PER_BLOCK) * FLOAT_SIZE);
+	}
+
+	private void putValue(int slotA, int slotB, float value) {
+		long position = getPosition(slotA, slotB);
+		blocks[(int) (position / VALUES_PER_BLOCK)].putFloat((int) (position % VALUES_PER_BLOCK) * FLOAT_SIZE,
+				value);
+	}
+
+	/**
+	 * Assigns a slot to an example, recycling the oldest slot when the cache
+	 * is full
+	 */
+	private int assignSlot(long id) {
+		Integer slot = slots.get(id);
+		if (slot != null) {
+			return slot;
+		}
+		int newSlot = nextSlot;
+		nextSlot = (nextSlot + 1) % examplesToStore;
+		if (slots.size() == examplesToStore) {
+			evictions++;
+			slots.remove(slotIds[newSlot]);
+			invalidate(newSlot);
+		}
+		slots.put(id, newSlot);
+		slotIds[newSlot] = id;
+		return newSlot;
+	}
+
+	/**
+	 * Removes all the values stored for a slot
+	 */
+	private void invalidate(int slot) {
+		for (int i = 0; i < examplesToStore; i++) {
+			putValue(slot, i, Float.NaN);
+		}
+	}
+
+	@Override
+	protected synchronized Float getStoredKernelValue(Example exA, Example exB) {
+		if (blocks == null) {
+			return null;
+		}
+		Integer slotA = slots.get(exA.getId());
+		Integer slotB = slots.get(exB.getId());
+		if (slotA == null || slotB == null) {
+			return null;
+		}
+		float value = getValue(slotA, slotB);
+		if (Float.isNaN(value)) {
+			return null;
+		}
+		return value;
+	}
+
+	@Override
+	public synchronized void setKernelValue(Example exA, Example exB, float value) {
+		if (blocks == null) {
+			allocate();
+		}
+		int slotA = assignSlot(exA.getId());
+		int slotB = assignSlot(exB.getId());
+		if (slots.get(exA.getId()) == null) {
+			// the slot of A has been recycled to store B
+			return;
+		}
+		putValue(slotA, slotB, value);
+	}
+
+	/**
+	 * @return the off-heap memory allocated for the kernel values, plus the
+	 *         heap memory storing the ids of the examples, in bytes
+	 */
+	@Override
+	@JsonIgnore
+	public synchronized long getUsedBytes() {
+		if (blocks == null) {
+			return 0;
+		}
+		return (long) examplesToStore * (examplesToStore + 1) / 2 * FLOAT_SIZE + (long) examplesToStore * 8;
+	}
+
+	/**
+	 * @return the number of examples whose kernel values have been discarded
+	 *         to recycle their slots
+	 */
+	@Override
+	@JsonIgnore
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized void flushCache() {
+		if (blocks != null) {
+			clear();
+		}
+	}
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.dataset.Dataset;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFingerprint;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.utils.JacksonSerializerWrapper;
+
+/**
+ * A kernel cache that can be saved on file and reloaded in later runs, so
+ * that repeated experiments over the same data, e.g. a grid search over the
+ * parameters of a learning algorithm, do not recompute the kernel values.
+ * <p>
+ * The kernel values are indexed by the content fingerprints of the examples
+ * (see {@link ExampleFingerprint}), rather than by their ids, that change
+ * from one JVM to another. Therefore, a cache built on a dataset can serve
+ * any subset of it, e.g. the folds of a cross validation.
+ * <p>
+ * The method {@link #open(String, Dataset, Kernel)} names the cache file after
+ * a fingerprint of the dataset and a hash of the JSON description of the
+ * kernel, so that a cache is reused only with the same data and the same
+ * kernel. Alternatively, the file can be directly specified with the JSON
+ * property <code>file</code>. The cache is loaded at its first use, while
+ * the computed values are written only when {@link #save()} is invoked.
+ * <p>
+ * The cache is not bounded, thus it is meant for datasets whose kernel matrix
+ * fits in memory.
+ */
+@JsonTypeName("persistent")
+public class PersistentKernelCache extends KernelCache {
+
+	private static final long serialVersionUID = 7120946653827814390L;
+
+	/**
+	 * The extension of the persistent kernel cache files
+	 */
+	public static final String FILE_EXTENSION = ".klpk";
+
+	private static final int MAGIC = 0x4B4C504B;
+	private static final int VERSION = 1;
+
+	private String file;
+
+	private transient boolean loaded;
+	private transient Map<Long, Integer> exampleIndexes;
+	private transient Map<Long, Integer> fingerprintIndexes;
+	private transient List<Long> fingerprints;
+	private transient LongFloatHashMap values;
+
+	public PersistentKernelCache() {
+
+	}
+
+	/**
+	 * @param file
+	 *            the file where the cache is stored
+	 */
+	public PersistentKernelCache(String file) {
+		this.file = file;
+	}
+
+	/**
+	 * Creates a cache for a kernel operating on a dataset. The cache is
+	 * stored in <code>directory</code>, in a file named after a fingerprint
+	 * of the dataset and a hash of the JSON description of the kernel: if
+	 * such a file exists, the values it contains are reused.
+	 * <p>
+	 * The kernel cache of <code>kernel</code> is ignored when computing its
+	 * hash, thus the returned cache can be directly assigned to it.
+	 *
+	 * @param directory
+	 *            the directory containing the cache files
+	 * @param dataset
+	 *            the dataset the kernel will operate on
+	 * @param kernel
+	 *            the kernel whose values will be stored
+	 * @return the persistent kernel cache
+	 * @throws IOException
+	 */
+	public static PersistentKernelCache open(String directory, Dataset dataset, Kernel kernel) throws IOException {
+		KernelCache kernelCache = kernel.getKernelCache();
+		String kernelDescription;
+		try {
+			kernel.setKernelCache(null);
+			kernelDescription = new JacksonSerializerWrapper().writeValueAsString(kernel);
+		} finally {
+			kernel.setKernelCache(kernelCache);
+		}
+		String fileName = ExampleFingerprint.toHex(ExampleFingerprint.of(dataset)) + "_"
+				+ ExampleFingerprint.toHex(ExampleFingerprint.of(kernelDescription)) + FILE_EXTENSION;
+		return new PersistentKernelCache(new File(directory, fileName).getPath());
+	}
+
+	/**
+	 * @return the file where the cache is stored
+	 */
+	public String getFile() {
+		return file;
+	}
+
+	/**
+	 * @param file
+	 *            the file where the cache is stored
+	 */
+	public synchronized void setFile(String file) {
+		this.file = file;
+		this.loaded = false;
+	}
+
+	/**
+	 * @return the number of stored kernel values
+	 */
+	@JsonIgnore
+	public synchronized int getNumberOfStoredValues() {
+		load();
+		return values.size();
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		exampleIndexes = new HashMap<Long, Integer>();
+		fingerprintIndexes = new HashMap<Long, Integer>();
+		fingerprints = new ArrayList<Long>();
+		values = new LongFloatHashMap();
+		loaded = true;
+		if (file == null || !new File(file).exists()) {
+			return;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() > VERSION) {
+					throw new IOException("The file is not a KeLP kernel cache");
+				}
+				int numberOfFingerprints = in.readInt();
+				for (int i = 0; i < numberOfFingerprints; i++) {
+					getFingerprintIndex(in.readLong());
+				}
+				int numberOfValues = in.readInt();
+				values = new LongFloatHashMap(numberOfValues);
+				for (int i = 0; i < numberOfValues; i++) {
+					long key = in.readLong();
+					values.put(key, in.readFloat());
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to load the kernel cache " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Writes the cache on its file
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		if (file == null) {
+			throw new IllegalStateException("The file of the persistent kernel cache has not been specified");
+		}
+		load();
+		File target = new File(file);
+		if (target.getAbsoluteFile().getParentFile() != null) {
+			target.getAbsoluteFile().getParentFile().mkdirs();
+		}
+		// the cache is written on a temporary file, so that a failure does not
+		// corrupt a previously saved cache
+		File temporary = new File(file + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(fingerprints.size());
+			for (long fingerprint : fingerprints) {
+				out.writeLong(fingerprint);
+			}
+			out.writeInt(values.size());
+			for (int i = 0; i < values.capacity(); i++) {
+				long key = values.keyAt(i);
+				if (key != LongFloatHashMap.EMPTY) {
+					out.writeLong(key);
+					out.writeFloat(values.valueAt(i));
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if (target.exists() && !target.delete() || !temporary.renameTo(target)) {
+			throw new IOException("Unable to write the kernel cache " + file);
+		}
+	}
+
+	private int getFingerprintIndex(long fingerprint) {
+		Integer index = fingerprintIndexes.get(fingerprint);
+		if (index == null) {
+			index = fingerprints.size();
+			fingerprints.add(fingerprint);
+			fingerprintIndexes.put(fingerprint, index);
+		}
+		return index;
+	}
+
+	private int getExampleIndex(Example example) {
+		Integer index = exampleIndexes.get(example.getId());
+		if (index == null) {
+			index = getFingerprintIndex(ExampleFingerprint.of(example));
+			exampleIndexes.put(example.getId(), index);
+		}
+		return index;
+	}
+
+	private long getKey(Example exA, Example exB) {
+		long indexA = getExampleIndex(exA);
+		long indexB = getExampleIndex(exB);
+		return indexA < indexB ? (indexA << 32) | indexB : (indexB << 32) | indexA;
+	}
+
+	@Override
+	protected synchronized Float getStoredKernelValue(Example exA, Example exB) {
+		load();
+		float value = values.get(getKey(exA, exB));
+		if (Float.isNaN(value)) {
+			return null;
+		}
+		return value;
+	}
+
+	@Override
+	public synchronized void setKernelValue(Example exA, Example exB, float value) {
+		load();
+		values.put(getKey(exA, exB), value);
+	}
+
+	/**
+	 * Removes all the kernel values from memory. The file of the cache is not
+	 * modified until {@link #save()} is invoked.
+	 */
+	@Override
+	public synchronized void flushCache() {
+		load();
+		values.clear();
+	}
+
+}
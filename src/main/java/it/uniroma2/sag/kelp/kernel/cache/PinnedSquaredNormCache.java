@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A squared norm cache pinning the norms of a fixed set of examples,
+ * typically the support vectors of a model at prediction time. While the
+ * cache is open (see {@link #setPinning(boolean)}), every stored norm is
+ * pinned; afterwards, the norms of other examples, e.g. the examples to be
+ * classified, are kept only in a small table of recent norms, so that the
+ * cache does not grow with the classified examples. Single examples can also
+ * be reserved (see {@link #reserve(Example)}), so that their norms are
+ * pinned whenever they are computed, e.g. the support vectors of a
+ * memory-mapped model, whose norms are not computed in advance. The cache
+ * can be accessed concurrently by multiple threads.
+ */
+@JsonTypeName("pinned")
+public class PinnedSquaredNormCache implements SquaredNormCache, Serializable {
+
+	private static final long serialVersionUID = -5480726391025887264L;
+
+	private static final int RECENT_NORMS = 1024;
+
+	private static class RecentNorm {
+		private final long id;
+		private final float norm;
+
+		RecentNorm(long id, float norm) {
+			this.id = id;
+			this.norm = norm;
+		}
+	}
+
+	private transient volatile Map<Long, Float> norms = new ConcurrentHashMap<Long, Float>();
+	private transient volatile AtomicReferenceArray<RecentNorm> recentNorms = new AtomicReferenceArray<RecentNorm>(
+			RECENT_NORMS);
+	private transient volatile Set<Long> reserved = Collections
+			.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+	private transient volatile boolean pinning = true;
+
+	/**
+	 * @param pinning
+	 *            whether the norms stored from now on must be pinned
+	 */
+	public void setPinning(boolean pinning) {
+		this.pinning = pinning;
+	}
+
+	/**
+	 * Reserves a place for the norm of an example, that is pinned when it is
+	 * stored, even after the pinning has been closed
+	 *
+	 * @param example
+	 *            the example whose norm must be pinned
+	 */
+	public void reserve(Example example) {
+		getNorms();
+		reserved.add(example.getId());
+	}
+
+	/**
+	 * @return whether the stored norms are pinned
+	 */
+	public boolean isPinning() {
+		return pinning;
+	}
+
+	private Map<Long, Float> getNorms() {
+		if (norms == null) {
+			// the cache has been deserialized: its content is not preserved
+			synchronized (this) {
+				if (norms == null) {
+					reserved = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+					recentNorms = new AtomicReferenceArray<RecentNorm>(RECENT_NORMS);
+					norms = new ConcurrentHashMap<Long, Float>();
+					pinning = true;
+				}
+			}
+		}
+		return norms;
+	}
+
+	private int getRecentSlot(long id) {
+		return (int) ((id & Long.MAX_VALUE) % RECENT_NORMS);
+	}
+
+	@Override
+	public Float getSquaredNorm(Example example) {
+		Float norm = getNorms().get(example.getId());
+		if (norm != null) {
+			return norm;
+		}
+		RecentNorm recent = recentNorms.get(getRecentSlot(example.getId()));
+		if (recent != null && recent.id == example.getId()) {
+			return recent.norm;
+		}
+		return null;
+	}
+
+	@Override
+	public void setSquaredNormValue(Example example, float squaredNorm) {
+		Map<Long, Float> pinnedNorms = getNorms();
+		if (pinning || reserved.contains(example.getId())) {
+			pinnedNorms.put(example.getId(), squaredNorm);
+		} else {
+			recentNorms.set(getRecentSlot(example.getId()), new RecentNorm(example.getId(), squaredNorm));
+		}
+	}
+
+	@Override
+	public void flushCache() {
+		getNorms().clear();
+		reserved.clear();
+		for (int i = 0; i < RECENT_NORMS; i++) {
+			recentNorms.set(i, null);
+		}
+		pinning = true;
+	}
+
+	/**
+	 * @return the number of pinned norms
+	 */
+	public int size() {
+		return getNorms().size();
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.util.Arrays;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A kernel cache with the same indexing strategy of
+ * <code>FixIndexKernelCache</code>, i.e. the example with id <code>i</code>
+ * is stored in the slot <code>i % examplesToStore</code>, that exploits the
+ * symmetry of kernel functions: K(a,b) and K(b,a) share the same memory
+ * location in a packed triangular matrix. Therefore, it requires half of the
+ * memory of <code>FixIndexKernelCache</code> for the same number of examples.
+ * <p>
+ * When an example is assigned to a slot occupied by a different example, all
+ * the values stored for the slot are discarded.
+ */
+@JsonTypeName("symmetricFixIndex")
+public class SymmetricFixIndexKernelCache extends KernelCache implements MeasurableCache {
+
+	private static final long serialVersionUID = 3390521795542681047L;
+
+	private static final long EMPTY = -1;
+
+	private int examplesToStore;
+
+	/**
+	 * The row <code>j</code> contains the values between the slot
+	 * <code>j</code> and the slots <code>0..j</code>
+	 */
+	private transient float[][] values;
+	private transient long[] slotIds;
+	private transient long evictions;
+
+	public SymmetricFixIndexKernelCache() {
+
+	}
+
+	/**
+	 * @param examplesToStore
+	 *            the number of examples whose kernel values are stored
+	 */
+	public SymmetricFixIndexKernelCache(int examplesToStore) {
+		this.examplesToStore = examplesToStore;
+	}
+
+	/**
+	 * @return the number of examples whose kernel values are stored
+	 */
+	public int getExamplesToStore() {
+		return examplesToStore;
+	}
+
+	/**
+	 * @param examplesToStore
+	 *            the number of examples whose kernel values are stored
+	 */
+	public void setExamplesToStore(int examplesToStore) {
+		this.examplesToStore = examplesToStore;
+		this.values = null;
+	}
+
+	private void allocate() {
+		values = new float[examplesToStore][];
+		for (int i = 0; i < examplesToStore; i++) {
+			values[i] = new float[i + 1];
+			Arrays.fill(values[i], Float.NaN);
+		}
+		slotIds = new long[examplesToStore];
+		Arrays.fill(slotIds, EMPTY);
+	}
+
+	private int getSlot(long id) {
+		return (int) (id % examplesToStore);
+	}
+
+	/**
+	 * Assigns a slot to an example, discarding the values of the example
+	 * previously occupying it
+	 */
+	private int assignSlot(long id) {
+		int slot = getSlot(id);
+		if (slotIds[slot] != id) {
+			if (slotIds[slot] != EMPTY) {
+				evictions++;
+				Arrays.fill(values[slot], Float.NaN);
+				for (int j = slot + 1; j < examplesToStore; j++) {
+					values[j][slot] = Float.NaN;
+				}
+			}
+			slotIds[slot] = id;
+		}
+		return slot;
+	}
+
+	@Override
+	protected Float getStoredKernelValue(Example exA, Example exB) {
+		if (values == null) {
+			return null;
+		}
+		int slotA = getSlot(exA.getId());
+		int slotB = getSlot(exB.getId());
+		if (slotIds[slotA] != exA.getId() || slotIds[slotB] != exB.getId()) {
+			return null;
+		}
+		float value = slotA > slotB ? values[slotA][slotB] : values[slotB][slotA];
+		if (Float.isNaN(value)) {
+			return null;
+		}
+		return value;
+	}
+
+	@Override
+	public void setKernelValue(Example exA, Example exB, float value) {
+		if (values == null) {
+			allocate();
+		}
+		int slotA = assignSlot(exA.getId());
+		int slotB = assignSlot(exB.getId());
+		if (slotA == slotB && exA.getId() != exB.getId()) {
+			// the two examples collide on the same slot
+			return;
+		}
+		if (slotA > slotB) {
+			values[slotA][slotB] = value;
+		} else {
+			values[slotB][slotA] = value;
+		}
+	}
+
+	/**
+	 * @return the memory allocated for the kernel values and the ids of the
+	 *         examples, in bytes
+	 */
+	@Override
+	@JsonIgnore
+	public long getUsedBytes() {
+		if (values == null) {
+			return 0;
+		}
+		return (long) examplesToStore * (examplesToStore + 1) / 2 * 4 + (long) examplesToStore * 8;
+	}
+
+	/**
+	 * @return the number of examples whose kernel values have been discarded
+	 *         to make room for other examples assigned to the same slot
+	 */
+	@Override
+	@JsonIgnore
+	public long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public void flushCache() {
+		if (values == null) {
+			return;
+		}
+		for (float[] row : values) {
+			Arrays.fill(row, Float.NaN);
+		}
+		Arrays.fill(slotIds, EMPTY);
+	}
+
+}
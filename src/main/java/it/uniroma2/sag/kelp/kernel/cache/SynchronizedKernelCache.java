@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * A kernel cache that makes another kernel cache thread-safe, by serializing
+ * all the accesses to it through a single lock. It allows any cache, e.g. a
+ * <code>FixSizeKernelCache</code> or a <code>PersistentKernelCache</code>, to
+ * be shared among multiple threads; a {@link ConcurrentKernelCache} should be
+ * preferred when the threads access the cache very frequently, e.g. with
+ * kernels that are cheap to compute.
+ */
+@JsonTypeName("synchronized")
+public class SynchronizedKernelCache extends KernelCache {
+
+	private static final long serialVersionUID = 6310925486273981203L;
+
+	private KernelCache cache;
+
+	public SynchronizedKernelCache() {
+
+	}
+
+	/**
+	 * @param cache
+	 *            the cache to be made thread-safe
+	 */
+	public SynchronizedKernelCache(KernelCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the cache made thread-safe
+	 */
+	public synchronized KernelCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param cache
+	 *            the cache to be made thread-safe
+	 */
+	public synchronized void setCache(KernelCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	protected synchronized Float getStoredKernelValue(Example exA, Example exB) {
+		return cache.getKernelValue(exA, exB);
+	}
+
+	@Override
+	public synchronized void setKernelValue(Example exA, Example exB, float value) {
+		cache.setKernelValue(exA, exB, value);
+	}
+
+	@Override
+	public synchronized void flushCache() {
+		cache.flushCache();
+	}
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.KernelUtils;
+import it.uniroma2.sag.kelp.utils.DaemonThreadFactory;
+
+/**
+ * Provides an SMO solver with the columns of the matrix Q of the dual
+ * problem, i.e. <code>Q(i,j) = y_i y_j K(x_i, x_j)</code>.
+ * <p>
+ * The most recently used columns are kept in memory, up to
+ * <code>cacheBytes</code> bytes. A column is computed only on the variables
+ * requested by the solver, e.g. the active ones when shrinking is adopted,
+ * and it is completed when further variables are requested.
+ * <p>
+ * The kernel values are computed by the kernel function, thus they are
+ * looked up in, and written to, the kernel caches of the kernel function and
+ * of the kernels composing it, so that they are reused by later trainings on
+ * the same data, e.g. the other binary classifiers of a one-vs-all schema.
+ * With a <code>parallelism</code> greater than one, the missing entries of a
+ * column are computed by a pool of threads, each one operating on its own
+ * copy of the kernel function; the copies share the kernel caches and the
+ * squared norms of the training examples, computed once when the provider is
+ * created (see
+ * {@link KernelUtils#copiesSharingCaches(Kernel, int, java.util.Collection)}).
+ */
+public class KernelColumnProvider {
+
+	/**
+	 * The default memory budget of the kernel columns, in bytes
+	 */
+	public static final long DEFAULT_CACHE_BYTES = 128L << 20;
+
+	private static final int MIN_COMPUTATIONS_PER_TASK = 32;
+
+	private final Kernel kernel;
+	private final Example[] examples;
+	private final float[] signs;
+	private final Map<Integer, float[]> columns;
+	private final int[] missing;
+
+	private final Kernel[] copies;
+	private final ExecutorService executor;
+
+	private float[] diagonal;
+
+	private long kernelComputations;
+	private long columnRequests;
+	private long columnMisses;
+
+	/**
+	 * @param kernel
+	 *            the kernel function
+	 * @param examples
+	 *            the training examples
+	 * @param signs
+	 *            the sign <code>y_i</code> (+1 or -1) of each example
+	 * @param parallelism
+	 *            the number of threads computing the kernel values
+	 * @param cacheBytes
+	 *            the memory budget of the kernel columns, in bytes
+	 */
+	public KernelColumnProvider(Kernel kernel, List<Example> examples, float[] signs, int parallelism,
+			long cacheBytes) {
+		this.kernel = kernel;
+		this.examples = examples.toArray(new Example[examples.size()]);
+		this.signs = signs;
+		this.missing = new int[this.examples.length];
+		final int maxColumns = (int) Math.max(2,
+				Math.min(this.examples.length, cacheBytes / (4L * Math.max(1, this.examples.length))));
+		this.columns = new LinkedHashMap<Integer, float[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest) {
+				return size() > maxColumns;
+			}
+		};
+
+		if (parallelism <= 1) {
+			copies = null;
+			executor = null;
+			return;
+		}
+		try {
+			copies = KernelUtils.copiesSharingCaches(kernel, parallelism, examples).toArray(new Kernel[parallelism]);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to copy the kernel function: " + e.getMessage(), e);
+		}
+		executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("kelp-smo-kernel"));
+	}
+
+	/**
+	 * @return the number of training examples
+	 */
+	public int size() {
+		return examples.length;
+	}
+
+	/**
+	 * Returns the column of Q related to the i-th example. The entries are
+	 * indexed by the position of the examples in the training set; only the
+	 * entries of the <code>length</code> examples listed in
+	 * <code>indexes</code> are guaranteed to be computed.
+	 *
+	 * @param i
+	 *            the position of the example in the training set
+	 * @param indexes
+	 *            the positions of the examples whose entries are required
+	 * @param length
+	 *            the number of valid elements of <code>indexes</code>
+	 * @return the column of Q
+	 */
+	public float[] getColumn(int i, int[] indexes, int length) {
+		columnRequests++;
+		float[] column = columns.get(i);
+		if (column == null) {
+			column = new float[examples.length];
+			Arrays.fill(column, Float.NaN);
+			columns.put(i, column);
+		}
+		int count = 0;
+		for (int k = 0; k < length; k++) {
+			if (Float.isNaN(column[indexes[k]])) {
+				missing[count++] = indexes[k];
+			}
+		}
+		if (count > 0) {
+			columnMisses++;
+			fill(i, column, count);
+		}
+		return column;
+	}
+
+	/**
+	 * @return the diagonal of Q, i.e. <code>K(x_i, x_i)</code> for each
+	 *         example
+	 */
+	public float[] getDiagonal() {
+		if (diagonal == null) {
+			diagonal = new float[examples.length];
+			for (int j = 0; j < examples.length; j++) {
+				missing[j] = j;
+			}
+			compute(null, diagonal, examples.length);
+		}
+		return diagonal;
+	}
+
+	private void fill(int i, float[] column, int count) {
+		compute(examples[i], column, count);
+		for (int k = 0; k < count; k++) {
+			int j = missing[k];
+			column[j] *= signs[i] * signs[j];
+		}
+	}
+
+	/**
+	 * Computes the kernel values between <code>row</code> and the first
+	 * <code>count</code> examples listed in <code>missing</code>, or their
+	 * squared norms when <code>row</code> is <code>null</code>
+	 */
+	private void compute(Example row, float[] target, int count) {
+		kernelComputations += count;
+		int tasks = copies == null ? 0 : Math.min(copies.length, count / MIN_COMPUTATIONS_PER_TASK);
+		if (tasks <= 1) {
+			new ComputationTask(copies == null ? kernel : copies[0], row, target, 0, count).call();
+			return;
+		}
+		List<Future<Void>> computations = new ArrayList<Future<Void>>(tasks);
+		int chunkSize = (count + tasks - 1) / tasks;
+		for (int t = 0; t * chunkSize < count; t++) {
+			computations.add(executor.submit(new ComputationTask(copies[t], row, target, t * chunkSize,
+					Math.min(count, (t + 1) * chunkSize))));
+		}
+		for (Future<Void> computation : computations) {
+			waitFor(computation);
+		}
+	}
+
+	private static void waitFor(Future<?> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while computing a kernel column", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error while computing a kernel column: " + e.getCause().getMessage(),
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Computes the kernel values of a range of the missing entries
+	 */
+	private class ComputationTask implements Callable<Void> {
+		private final Kernel kernel;
+		private final Example row;
+		private final float[] target;
+		private final int from;
+		private final int to;
+
+		public ComputationTask(Kernel kernel, Example row, float[] target, int from, int to) {
+			this.kernel = kernel;
+			this.row = row;
+			this.target = target;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Void call() {
+			for (int k = from; k < to; k++) {
+				Example example = examples[missing[k]];
+				target[missing[k]] = kernel.innerProduct(row == null ? example : row, example);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * @return the number of kernel values requested to the kernel function so
+	 *         far, including the ones found in its kernel caches
+	 */
+	public long getKernelComputations() {
+		return kernelComputations;
+	}
+
+	/**
+	 * @return the number of column requests served so far
+	 */
+	public long getColumnRequests() {
+		return columnRequests;
+	}
+
+	/**
+	 * @return the number of column requests that required new kernel values
+	 */
+	public long getColumnMisses() {
+		return columnMisses;
+	}
+
+	/**
+	 * Stops the threads computing the kernel values
+	 */
+	public void close() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+}
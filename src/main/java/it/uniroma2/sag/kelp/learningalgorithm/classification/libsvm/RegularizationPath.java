@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.uniroma2.sag.kelp.data.dataset.Dataset;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BinaryKernelMachineClassifier;
+
+/**
+ * Learns a C-SVM for each value of a grid of regularization parameters, e.g.
+ * to select C on a validation set, in a single pass over the grid.
+ * <p>
+ * The values are learned in the given order, each one by a copy of a base
+ * {@link SmoCSvmClassification} where both <code>cp</code> and
+ * <code>cn</code> are set to the current value (the fairness of the base
+ * algorithm is preserved). All the trainings share the same kernel columns
+ * (see {@link KernelColumnProvider}): the most recently used columns, within
+ * the memory budget of the provider, are reused by the following trainings,
+ * while the evicted ones are computed again, unless the kernel function has a
+ * kernel cache able to store all the kernel values of the training set. Each
+ * training is warm-started from the solution of the previous one. Increasing
+ * values of C are recommended, as the previous solution then satisfies the
+ * new box constraints.
+ */
+public class RegularizationPath {
+
+	private final SmoCSvmClassification baseAlgorithm;
+	private final List<Float> cValues;
+
+	/**
+	 * @param baseAlgorithm
+	 *            the algorithm providing the kernel function, the label and
+	 *            the other parameters of the trainings
+	 * @param cValues
+	 *            the values of the regularization parameter
+	 */
+	public RegularizationPath(SmoCSvmClassification baseAlgorithm, List<Float> cValues) {
+		this.baseAlgorithm = baseAlgorithm;
+		this.cValues = cValues;
+	}
+
+	/**
+	 * @return the values of the regularization parameter
+	 */
+	public List<Float> getCValues() {
+		return cValues;
+	}
+
+	/**
+	 * Learns a classifier for each value of the regularization parameter
+	 *
+	 * @param dataset
+	 *            the training set
+	 * @return the classifiers, in the order of {@link #getCValues()}
+	 */
+	public List<BinaryKernelMachineClassifier> learn(Dataset dataset) {
+		List<Example> examples = dataset.getExamples();
+		float[] y = baseAlgorithm.getSigns(examples);
+		KernelColumnProvider columns = baseAlgorithm.createColumnProvider(examples, y);
+		List<BinaryKernelMachineClassifier> classifiers = new ArrayList<BinaryKernelMachineClassifier>(
+				cValues.size());
+		try {
+			BinaryKernelMachineClassifier previous = baseAlgorithm.getWarmStart();
+			for (float c : cValues) {
+				SmoCSvmClassification learner = baseAlgorithm.duplicate();
+				learner.setCp(c);
+				learner.setCn(c);
+				learner.setWarmStart(previous);
+				learner.learn(examples, y, columns);
+				previous = (BinaryKernelMachineClassifier) learner.getPredictionFunction();
+				classifiers.add(previous);
+			}
+		} finally {
+			columns.close();
+		}
+		return classifiers;
+	}
+}
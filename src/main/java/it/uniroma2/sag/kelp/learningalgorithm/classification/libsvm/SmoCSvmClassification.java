@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.dataset.Dataset;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFingerprint;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BinaryKernelMachineClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryKernelMachineModel;
+import it.uniroma2.sag.kelp.predictionfunction.model.SupportVector;
+
+/**
+ * A C-SVM learning algorithm, with the same parameters of
+ * {@link BinaryCSvmClassification}, where the dual problem is solved by a
+ * {@link SmoSolver} that computes the missing kernel columns with up to
+ * <code>parallelism</code> threads (JSON property <code>parallelism</code>).
+ * The computed kernel values are written to the kernel cache of the kernel
+ * function (see {@link KernelColumnProvider}).
+ * <p>
+ * The JSON properties <code>shrinking</code> and
+ * <code>secondOrderSelection</code> (both enabled by default) switch the
+ * corresponding heuristics of the solver. The number of iterations, the time
+ * and the kernel computations of each training are logged at the INFO level.
+ * <p>
+ * When the fairness is enabled, the regularization parameter of the positive
+ * examples is <code>cn</code> multiplied by the ratio between the negative
+ * and the positive examples.
+ * <p>
+ * The training can be warm-started from a previously learned classifier (see
+ * {@link #setWarmStart(BinaryKernelMachineClassifier)}), e.g. when sweeping
+ * over C or retraining after a few new examples have been added: the weights
+ * of its support vectors become the initial dual variables of the matching
+ * training examples, clipped to the current box constraints.
+ */
+@JsonTypeName("smoCSvmClassification")
+public class SmoCSvmClassification extends BinaryCSvmClassification {
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private boolean shrinking = true;
+	private boolean secondOrderSelection = true;
+	private BinaryKernelMachineClassifier warmStart;
+	private int iterations;
+
+	public SmoCSvmClassification() {
+		super();
+	}
+
+	/**
+	 * @param kernel
+	 *            the kernel function
+	 * @param label
+	 *            the label to be learned
+	 * @param cp
+	 *            the regularization parameter of the positive examples
+	 * @param cn
+	 *            the regularization parameter of the negative examples
+	 */
+	public SmoCSvmClassification(Kernel kernel, Label label, float cp, float cn) {
+		super(kernel, label, cp, cn);
+	}
+
+	/**
+	 * @return the number of threads computing the kernel values
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism
+	 *            the number of threads computing the kernel values
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return whether the solver adopts the shrinking heuristic
+	 */
+	public boolean isShrinking() {
+		return shrinking;
+	}
+
+	/**
+	 * @param shrinking
+	 *            whether the solver adopts the shrinking heuristic
+	 */
+	public void setShrinking(boolean shrinking) {
+		this.shrinking = shrinking;
+	}
+
+	/**
+	 * @return whether the solver selects the working set with second order
+	 *         information
+	 */
+	public boolean isSecondOrderSelection() {
+		return secondOrderSelection;
+	}
+
+	/**
+	 * @param secondOrderSelection
+	 *            whether the solver selects the working set with second order
+	 *            information
+	 */
+	public void setSecondOrderSelection(boolean secondOrderSelection) {
+		this.secondOrderSelection = secondOrderSelection;
+	}
+
+	/**
+	 * @return the classifier whose dual variables initialize the training, or
+	 *         <code>null</code> if the training starts from scratch
+	 */
+	@JsonIgnore
+	public BinaryKernelMachineClassifier getWarmStart() {
+		return warmStart;
+	}
+
+	/**
+	 * Sets a classifier whose dual variables initialize the next trainings.
+	 * A training example takes the weight of the support vector that is the
+	 * same object or has the same content (see {@link ExampleFingerprint}),
+	 * provided that the sign of the weight agrees with its label; the other
+	 * examples start from zero. The classifier is not serialized in JSON,
+	 * while it is kept by the copies returned by {@link #duplicate()}.
+	 *
+	 * @param warmStart
+	 *            a classifier learned on the same label and kernel function,
+	 *            or <code>null</code> to start from scratch
+	 */
+	@JsonIgnore
+	public void setWarmStart(BinaryKernelMachineClassifier warmStart) {
+		this.warmStart = warmStart;
+	}
+
+	/**
+	 * @return the number of iterations of the solver in the last training
+	 */
+	@JsonIgnore
+	public int getIterations() {
+		return iterations;
+	}
+
+	@Override
+	public void learn(Dataset dataset) {
+		List<Example> examples = dataset.getExamples();
+		float[] y = getSigns(examples);
+		KernelColumnProvider columns = createColumnProvider(examples, y);
+		try {
+			learn(examples, y, columns);
+		} finally {
+			columns.close();
+		}
+	}
+
+	/**
+	 * @return the sign of each example, i.e. +1 for the examples of the
+	 *         learned label and -1 for the others
+	 */
+	float[] getSigns(List<Example> examples) {
+		Label label = getLabels().get(0);
+		float[] y = new float[examples.size()];
+		for (int i = 0; i < y.length; i++) {
+			y[i] = examples.get(i).isExampleOf(label) ? 1 : -1;
+		}
+		return y;
+	}
+
+	KernelColumnProvider createColumnProvider(List<Example> examples, float[] y) {
+		return new KernelColumnProvider(getKernel(), examples, y, parallelism,
+				KernelColumnProvider.DEFAULT_CACHE_BYTES);
+	}
+
+	/**
+	 * Learns the classifier, obtaining the kernel columns from a provider that
+	 * can be shared with other trainings on the same examples
+	 */
+	void learn(List<Example> examples, float[] y, KernelColumnProvider columns) {
+		int positives = 0;
+		for (float sign : y) {
+			if (sign > 0) {
+				positives++;
+			}
+		}
+		float cp = getCp();
+		if (isFairness() && positives > 0) {
+			cp = getCn() * (y.length - positives) / positives;
+		}
+		float[] c = new float[y.length];
+		for (int i = 0; i < y.length; i++) {
+			c[i] = y[i] > 0 ? cp : getCn();
+		}
+
+		SmoSolver solver = new SmoSolver(columns, y, c, SmoSolver.DEFAULT_EPS);
+		solver.setShrinking(shrinking);
+		solver.setSecondOrderSelection(secondOrderSelection);
+		if (warmStart != null) {
+			solver.setInitialAlphas(getInitialAlphas(warmStart.getModel(), examples, y));
+		}
+		solver.solve();
+		iterations = solver.getIterations();
+
+		BinaryKernelMachineClassifier classifier = (BinaryKernelMachineClassifier) getPredictionFunction();
+		classifier.reset();
+		BinaryKernelMachineModel model = classifier.getModel();
+		float[] alphas = solver.getAlphas();
+		for (int i = 0; i < alphas.length; i++) {
+			if (alphas[i] > 0) {
+				model.addExample(y[i] * alphas[i], examples.get(i));
+			}
+		}
+		model.setBias(-solver.getRho());
+	}
+
+	/**
+	 * Maps the support vectors of a model to the training examples, obtaining
+	 * the dual variables of the model on the training set
+	 */
+	private static float[] getInitialAlphas(BinaryKernelMachineModel model, List<Example> examples, float[] y) {
+		Map<Example, Float> weights = new IdentityHashMap<Example, Float>();
+		Map<Long, Float> contentWeights = null;
+		for (SupportVector supportVector : model.getSupportVectors()) {
+			weights.put(supportVector.getInstance(), supportVector.getWeight());
+		}
+		float[] alphas = new float[examples.size()];
+		for (int i = 0; i < alphas.length; i++) {
+			Float weight = weights.get(examples.get(i));
+			if (weight == null) {
+				// the support vectors may be copies, e.g. of a deserialized
+				// model: they are compared by content
+				if (contentWeights == null) {
+					contentWeights = new HashMap<Long, Float>();
+					for (SupportVector supportVector : model.getSupportVectors()) {
+						contentWeights.put(ExampleFingerprint.of(supportVector.getInstance()), supportVector.getWeight());
+					}
+				}
+				weight = contentWeights.get(ExampleFingerprint.of(examples.get(i)));
+			}
+			if (weight != null && weight * y[i] > 0) {
+				alphas[i] = weight * y[i];
+			}
+		}
+		return alphas;
+	}
+
+	@Override
+	public SmoCSvmClassification duplicate() {
+		SmoCSvmClassification copy = new SmoCSvmClassification();
+		copy.setKernel(getKernel());
+		copy.setCp(getCp());
+		copy.setCn(getCn());
+		copy.setFairness(isFairness());
+		copy.setParallelism(parallelism);
+		copy.setShrinking(shrinking);
+		copy.setSecondOrderSelection(secondOrderSelection);
+		copy.setWarmStart(warmStart);
+		if (getLabels() != null) {
+			copy.setLabels(getLabels());
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,634 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Sequential Minimal Optimization solver of the dual problem of the C-SVM,
+ * following the solver of LibSVM:<br>
+ * Chih-Chung Chang and Chih-Jen Lin, LIBSVM: a library for support vector
+ * machines, ACM Transactions on Intelligent Systems and Technology, 2011
+ * <p>
+ * The solver minimizes <code>0.5 a'Qa - e'a</code> subject to
+ * <code>y'a = 0</code> and <code>0 &lt;= a_i &lt;= C_i</code>. The columns
+ * of Q are obtained from a {@link KernelColumnProvider}. Two heuristics can
+ * be switched off, e.g. to compare their effect on a dataset:
+ * <ul>
+ * <li>shrinking: the variables that are likely to stay at their bounds are
+ * periodically removed from the active set, so that the kernel values are
+ * computed only on the remaining ones</li>
+ * <li>second order selection: the second variable of the working set is the
+ * one maximizing the decrease of the objective function, rather than the
+ * one maximally violating the optimality conditions</li>
+ * </ul>
+ * The optimization can be warm-started from the solution of a related
+ * problem, e.g. the same dataset with a different C or a few more examples
+ * (see {@link #setInitialAlphas(float[])}).
+ * <p>
+ * The progress of the optimization is logged at the DEBUG level, while a
+ * summary of each solution, including its time and the number of computed
+ * kernel values, is logged at the INFO level.
+ */
+public class SmoSolver {
+
+	private static final Logger logger = LoggerFactory.getLogger(SmoSolver.class);
+
+	/**
+	 * The default tolerance of the termination criterion
+	 */
+	public static final float DEFAULT_EPS = 0.001f;
+
+	private static final double TAU = 1e-12;
+
+	private static final byte LOWER_BOUND = 0;
+	private static final byte UPPER_BOUND = 1;
+	private static final byte FREE = 2;
+
+	private final KernelColumnProvider q;
+	private final int l;
+	private final double eps;
+	private boolean shrinking = true;
+	private boolean secondOrderSelection = true;
+
+	// the arrays below are indexed by position: the variables are swapped
+	// when shrinking, and index maps a position to the original variable
+	private final int[] index;
+	private final float[] y;
+	private final double[] c;
+	private final double[] qd;
+	private final double[] alpha;
+	private final double[] g;
+	private final double[] gBar;
+	private final byte[] alphaStatus;
+
+	private int activeSize;
+	private boolean unshrink;
+	private int iterations;
+	private double rho;
+
+	/**
+	 * @param q
+	 *            the provider of the columns of Q
+	 * @param y
+	 *            the label (+1 or -1) of each example
+	 * @param c
+	 *            the upper bound of each variable
+	 * @param eps
+	 *            the tolerance of the termination criterion
+	 */
+	public SmoSolver(KernelColumnProvider q, float[] y, float[] c, float eps) {
+		this.q = q;
+		this.l = q.size();
+		this.eps = eps;
+		this.index = new int[l];
+		this.y = y.clone();
+		this.c = new double[l];
+		this.qd = new double[l];
+		this.alpha = new double[l];
+		this.g = new double[l];
+		this.gBar = new double[l];
+		this.alphaStatus = new byte[l];
+		float[] diagonal = q.getDiagonal();
+		for (int i = 0; i < l; i++) {
+			this.index[i] = i;
+			this.c[i] = c[i];
+			this.qd[i] = diagonal[i];
+		}
+	}
+
+	/**
+	 * @return whether the variables bounded at the optimum are removed from
+	 *         the active set during the optimization
+	 */
+	public boolean isShrinking() {
+		return shrinking;
+	}
+
+	/**
+	 * @param shrinking
+	 *            whether the variables bounded at the optimum are removed from
+	 *            the active set during the optimization
+	 */
+	public void setShrinking(boolean shrinking) {
+		this.shrinking = shrinking;
+	}
+
+	/**
+	 * @return whether the working set is selected with second order
+	 *         information
+	 */
+	public boolean isSecondOrderSelection() {
+		return secondOrderSelection;
+	}
+
+	/**
+	 * @param secondOrderSelection
+	 *            whether the working set is selected with second order
+	 *            information
+	 */
+	public void setSecondOrderSelection(boolean secondOrderSelection) {
+		this.secondOrderSelection = secondOrderSelection;
+	}
+
+	/**
+	 * Sets the starting point of the optimization. The values are clipped to
+	 * the box <code>[0, C_i]</code>; then, if they violate the constraint
+	 * <code>y'a = 0</code>, the variables of the class having the larger sum
+	 * are scaled down until the two classes balance.
+	 *
+	 * @param initialAlphas
+	 *            the initial value of each variable, in the original order of
+	 *            the examples
+	 */
+	public void setInitialAlphas(float[] initialAlphas) {
+		double positiveSum = 0;
+		double negativeSum = 0;
+		for (int k = 0; k < l; k++) {
+			alpha[k] = Math.min(c[k], Math.max(0, initialAlphas[index[k]]));
+			if (y[k] > 0) {
+				positiveSum += alpha[k];
+			} else {
+				negativeSum += alpha[k];
+			}
+		}
+		double positiveScale = positiveSum > negativeSum ? negativeSum / positiveSum : 1;
+		double negativeScale = negativeSum > positiveSum ? positiveSum / negativeSum : 1;
+		for (int k = 0; k < l; k++) {
+			alpha[k] *= y[k] > 0 ? positiveScale : negativeScale;
+		}
+	}
+
+	/**
+	 * Solves the dual problem
+	 */
+	public void solve() {
+		long start = System.currentTimeMillis();
+		long initialKernelComputations = q.getKernelComputations();
+		activeSize = l;
+		unshrink = false;
+		for (int i = 0; i < l; i++) {
+			updateAlphaStatus(i);
+			g[i] = -1;
+			gBar[i] = 0;
+		}
+		for (int i = 0; i < l; i++) {
+			if (!isLowerBound(i)) {
+				float[] qi = q.getColumn(index[i], index, l);
+				for (int j = 0; j < l; j++) {
+					g[j] += alpha[i] * qi[index[j]];
+				}
+				if (isUpperBound(i)) {
+					for (int j = 0; j < l; j++) {
+						gBar[j] += c[i] * qi[index[j]];
+					}
+				}
+			}
+		}
+
+		iterations = 0;
+		int maxIterations = Math.max(10000000, l > Integer.MAX_VALUE / 100 ? Integer.MAX_VALUE : 100 * l);
+		int counter = Math.min(l, 1000) + 1;
+		int[] workingSet = new int[2];
+		while (iterations < maxIterations) {
+			if (--counter == 0) {
+				counter = Math.min(l, 1000);
+				if (shrinking) {
+					doShrinking();
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("iteration " + iterations + ": " + activeSize + " active variables, "
+							+ (q.getKernelComputations() - initialKernelComputations) + " kernel computations");
+				}
+			}
+			if (!selectWorkingSet(workingSet)) {
+				// the optimality is verified on the whole set of variables
+				reconstructGradient();
+				activeSize = l;
+				if (!selectWorkingSet(workingSet)) {
+					break;
+				}
+				counter = 1;
+			}
+			iterations++;
+			update(workingSet[0], workingSet[1]);
+		}
+		if (activeSize < l) {
+			reconstructGradient();
+			activeSize = l;
+		}
+		rho = calculateRho();
+
+		if (iterations >= maxIterations) {
+			logger.warn("The SMO solver reached the maximum number of iterations (" + maxIterations + ")");
+		}
+		if (logger.isInfoEnabled()) {
+			int supportVectors = 0;
+			int boundedSupportVectors = 0;
+			for (int i = 0; i < l; i++) {
+				if (!isLowerBound(i)) {
+					supportVectors++;
+				}
+				if (isUpperBound(i)) {
+					boundedSupportVectors++;
+				}
+			}
+			logger.info("SMO solver converged in " + iterations + " iterations and "
+					+ (System.currentTimeMillis() - start) + " ms (shrinking: " + shrinking
+					+ ", second order selection: " + secondOrderSelection + "): "
+					+ (q.getKernelComputations() - initialKernelComputations) + " kernel computations, "
+					+ supportVectors + " support vectors (" + boundedSupportVectors + " at the upper bound)");
+		}
+	}
+
+	private void update(int i, int j) {
+		float[] qi = q.getColumn(index[i], index, activeSize);
+		float[] qj = q.getColumn(index[j], index, activeSize);
+		double ci = c[i];
+		double cj = c[j];
+		double oldAlphaI = alpha[i];
+		double oldAlphaJ = alpha[j];
+
+		if (y[i] != y[j]) {
+			double quadCoef = qd[i] + qd[j] + 2 * qi[index[j]];
+			if (quadCoef <= 0) {
+				quadCoef = TAU;
+			}
+			double delta = (-g[i] - g[j]) / quadCoef;
+			double diff = alpha[i] - alpha[j];
+			alpha[i] += delta;
+			alpha[j] += delta;
+			if (diff > 0) {
+				if (alpha[j] < 0) {
+					alpha[j] = 0;
+					alpha[i] = diff;
+				}
+			} else if (alpha[i] < 0) {
+				alpha[i] = 0;
+				alpha[j] = -diff;
+			}
+			if (diff > ci - cj) {
+				if (alpha[i] > ci) {
+					alpha[i] = ci;
+					alpha[j] = ci - diff;
+				}
+			} else if (alpha[j] > cj) {
+				alpha[j] = cj;
+				alpha[i] = cj + diff;
+			}
+		} else {
+			double quadCoef = qd[i] + qd[j] - 2 * qi[index[j]];
+			if (quadCoef <= 0) {
+				quadCoef = TAU;
+			}
+			double delta = (g[i] - g[j]) / quadCoef;
+			double sum = alpha[i] + alpha[j];
+			alpha[i] -= delta;
+			alpha[j] += delta;
+			if (sum > ci) {
+				if (alpha[i] > ci) {
+					alpha[i] = ci;
+					alpha[j] = sum - ci;
+				}
+			} else if (alpha[j] < 0) {
+				alpha[j] = 0;
+				alpha[i] = sum;
+			}
+			if (sum > cj) {
+				if (alpha[j] > cj) {
+					alpha[j] = cj;
+					alpha[i] = sum - cj;
+				}
+			} else if (alpha[i] < 0) {
+				alpha[i] = 0;
+				alpha[j] = sum;
+			}
+		}
+
+		double deltaAlphaI = alpha[i] - oldAlphaI;
+		double deltaAlphaJ = alpha[j] - oldAlphaJ;
+		for (int k = 0; k < activeSize; k++) {
+			g[k] += qi[index[k]] * deltaAlphaI + qj[index[k]] * deltaAlphaJ;
+		}
+
+		boolean wasUpperI = isUpperBound(i);
+		boolean wasUpperJ = isUpperBound(j);
+		updateAlphaStatus(i);
+		updateAlphaStatus(j);
+		if (wasUpperI != isUpperBound(i)) {
+			updateGBar(i, wasUpperI ? -ci : ci);
+		}
+		if (wasUpperJ != isUpperBound(j)) {
+			updateGBar(j, wasUpperJ ? -cj : cj);
+		}
+	}
+
+	private void updateGBar(int i, double factor) {
+		float[] qi = q.getColumn(index[i], index, l);
+		for (int k = 0; k < l; k++) {
+			gBar[k] += factor * qi[index[k]];
+		}
+	}
+
+	/**
+	 * Selects the working set, storing the positions of the two variables in
+	 * <code>workingSet</code>
+	 *
+	 * @return false if the current solution is optimal
+	 */
+	private boolean selectWorkingSet(int[] workingSet) {
+		return secondOrderSelection ? selectSecondOrderWorkingSet(workingSet)
+				: selectMaximalViolatingPair(workingSet);
+	}
+
+	/**
+	 * Selects the pair of variables maximally violating the optimality
+	 * conditions
+	 */
+	private boolean selectMaximalViolatingPair(int[] workingSet) {
+		double gMax = Double.NEGATIVE_INFINITY;
+		double gMax2 = Double.NEGATIVE_INFINITY;
+		int gMaxIndex = -1;
+		int gMax2Index = -1;
+		for (int t = 0; t < activeSize; t++) {
+			if (y[t] == +1) {
+				if (!isUpperBound(t) && -g[t] >= gMax) {
+					gMax = -g[t];
+					gMaxIndex = t;
+				}
+				if (!isLowerBound(t) && g[t] >= gMax2) {
+					gMax2 = g[t];
+					gMax2Index = t;
+				}
+			} else {
+				if (!isLowerBound(t) && g[t] >= gMax) {
+					gMax = g[t];
+					gMaxIndex = t;
+				}
+				if (!isUpperBound(t) && -g[t] >= gMax2) {
+					gMax2 = -g[t];
+					gMax2Index = t;
+				}
+			}
+		}
+		if (gMax + gMax2 < eps || gMaxIndex == -1 || gMax2Index == -1) {
+			return false;
+		}
+		workingSet[0] = gMaxIndex;
+		workingSet[1] = gMax2Index;
+		return true;
+	}
+
+	/**
+	 * Selects the working set with the second order information
+	 */
+	private boolean selectSecondOrderWorkingSet(int[] workingSet) {
+		double gMax = Double.NEGATIVE_INFINITY;
+		double gMax2 = Double.NEGATIVE_INFINITY;
+		int gMaxIndex = -1;
+		int gMinIndex = -1;
+		double objDiffMin = Double.POSITIVE_INFINITY;
+
+		for (int t = 0; t < activeSize; t++) {
+			if (y[t] == +1) {
+				if (!isUpperBound(t) && -g[t] >= gMax) {
+					gMax = -g[t];
+					gMaxIndex = t;
+				}
+			} else if (!isLowerBound(t) && g[t] >= gMax) {
+				gMax = g[t];
+				gMaxIndex = t;
+			}
+		}
+
+		int i = gMaxIndex;
+		float[] qi = i != -1 ? q.getColumn(index[i], index, activeSize) : null;
+		for (int j = 0; j < activeSize; j++) {
+			double gradDiff;
+			double quadCoef;
+			if (y[j] == +1) {
+				if (isLowerBound(j)) {
+					continue;
+				}
+				gradDiff = gMax + g[j];
+				gMax2 = Math.max(gMax2, g[j]);
+				if (gradDiff <= 0) {
+					continue;
+				}
+				quadCoef = qd[i] + qd[j] - 2.0 * y[i] * qi[index[j]];
+			} else {
+				if (isUpperBound(j)) {
+					continue;
+				}
+				gradDiff = gMax - g[j];
+				gMax2 = Math.max(gMax2, -g[j]);
+				if (gradDiff <= 0) {
+					continue;
+				}
+				quadCoef = qd[i] + qd[j] + 2.0 * y[i] * qi[index[j]];
+			}
+			double objDiff = -(gradDiff * gradDiff) / (quadCoef > 0 ? quadCoef : TAU);
+			if (objDiff <= objDiffMin) {
+				gMinIndex = j;
+				objDiffMin = objDiff;
+			}
+		}
+
+		if (gMax + gMax2 < eps || gMinIndex == -1) {
+			return false;
+		}
+		workingSet[0] = gMaxIndex;
+		workingSet[1] = gMinIndex;
+		return true;
+	}
+
+	private boolean beShrunk(int i, double gMax1, double gMax2) {
+		if (isUpperBound(i)) {
+			return y[i] == +1 ? -g[i] > gMax1 : -g[i] > gMax2;
+		}
+		if (isLowerBound(i)) {
+			return y[i] == +1 ? g[i] > gMax2 : g[i] > gMax1;
+		}
+		return false;
+	}
+
+	private void doShrinking() {
+		// max { -y_i * grad(f)_i | i in I_up(alpha) }
+		double gMax1 = Double.NEGATIVE_INFINITY;
+		// max { y_i * grad(f)_i | i in I_low(alpha) }
+		double gMax2 = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < activeSize; i++) {
+			if (y[i] == +1) {
+				if (!isUpperBound(i)) {
+					gMax1 = Math.max(gMax1, -g[i]);
+				}
+				if (!isLowerBound(i)) {
+					gMax2 = Math.max(gMax2, g[i]);
+				}
+			} else {
+				if (!isUpperBound(i)) {
+					gMax2 = Math.max(gMax2, -g[i]);
+				}
+				if (!isLowerBound(i)) {
+					gMax1 = Math.max(gMax1, g[i]);
+				}
+			}
+		}
+
+		if (!unshrink && gMax1 + gMax2 <= eps * 10) {
+			unshrink = true;
+			reconstructGradient();
+			activeSize = l;
+		}
+
+		for (int i = 0; i < activeSize; i++) {
+			if (beShrunk(i, gMax1, gMax2)) {
+				activeSize--;
+				while (activeSize > i) {
+					if (!beShrunk(activeSize, gMax1, gMax2)) {
+						swap(i, activeSize);
+						break;
+					}
+					activeSize--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reconstructs the gradient of the inactive variables
+	 */
+	private void reconstructGradient() {
+		if (activeSize == l) {
+			return;
+		}
+		for (int j = activeSize; j < l; j++) {
+			g[j] = gBar[j] - 1;
+		}
+		for (int i = 0; i < activeSize; i++) {
+			if (isFree(i)) {
+				float[] qi = q.getColumn(index[i], index, l);
+				for (int j = activeSize; j < l; j++) {
+					g[j] += alpha[i] * qi[index[j]];
+				}
+			}
+		}
+	}
+
+	private double calculateRho() {
+		int freeVariables = 0;
+		double upper = Double.POSITIVE_INFINITY;
+		double lower = Double.NEGATIVE_INFINITY;
+		double sumFree = 0;
+		for (int i = 0; i < activeSize; i++) {
+			double yG = y[i] * g[i];
+			if (isUpperBound(i)) {
+				if (y[i] == -1) {
+					upper = Math.min(upper, yG);
+				} else {
+					lower = Math.max(lower, yG);
+				}
+			} else if (isLowerBound(i)) {
+				if (y[i] == +1) {
+					upper = Math.min(upper, yG);
+				} else {
+					lower = Math.max(lower, yG);
+				}
+			} else {
+				freeVariables++;
+				sumFree += yG;
+			}
+		}
+		return freeVariables > 0 ? sumFree / freeVariables : (upper + lower) / 2;
+	}
+
+	private void swap(int i, int j) {
+		int tmpIndex = index[i];
+		index[i] = index[j];
+		index[j] = tmpIndex;
+		float tmpY = y[i];
+		y[i] = y[j];
+		y[j] = tmpY;
+		double tmp = c[i];
+		c[i] = c[j];
+		c[j] = tmp;
+		tmp = qd[i];
+		qd[i] = qd[j];
+		qd[j] = tmp;
+		tmp = alpha[i];
+		alpha[i] = alpha[j];
+		alpha[j] = tmp;
+		tmp = g[i];
+		g[i] = g[j];
+		g[j] = tmp;
+		tmp = gBar[i];
+		gBar[i] = gBar[j];
+		gBar[j] = tmp;
+		byte tmpStatus = alphaStatus[i];
+		alphaStatus[i] = alphaStatus[j];
+		alphaStatus[j] = tmpStatus;
+	}
+
+	private void updateAlphaStatus(int i) {
+		if (alpha[i] >= c[i]) {
+			alphaStatus[i] = UPPER_BOUND;
+		} else if (alpha[i] <= 0) {
+			alphaStatus[i] = LOWER_BOUND;
+		} else {
+			alphaStatus[i] = FREE;
+		}
+	}
+
+	private boolean isUpperBound(int i) {
+		return alphaStatus[i] == UPPER_BOUND;
+	}
+
+	private boolean isLowerBound(int i) {
+		return alphaStatus[i] == LOWER_BOUND;
+	}
+
+	private boolean isFree(int i) {
+		return alphaStatus[i] == FREE;
+	}
+
+	/**
+	 * @return the optimal value of each variable, in the original order of
+	 *         the examples
+	 */
+	public float[] getAlphas() {
+		float[] alphas = new float[l];
+		for (int i = 0; i < l; i++) {
+			alphas[index[i]] = (float) alpha[i];
+		}
+		return alphas;
+	}
+
+	/**
+	 * @return the threshold of the decision function, i.e.
+	 *         <code>f(x) = sum_i y_i a_i K(x_i, x) - rho</code>
+	 */
+	public float getRho() {
+		return (float) rho;
+	}
+
+	/**
+	 * @return the number of iterations of the last solution
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+}
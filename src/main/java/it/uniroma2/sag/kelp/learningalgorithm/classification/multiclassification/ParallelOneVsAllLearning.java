@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.learningalgorithm.classification.multiclassification;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+import it.uniroma2.sag.kelp.data.dataset.Dataset;
+import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
+import it.uniroma2.sag.kelp.data.dataset.StreamingDataset;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.KernelUtils;
+import it.uniroma2.sag.kelp.learningalgorithm.KernelMethod;
+import it.uniroma2.sag.kelp.learningalgorithm.LearningAlgorithm;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BinaryClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.multiclass.OneVsAllClassifier;
+import it.uniroma2.sag.kelp.utils.DaemonThreadFactory;
+
+/**
+ * A One-vs-All learning schema training the binary classifiers of the
+ * different classes concurrently, with up to <code>parallelism</code>
+ * threads (JSON property <code>parallelism</code>).
+ * <p>
+ * When the base algorithm is a kernel method, each binary learner operates
+ * on its own copy of the kernel function, as kernels are not thread-safe in
+ * general, while the kernel values are shared among all the learners: the
+ * kernel caches of the base kernel are shared by the copies, behind a lock
+ * unless they are a <code>ConcurrentKernelCache</code>, and its squared norm
+ * caches are replaced by a <code>PinnedSquaredNormCache</code> (see
+ * {@link KernelUtils#copiesSharingCaches(Kernel, int, java.util.Collection)}).
+ * The squared norms of the training examples are computed once, before the
+ * concurrent training starts.
+ * <p>
+ * The choice of the kernel cache affects the speedup. A
+ * <code>ConcurrentKernelCache</code> (JSON cacheType "concurrent") is
+ * divided in lock stripes, thus the learners rarely wait for each other, and
+ * the training time approaches 1/k of the sequential one with k threads; it
+ * requires about 20 bytes per cached value, i.e. more memory than a
+ * <code>FixIndexKernelCache</code> or a <code>SymmetricFixIndexKernelCache</code>
+ * of the same capacity. Any other cache is shared behind a single lock, that
+ * every kernel lookup of every learner has to acquire: it preserves the type
+ * and the content of the cache, e.g. of a <code>PersistentKernelCache</code>,
+ * and it is adequate for expensive kernels, such as the tree kernels, where
+ * the time spent in the cache is negligible, but it limits the speedup with
+ * cheap kernels.
+ * <p>
+ * Datasets that cannot be shared among threads, i.e. the
+ * <code>StreamingDataset</code>, are learned one class at a time.
+ */
+@JsonTypeName("parallelOneVsAll")
+public class ParallelOneVsAllLearning extends OneVsAllLearning {
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	private List<LearningAlgorithm> binaryLearners = new ArrayList<LearningAlgorithm>();
+
+	public ParallelOneVsAllLearning() {
+		super();
+	}
+
+	/**
+	 * @param parallelism
+	 *            the maximum number of binary classifiers trained concurrently
+	 */
+	public ParallelOneVsAllLearning(int parallelism) {
+		super();
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the maximum number of binary classifiers trained concurrently
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism
+	 *            the maximum number of binary classifiers trained concurrently
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	public void setBaseAlgorithm(LearningAlgorithm baseAlgorithm) {
+		super.setBaseAlgorithm(baseAlgorithm);
+		if (getLabels() != null) {
+			createBinaryLearners(getLabels());
+		}
+	}
+
+	@Override
+	public void setLabels(List<Label> labels) {
+		super.setLabels(labels);
+		if (getBaseAlgorithm() != null) {
+			createBinaryLearners(labels);
+		}
+	}
+
+	/**
+	 * Creates a binary learner for each class, and makes the one-vs-all
+	 * classifier refer to their prediction functions
+	 */
+	private void createBinaryLearners(List<Label> labels) {
+		binaryLearners = new ArrayList<LearningAlgorithm>(labels.size());
+		BinaryClassifier[] binaryClassifiers = new BinaryClassifier[labels.size()];
+		for (int i = 0; i < labels.size(); i++) {
+			LearningAlgorithm binaryLearner = getBaseAlgorithm().duplicate();
+			binaryLearner.setLabels(Arrays.asList(labels.get(i)));
+			binaryLearners.add(binaryLearner);
+			binaryClassifiers[i] = (BinaryClassifier) binaryLearner.getPredictionFunction();
+		}
+		((OneVsAllClassifier) getPredictionFunction()).setBinaryClassifiers(binaryClassifiers);
+	}
+
+	@Override
+	public void learn(Dataset dataset) {
+		int threads = Math.min(parallelism, binaryLearners.size());
+		if (threads <= 1 || dataset instanceof StreamingDataset) {
+			for (LearningAlgorithm binaryLearner : binaryLearners) {
+				binaryLearner.learn(dataset);
+			}
+			return;
+		}
+
+		List<Example> examples = dataset.getExamples();
+		if (getBaseAlgorithm() instanceof KernelMethod) {
+			shareKernelValues(((KernelMethod) getBaseAlgorithm()).getKernel(), examples);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new DaemonThreadFactory("kelp-one-vs-all"));
+		try {
+			List<Future<?>> trainings = new ArrayList<Future<?>>();
+			for (final LearningAlgorithm binaryLearner : binaryLearners) {
+				// each learner iterates over its own view of the dataset
+				final SimpleDataset view = new SimpleDataset();
+				for (Example example : examples) {
+					view.addExample(example);
+				}
+				trainings.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						binaryLearner.learn(view);
+						return null;
+					}
+				}));
+			}
+			for (Future<?> training : trainings) {
+				waitFor(training);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Provides each binary learner with its own copy of the kernel function,
+	 * sharing thread-safe kernel and squared norm caches
+	 */
+	private void shareKernelValues(Kernel kernel, List<Example> examples) {
+		List<Kernel> copies;
+		try {
+			copies = KernelUtils.copiesSharingCaches(kernel, binaryLearners.size(), examples);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to copy the kernel function: " + e.getMessage(), e);
+		}
+		for (int i = 0; i < binaryLearners.size(); i++) {
+			((KernelMethod) binaryLearners.get(i)).setKernel(copies.get(i));
+		}
+	}
+
+	private static void waitFor(Future<?> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while learning the binary classifiers", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error while learning a binary classifier: " + e.getCause().getMessage(),
+					e.getCause());
+		}
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		for (LearningAlgorithm binaryLearner : binaryLearners) {
+			binaryLearner.reset();
+		}
+	}
+
+	@Override
+	public ParallelOneVsAllLearning duplicate() {
+		ParallelOneVsAllLearning copy = new ParallelOneVsAllLearning(parallelism);
+		copy.setBaseAlgorithm(getBaseAlgorithm().duplicate());
+		if (getLabels() != null) {
+			copy.setLabels(getLabels());
+		}
+		return copy;
+	}
+}
@@ -14,24 +14,50 @@
  */
 package it.uniroma2.sag.kelp.main;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
+import it.uniroma2.sag.kelp.data.dataset.StreamingDataset;
 import it.uniroma2.sag.kelp.data.example.Example;
 import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BatchPredictor;
 import it.uniroma2.sag.kelp.predictionfunction.classifier.ClassificationOutput;
 import it.uniroma2.sag.kelp.predictionfunction.classifier.Classifier;
-import it.uniroma2.sag.kelp.utils.JacksonSerializerWrapper;
+import it.uniroma2.sag.kelp.utils.BinarySerializerWrapper;
+import it.uniroma2.sag.kelp.utils.DaemonThreadFactory;
 import it.uniroma2.sag.kelp.utils.evaluation.BinaryClassificationEvaluator;
 import it.uniroma2.sag.kelp.utils.evaluation.Evaluator;
 import it.uniroma2.sag.kelp.utils.evaluation.MulticlassClassificationEvaluator;
 
+/**
+ * Classifies a dataset with a previously learned model.
+ * <p>
+ * The dataset is processed as a pipeline: the examples are read in
+ * background by a <code>StreamingDataset</code>, grouped in blocks that are
+ * classified by a pool of workers, and the predictions are written in the
+ * order of the input file. Only a bounded number of blocks is in memory at
+ * any time, thus datasets of any size can be classified.
+ */
 public class Classify {
+
+	private static final int BLOCK_SIZE = BatchPredictor.DEFAULT_BLOCK_SIZE;
+	private static final int PENDING_BLOCKS_PER_WORKER = 4;
+	private static final long REPORT_INTERVAL = 10000;
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
 	public static void main(String[] args) throws Exception {
 		if (args.length < 3) {
-			System.out.println("USAGE: datasetPath modelPath predictionsPath");
+			System.out.println("USAGE: datasetPath modelPath predictionsPath [parallelism]");
 			System.exit(1);
 		}
 
@@ -39,14 +65,16 @@ public class Classify {
 		String testPath = args[0];
 		String modelPath = args[1];
 		String predictionsPath = args[2];
+		int parallelism = args.length > 3 ? Integer.parseInt(args[3]) : 1;
 
-		// Load a dataset
-		SimpleDataset testSet = new SimpleDataset();
-		testSet.populate(testPath);
-
-		// Instantiate a learning algorithm through a Json file
-		JacksonSerializerWrapper serializer = new JacksonSerializerWrapper();
-		Classifier classifier = serializer.readValue(new File(modelPath), Classifier.class);
+		// Load a classifier stored in JSON, or memory-map a binary one
+		BinarySerializerWrapper serializer = new BinarySerializerWrapper();
+		Classifier classifier = serializer.openModel(new File(modelPath), Classifier.class);
+		// each block is classified by the worker submitting it, thus the
+		// predictor does not need threads of its own
+		final BatchPredictor predictor = new BatchPredictor(classifier, parallelism, BLOCK_SIZE, null);
+		// classifiers that are not thread-safe are invoked by a single worker
+		int workers = predictor.isThreadSafe() ? Math.max(1, parallelism) : 1;
 
 		List<Label> labels = classifier.getLabels();
 		Evaluator ev = null;
@@ -55,23 +83,93 @@ public class Classify {
 		} else {
 			ev = new BinaryClassificationEvaluator(labels.get(0));
 		}
-		PrintWriter pw = new PrintWriter(predictionsPath, "utf8");
+
+		// Classify the dataset while it is read
+		StreamingDataset testSet = new StreamingDataset(testPath, BLOCK_SIZE * workers * PENDING_BLOCKS_PER_WORKER);
+		ExecutorService executor = Executors.newFixedThreadPool(workers, new DaemonThreadFactory("kelp-classify"));
+		LinkedList<Block> pendingBlocks = new LinkedList<Block>();
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(predictionsPath), "utf8"),
+				1 << 16);
 		StringBuilder b = new StringBuilder();
-		for (Example e : testSet.getExamples()) {
-			b.delete(0, b.length());
-			ClassificationOutput predict = classifier.predict(e);
-			ev.addCount(e, predict);
-			for (Label l : labels) {
-				b.append(l + ":" + predict.getScore(l) + "\t");
+		long startTime = System.currentTimeMillis();
+		long lastReport = startTime;
+		long classified = 0;
+		try {
+			while (testSet.hasNextExample()) {
+				final List<Example> examples = new ArrayList<Example>(BLOCK_SIZE);
+				while (examples.size() < BLOCK_SIZE && testSet.hasNextExample()) {
+					examples.add(testSet.getNextExample());
+				}
+				Future<List<ClassificationOutput>> predictions = executor
+						.submit(new Callable<List<ClassificationOutput>>() {
+							@Override
+							public List<ClassificationOutput> call() {
+								return predictor.predict(examples);
+							}
+						});
+				pendingBlocks.add(new Block(examples, predictions));
+
+				// the oldest blocks are written, preserving the input order
+				while (pendingBlocks.size() >= workers * PENDING_BLOCKS_PER_WORKER
+						|| !pendingBlocks.isEmpty() && pendingBlocks.getFirst().predictions.isDone()) {
+					classified += write(pendingBlocks.removeFirst(), labels, ev, writer, b);
+				}
+
+				long now = System.currentTimeMillis();
+				if (now - lastReport >= REPORT_INTERVAL) {
+					System.out.println("Classified " + classified + " examples ("
+							+ throughput(classified, now - startTime) + " examples/s)");
+					lastReport = now;
+				}
 			}
-			
-			pw.println(b.toString().substring(0, b.length()-1));
+			while (!pendingBlocks.isEmpty()) {
+				classified += write(pendingBlocks.removeFirst(), labels, ev, writer, b);
+			}
+		} finally {
+			writer.close();
+			executor.shutdownNow();
+			predictor.close();
+			testSet.close();
 		}
+		long elapsed = System.currentTimeMillis() - startTime;
 
-		pw.flush();
-		pw.close();
-		
+		System.out.println("Classified " + classified + " examples in " + elapsed + " ms ("
+				+ throughput(classified, elapsed) + " examples/s)");
 		System.out.println("Accuracy on test set: " + ev.getPerformanceMeasure("Accuracy"));
 	}
 
+	/**
+	 * A block of examples being classified
+	 */
+	private static class Block {
+		private final List<Example> examples;
+		private final Future<List<ClassificationOutput>> predictions;
+
+		Block(List<Example> examples, Future<List<ClassificationOutput>> predictions) {
+			this.examples = examples;
+			this.predictions = predictions;
+		}
+	}
+
+	private static int write(Block block, List<Label> labels, Evaluator ev, Writer writer, StringBuilder b)
+			throws Exception {
+		List<ClassificationOutput> predictions = block.predictions.get();
+		for (int i = 0; i < block.examples.size(); i++) {
+			ClassificationOutput predict = predictions.get(i);
+			ev.addCount(block.examples.get(i), predict);
+			b.setLength(0);
+			for (Label l : labels) {
+				b.append(l).append(':').append(predict.getScore(l)).append('\t');
+			}
+			b.setLength(b.length() - 1);
+			b.append(LINE_SEPARATOR);
+			writer.write(b.toString());
+		}
+		return block.examples.size();
+	}
+
+	private static long throughput(long examples, long elapsed) {
+		return elapsed > 0 ? examples * 1000 / elapsed : examples;
+	}
+
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.main;
+
+import it.uniroma2.sag.kelp.data.dataset.DatasetLoader;
+
+public class ConvertDataset {
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("USAGE: klpDatasetPath binaryDatasetPath [sequence]");
+			System.exit(1);
+		}
+
+		// Initialize some parameters
+		String inputPath = args[0];
+		String outputPath = args[1];
+		boolean sequences = args.length > 2 && args[2].equalsIgnoreCase("sequence");
+
+		// Convert the dataset
+		long startTime = System.currentTimeMillis();
+		int examples = DatasetLoader.convertToBinary(inputPath, outputPath, sequences);
+		long endTime = System.currentTimeMillis();
+
+		System.out.println("Converted " + examples + " examples in " + (endTime - startTime) + " ms");
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.main;
+
+import java.io.File;
+
+import it.uniroma2.sag.kelp.predictionfunction.PredictionFunction;
+import it.uniroma2.sag.kelp.utils.BinarySerializerWrapper;
+import it.uniroma2.sag.kelp.utils.JacksonSerializerWrapper;
+
+public class ConvertModel {
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("USAGE: modelPath convertedModelPath [json]");
+			System.exit(1);
+		}
+
+		// Initialize some parameters
+		String inputPath = args[0];
+		String outputPath = args[1];
+		boolean json = args.length > 2 && args[2].equalsIgnoreCase("json");
+
+		// Load the model, either binary or JSON
+		long startTime = System.currentTimeMillis();
+		BinarySerializerWrapper serializer = new BinarySerializerWrapper();
+		PredictionFunction model = serializer.readValue(new File(inputPath), PredictionFunction.class);
+		long loadTime = System.currentTimeMillis() - startTime;
+
+		// Write it in the requested format
+		if (json) {
+			new JacksonSerializerWrapper().writeValueOnFile(model, outputPath);
+		} else {
+			serializer.writeValueOnFile(model, outputPath);
+		}
+
+		System.out.println("Model loaded in " + loadTime + " ms: " + new File(inputPath).length() + " bytes converted in "
+				+ new File(outputPath).length() + " bytes");
+	}
+}
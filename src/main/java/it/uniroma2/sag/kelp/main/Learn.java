@@ -17,6 +17,7 @@ package it.uniroma2.sag.kelp.main;
 import java.io.File;
 import java.util.List;
 
+import it.uniroma2.sag.kelp.data.dataset.DatasetLoader;
 import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
 import it.uniroma2.sag.kelp.data.label.Label;
 import it.uniroma2.sag.kelp.learningalgorithm.LearningAlgorithm;
@@ -37,7 +38,7 @@ public class Learn {
 
 		// Load a dataset
 		SimpleDataset trainSet = new SimpleDataset();
-		trainSet.populate(trainPath);
+		DatasetLoader.populate(trainSet, trainPath);
 
 		// Instantiate a learning algorithm through a Json file
 		JacksonSerializerWrapper serializer = new JacksonSerializerWrapper();
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFactory;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BatchPredictor;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.ClassificationOutput;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.Classifier;
+import it.uniroma2.sag.kelp.utils.BinarySerializerWrapper;
+import it.uniroma2.sag.kelp.utils.DaemonThreadFactory;
+import it.uniroma2.sag.kelp.utils.LatencyRecorder;
+
+/**
+ * A long-running HTTP server classifying examples with a model loaded once,
+ * avoiding the start-up costs paid by each run of {@link Classify}, e.g. the
+ * deserialization of the model and of its word spaces. Binary models (see
+ * <code>BinarySerializerWrapper</code>) are memory-mapped, so that several
+ * servers on the same host share a single copy of the support vectors.
+ * <p>
+ * The server only listens on the loopback interface and offers two
+ * endpoints:
+ * <ul>
+ * <li><code>POST /predict</code>: the body contains one or more examples in
+ * the KeLP textual format, one per line; the response contains a line for
+ * each example, in the format produced by {@link Classify}, i.e. the
+ * <code>label:score</code> pairs separated by tabs</li>
+ * <li><code>GET /stats</code>: the number of served requests, of classified
+ * and of queued examples, and the mean, median and 99th percentile latencies
+ * of the recent requests</li>
+ * </ul>
+ * The examples of concurrent requests are grouped in micro-batches of at
+ * most <code>maxBatchSize</code> examples, waiting at most
+ * <code>maxDelay</code> milliseconds for a batch to fill, and classified
+ * through a {@link BatchPredictor}. At most <code>maxQueuedExamples</code>
+ * examples wait to be classified: when the queue is full, the requests are
+ * rejected with the status 503, so that an overloaded server does not
+ * accumulate an unbounded backlog. A request containing more than
+ * <code>maxQueuedExamples</code> examples could never be served, thus it is
+ * rejected with the status 413.
+ */
+public class PredictionServer {
+
+	/**
+	 * The default maximum number of examples in a micro-batch
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+	/**
+	 * The default maximum time in milliseconds spent waiting for a
+	 * micro-batch to fill
+	 */
+	public static final long DEFAULT_MAX_DELAY = 2;
+
+	/**
+	 * The default maximum number of examples waiting to be classified
+	 */
+	public static final int DEFAULT_MAX_QUEUED_EXAMPLES = 10000;
+
+	private static final String ENCODING = "UTF-8";
+	private static final int HANDLER_THREADS = 16;
+
+	private final List<Label> labels;
+	private final BatchPredictor predictor;
+	private final int maxBatchSize;
+	private final long maxDelay;
+	private final int maxQueuedExamples;
+
+	private final BlockingQueue<PendingExample> queue;
+	private final LatencyRecorder latencies = new LatencyRecorder();
+	private final AtomicLong classifiedExamples = new AtomicLong();
+
+	private HttpServer server;
+	private ExecutorService handlers;
+	private Thread batcher;
+	private volatile boolean running;
+
+	/**
+	 * An example waiting to be classified
+	 */
+	private static class PendingExample {
+		private final Example example;
+		private final CountDownLatch request;
+		private volatile ClassificationOutput output;
+		private volatile Throwable error;
+
+		PendingExample(Example example, CountDownLatch request) {
+			this.example = example;
+			this.request = request;
+		}
+	}
+
+	/**
+	 * @param classifier
+	 *            the classifier
+	 * @param parallelism
+	 *            the number of threads classifying a micro-batch
+	 * @param maxBatchSize
+	 *            the maximum number of examples in a micro-batch
+	 * @param maxDelay
+	 *            the maximum time in milliseconds spent waiting for a
+	 *            micro-batch to fill
+	 * @throws IOException
+	 *             if the classifier cannot be prepared
+	 */
+	public PredictionServer(Classifier classifier, int parallelism, int maxBatchSize, long maxDelay)
+			throws IOException {
+		this(classifier, parallelism, maxBatchSize, maxDelay, DEFAULT_MAX_QUEUED_EXAMPLES);
+	}
+
+	/**
+	 * @param classifier
+	 *            the classifier
+	 * @param parallelism
+	 *            the number of threads classifying a micro-batch
+	 * @param maxBatchSize
+	 *            the maximum number of examples in a micro-batch
+	 * @param maxDelay
+	 *            the maximum time in milliseconds spent waiting for a
+	 *            micro-batch to fill
+	 * @param maxQueuedExamples
+	 *            the maximum number of examples waiting to be classified
+	 * @throws IOException
+	 *             if the classifier cannot be prepared
+	 */
+	public PredictionServer(Classifier classifier, int parallelism, int maxBatchSize, long maxDelay,
+			int maxQueuedExamples) throws IOException {
+		this.maxQueuedExamples = Math.max(1, maxQueuedExamples);
+		this.queue = new LinkedBlockingQueue<PendingExample>(this.maxQueuedExamples);
+		this.labels = classifier.getLabels();
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.maxDelay = Math.max(0, maxDelay);
+		// a micro-batch is split in a block for each thread
+		int blockSize = Math.max(1, (this.maxBatchSize + parallelism - 1) / Math.max(1, parallelism));
+		this.predictor = new BatchPredictor(classifier, parallelism, blockSize);
+	}
+
+	/**
+	 * Starts serving on a port of the loopback interface
+	 *
+	 * @param port
+	 *            the port, or 0 to bind any free port (see
+	 *            {@link #getPort()})
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public synchronized void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 0);
+		server.createContext("/predict", new PredictHandler());
+		server.createContext("/stats", new StatsHandler());
+		handlers = Executors.newFixedThreadPool(HANDLER_THREADS, new DaemonThreadFactory("kelp-server-handler"));
+		server.setExecutor(handlers);
+
+		running = true;
+		batcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				batch();
+			}
+		}, "kelp-server-batcher");
+		batcher.setDaemon(true);
+		batcher.start();
+		server.start();
+	}
+
+	/**
+	 * @return the port the server is bound to
+	 * @throws IllegalStateException
+	 *             if the server is not running
+	 */
+	public synchronized int getPort() {
+		if (server == null) {
+			throw new IllegalStateException("The server is not running");
+		}
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return the number of examples waiting to be classified
+	 */
+	public int getQueuedExamples() {
+		return queue.size();
+	}
+
+	/**
+	 * Stops the server
+	 */
+	public synchronized void stop() {
+		running = false;
+		if (server != null) {
+			server.stop(0);
+			handlers.shutdownNow();
+			batcher.interrupt();
+			server = null;
+		}
+		// the examples that will not be classified anymore release their
+		// requests
+		PendingExample pending;
+		while ((pending = queue.poll()) != null) {
+			pending.error = new IllegalStateException("The server is stopping");
+			pending.request.countDown();
+		}
+		predictor.close();
+	}
+
+	/**
+	 * @return the latencies of the served requests
+	 */
+	public LatencyRecorder getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * Groups the queued examples in micro-batches and classifies them
+	 */
+	private void batch() {
+		List<PendingExample> batch = new ArrayList<PendingExample>(maxBatchSize);
+		List<Example> examples = new ArrayList<Example>(maxBatchSize);
+		while (running) {
+			try {
+				batch.add(queue.take());
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+				while (batch.size() < maxBatchSize) {
+					PendingExample pending = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (pending == null) {
+						break;
+					}
+					batch.add(pending);
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+
+			try {
+				for (PendingExample pending : batch) {
+					examples.add(pending.example);
+				}
+				List<ClassificationOutput> outputs = predictor.predict(examples);
+				for (int i = 0; i < batch.size(); i++) {
+					batch.get(i).output = outputs.get(i);
+				}
+			} catch (Throwable e) {
+				// any failure, including the Errors, is reported to the
+				// requests, that would otherwise wait forever
+				for (PendingExample pending : batch) {
+					pending.error = e;
+				}
+			} finally {
+				for (PendingExample pending : batch) {
+					pending.request.countDown();
+				}
+			}
+			classifiedExamples.addAndGet(batch.size());
+			batch.clear();
+			examples.clear();
+		}
+	}
+
+	private class PredictHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			long startTime = System.nanoTime();
+			try {
+				if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+					send(exchange, 405, "Only POST requests are supported\n");
+					return;
+				}
+				List<PendingExample> pendingExamples = new ArrayList<PendingExample>();
+				String[] lines = read(exchange.getRequestBody()).split("\r?\n");
+				List<Example> examples = new ArrayList<Example>(lines.length);
+				for (String line : lines) {
+					if (line.trim().length() == 0) {
+						continue;
+					}
+					try {
+						examples.add(ExampleFactory.parseExample(line));
+					} catch (Exception e) {
+						send(exchange, 400, "Unable to parse the example " + line + ": " + e.getMessage() + "\n");
+						return;
+					}
+				}
+				if (examples.isEmpty()) {
+					send(exchange, 400, "No example to classify\n");
+					return;
+				}
+				if (examples.size() > maxQueuedExamples) {
+					send(exchange, 413, "Too many examples in a request, at most " + maxQueuedExamples
+							+ " are accepted\n");
+					return;
+				}
+
+				CountDownLatch request = new CountDownLatch(examples.size());
+				for (Example example : examples) {
+					PendingExample pending = new PendingExample(example, request);
+					pendingExamples.add(pending);
+					if (!queue.offer(pending)) {
+						// the examples already queued are classified anyway,
+						// nobody waits for them
+						send(exchange, 503, "Too many examples waiting to be classified, retry later\n");
+						return;
+					}
+				}
+				request.await();
+
+				StringBuilder b = new StringBuilder();
+				for (PendingExample pending : pendingExamples) {
+					if (pending.error != null) {
+						send(exchange, 500, "Error while classifying the examples: " + pending.error.getMessage()
+								+ "\n");
+						return;
+					}
+					int lineStart = b.length();
+					for (Label l : labels) {
+						b.append(l).append(':').append(pending.output.getScore(l)).append('\t');
+					}
+					if (b.length() > lineStart) {
+						b.setLength(b.length() - 1);
+					}
+					b.append('\n');
+				}
+				send(exchange, 200, b.toString());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				send(exchange, 503, "The server is stopping\n");
+			} finally {
+				latencies.record(System.nanoTime() - startTime);
+			}
+		}
+	}
+
+	private class StatsHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			StringBuilder b = new StringBuilder();
+			b.append("requests\t").append(latencies.getCount()).append('\n');
+			b.append("examples\t").append(classifiedExamples.get()).append('\n');
+			b.append("queued\t").append(queue.size()).append('\n');
+			b.append("mean_ms\t").append(latencies.getMeanMillis()).append('\n');
+			b.append("p50_ms\t").append(latencies.getPercentileMillis(50)).append('\n');
+			b.append("p99_ms\t").append(latencies.getPercentileMillis(99)).append('\n');
+			send(exchange, 200, b.toString());
+		}
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		in.close();
+		return bytes.toString(ENCODING);
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(ENCODING);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("USAGE: modelPath port [parallelism] [maxBatchSize] [maxDelayMs] [maxQueuedExamples]");
+			System.exit(1);
+		}
+
+		// Initialize some parameters
+		String modelPath = args[0];
+		int port = Integer.parseInt(args[1]);
+		int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int maxBatchSize = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MAX_BATCH_SIZE;
+		long maxDelay = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_MAX_DELAY;
+		int maxQueuedExamples = args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_MAX_QUEUED_EXAMPLES;
+
+		// Load a classifier stored in JSON, or memory-map a binary one
+		long startTime = System.currentTimeMillis();
+		BinarySerializerWrapper serializer = new BinarySerializerWrapper();
+		Classifier classifier = serializer.openModel(new File(modelPath), Classifier.class);
+		final PredictionServer predictionServer = new PredictionServer(classifier, parallelism, maxBatchSize,
+				maxDelay, maxQueuedExamples);
+		predictionServer.start(port);
+		System.out.println("Model loaded in " + (System.currentTimeMillis() - startTime)
+				+ " ms, serving on http://127.0.0.1:" + port + "/predict");
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				predictionServer.stop();
+				System.out.println("Served requests: " + predictionServer.getLatencies());
+			}
+		});
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.predictionfunction.classifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import it.uniroma2.sag.kelp.data.dataset.Dataset;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.multiclass.OneVsAllClassifier;
+import it.uniroma2.sag.kelp.utils.DaemonThreadFactory;
+
+/**
+ * Classifies batches of examples, amortizing the costs that
+ * <code>Classifier.predict</code> pays for each example, and optionally
+ * splitting the batches among multiple threads.
+ * <p>
+ * The examples are processed in blocks of <code>blockSize</code> examples,
+ * with specialized implementations for:
+ * <ul>
+ * <li>kernel machines, i.e. a <code>BinaryKernelMachineClassifier</code> or
+ * a <code>OneVsAllClassifier</code> of kernel machines: the blocks are scored
+ * by a {@link ParallelKernelClassifier}, that compares each support vector
+ * with all the examples of a block and computes each kernel value once for
+ * all the binary models. As in {@link ClassifierPreparation}, the scoring
+ * operates on prepared copies, thus the classifier is not modified</li>
+ * <li>linear classifiers, i.e. a <code>BinaryLinearClassifier</code> or a
+ * <code>OneVsAllClassifier</code> of linear classifiers: they do not modify
+ * any state while predicting, thus the examples are classified by the
+ * classifier itself, concurrently</li>
+ * </ul>
+ * Any other classifier is invoked on one example at a time in the calling
+ * thread, as classifiers are not thread-safe in general.
+ * <p>
+ * The outputs are the same that the classifier would produce, e.g.
+ * <code>BinaryMarginClassifierOutput</code>s or
+ * <code>OneVsAllClassificationOutput</code>s.
+ */
+public class BatchPredictor {
+
+	/**
+	 * The default number of examples in a block
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+
+	private final Classifier classifier;
+	private final int parallelism;
+	private final int blockSize;
+	private final ExecutorService executor;
+	private final boolean ownedExecutor;
+
+	private final ParallelKernelClassifier kernelClassifier;
+	private final boolean linear;
+
+	/**
+	 * Creates a batch predictor operating in the calling thread
+	 *
+	 * @param classifier
+	 *            the classifier
+	 * @throws IOException
+	 *             if the kernel functions of a kernel machine cannot be
+	 *             copied
+	 */
+	public BatchPredictor(Classifier classifier) throws IOException {
+		this(classifier, 1);
+	}
+
+	/**
+	 * @param classifier
+	 *            the classifier
+	 * @param parallelism
+	 *            the number of threads classifying the examples
+	 * @throws IOException
+	 *             if the kernel functions of a kernel machine cannot be
+	 *             copied
+	 */
+	public BatchPredictor(Classifier classifier, int parallelism) throws IOException {
+		this(classifier, parallelism, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param classifier
+	 *            the classifier
+	 * @param parallelism
+	 *            the number of threads classifying the examples
+	 * @param blockSize
+	 *            the number of examples processed together by a thread
+	 * @throws IOException
+	 *             if the kernel functions of a kernel machine cannot be
+	 *             copied
+	 */
+	public BatchPredictor(Classifier classifier, int parallelism, int blockSize) throws IOException {
+		this(classifier, parallelism, blockSize, null, true);
+	}
+
+	/**
+	 * Creates a batch predictor whose blocks are classified by the threads of
+	 * a given executor. Without an executor, each invocation of
+	 * {@link #predict(List)} is computed in the calling thread, while up to
+	 * <code>parallelism</code> threads can invoke it concurrently, e.g. the
+	 * workers of a pipeline submitting a block each.
+	 *
+	 * @param classifier
+	 *            the classifier
+	 * @param parallelism
+	 *            the number of threads classifying the examples
+	 * @param blockSize
+	 *            the number of examples processed together by a thread
+	 * @param executor
+	 *            the executor classifying the blocks, that is not shut down
+	 *            by {@link #close()}, or <code>null</code>
+	 * @throws IOException
+	 *             if the kernel functions of a kernel machine cannot be
+	 *             copied
+	 */
+	public BatchPredictor(Classifier classifier, int parallelism, int blockSize, ExecutorService executor)
+			throws IOException {
+		this(classifier, parallelism, blockSize, executor, false);
+	}
+
+	private BatchPredictor(Classifier classifier, int parallelism, int blockSize, ExecutorService executor,
+			boolean ownedExecutor) throws IOException {
+		this.classifier = classifier;
+		this.parallelism = Math.max(1, parallelism);
+		this.blockSize = Math.max(1, blockSize);
+
+		List<BinaryClassifier> binaryClassifiers = new ArrayList<BinaryClassifier>();
+		if (classifier instanceof OneVsAllClassifier) {
+			for (BinaryClassifier binaryClassifier : ((OneVsAllClassifier) classifier).getBinaryClassifiers()) {
+				binaryClassifiers.add(binaryClassifier);
+			}
+		} else if (classifier instanceof BinaryClassifier) {
+			binaryClassifiers.add((BinaryClassifier) classifier);
+		}
+
+		boolean kernelMachines = !binaryClassifiers.isEmpty();
+		boolean linearClassifiers = !binaryClassifiers.isEmpty();
+		for (BinaryClassifier binaryClassifier : binaryClassifiers) {
+			kernelMachines &= binaryClassifier instanceof BinaryKernelMachineClassifier;
+			linearClassifiers &= binaryClassifier instanceof BinaryLinearClassifier;
+		}
+		// the blocks are scored by the threads of the batch predictor, thus the
+		// kernel classifier does not need threads of its own
+		kernelClassifier = kernelMachines ? new ParallelKernelClassifier(classifier, this.parallelism, null) : null;
+		linear = linearClassifiers;
+
+		boolean concurrent = kernelMachines || linearClassifiers;
+		if (!ownedExecutor) {
+			this.executor = concurrent ? executor : null;
+		} else if (concurrent && this.parallelism > 1) {
+			this.executor = Executors.newFixedThreadPool(this.parallelism,
+					new DaemonThreadFactory("kelp-batch-predictor"));
+		} else {
+			this.executor = null;
+		}
+		this.ownedExecutor = ownedExecutor;
+	}
+
+	/**
+	 * @return the classifier
+	 */
+	public Classifier getClassifier() {
+		return classifier;
+	}
+
+	/**
+	 * @return whether {@link #predict(List)} can be invoked concurrently by
+	 *         multiple threads, i.e. whether the classifier is a kernel machine
+	 *         or a linear classifier. At most <code>parallelism</code> threads
+	 *         classify the examples at the same time.
+	 */
+	public boolean isThreadSafe() {
+		return kernelClassifier != null || linear;
+	}
+
+	/**
+	 * Classifies a list of examples
+	 *
+	 * @param examples
+	 *            the examples to be classified
+	 * @return the outputs of the classifier, in the same order of the
+	 *         examples
+	 */
+	public List<ClassificationOutput> predict(List<Example> examples) {
+		List<ClassificationOutput> outputs = new ArrayList<ClassificationOutput>(examples.size());
+		if (executor == null || examples.size() <= blockSize) {
+			for (int from = 0; from < examples.size(); from += blockSize) {
+				outputs.addAll(predictBlock(examples.subList(from, Math.min(examples.size(), from + blockSize))));
+			}
+			return outputs;
+		}
+
+		List<Future<List<ClassificationOutput>>> blocks = new ArrayList<Future<List<ClassificationOutput>>>();
+		for (int from = 0; from < examples.size(); from += blockSize) {
+			final List<Example> block = examples.subList(from, Math.min(examples.size(), from + blockSize));
+			blocks.add(executor.submit(new Callable<List<ClassificationOutput>>() {
+				@Override
+				public List<ClassificationOutput> call() {
+					return predictBlock(block);
+				}
+			}));
+		}
+		for (Future<List<ClassificationOutput>> block : blocks) {
+			outputs.addAll(waitFor(block));
+		}
+		return outputs;
+	}
+
+	/**
+	 * Classifies all the examples of a dataset, that are read through
+	 * <code>getNextExample</code> after resetting the dataset. Therefore,
+	 * datasets not keeping their examples in memory, such as the
+	 * <code>StreamingDataset</code>, are supported.
+	 *
+	 * @param dataset
+	 *            the dataset to be classified
+	 * @return the outputs of the classifier, in the same order of the
+	 *         examples
+	 */
+	public List<ClassificationOutput> predictAll(Dataset dataset) {
+		List<ClassificationOutput> outputs = new ArrayList<ClassificationOutput>();
+		int batchSize = blockSize * parallelism;
+		List<Example> batch = new ArrayList<Example>(batchSize);
+		dataset.reset();
+		while (dataset.hasNextExample()) {
+			batch.add(dataset.getNextExample());
+			if (batch.size() == batchSize) {
+				outputs.addAll(predict(batch));
+				batch.clear();
+			}
+		}
+		outputs.addAll(predict(batch));
+		dataset.reset();
+		return outputs;
+	}
+
+	private List<ClassificationOutput> predictBlock(List<Example> block) {
+		List<ClassificationOutput> outputs = new ArrayList<ClassificationOutput>(block.size());
+		if (kernelClassifier != null) {
+			for (float[] scores : kernelClassifier.score(block)) {
+				outputs.add(kernelClassifier.toOutput(scores));
+			}
+		} else {
+			for (Example example : block) {
+				outputs.add(classifier.predict(example));
+			}
+		}
+		return outputs;
+	}
+
+	private static <T> T waitFor(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while classifying the examples", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error while classifying the examples: " + e.getCause().getMessage(),
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Stops the threads classifying the examples
+	 */
+	public void close() {
+		if (executor != null && ownedExecutor) {
+			executor.shutdown();
+		}
+		if (kernelClassifier != null) {
+			kernelClassifier.close();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.predictionfunction.classifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import it.uniroma2.sag.kelp.data.dataset.MappedExample;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.SimpleExample;
+import it.uniroma2.sag.kelp.data.representation.Representation;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.KernelUtils;
+import it.uniroma2.sag.kelp.kernel.cache.PinnedSquaredNormCache;
+import it.uniroma2.sag.kelp.predictionfunction.PredictionFunction;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.multiclass.OneVsAllClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryKernelMachineModel;
+import it.uniroma2.sag.kelp.predictionfunction.model.SupportVector;
+
+/**
+ * Prepares the kernel-based classifiers for prediction, precomputing once the
+ * quantities depending only on the support vectors.
+ * <p>
+ * The squared norms of the support vectors, required for instance by the
+ * <code>NormalizationKernel</code> and the <code>RbfKernel</code>, are
+ * computed for every kernel composing the kernel function and pinned in a
+ * {@link PinnedSquaredNormCache}. Computing the norms also builds the data
+ * structures that the representations lazily derive at the first kernel
+ * computation, e.g. the productions of the trees used by tree kernels.
+ * Therefore, each prediction only pays for the side of the classified
+ * example. The norms of the support vectors of a memory-mapped model (see
+ * {@link MappedExample}) are instead computed at their first use, and pinned
+ * from then on, so that their representations are not decoded in advance and
+ * the pages of the model are read only when needed.
+ * <p>
+ * The preparation never modifies the given objects: it operates on copies of
+ * the kernel functions and on aliases of the support vectors, i.e. new
+ * examples sharing their representations. The aliases have new ids, as the
+ * ids stored in a serialized model may be assigned to other examples in the
+ * current JVM, and the norms would be confused.
+ */
+public class ClassifierPreparation {
+
+	/**
+	 * Returns a prepared copy of the kernel machines contained in a prediction
+	 * function, i.e. a <code>BinaryKernelMachineClassifier</code> or a
+	 * <code>OneVsAllClassifier</code> of kernel machines. Other prediction
+	 * functions are returned as they are.
+	 *
+	 * @param function
+	 *            the prediction function to be prepared
+	 * @return the prepared prediction function
+	 * @throws IOException
+	 *             if the kernel functions cannot be copied
+	 */
+	public static PredictionFunction prepare(PredictionFunction function) throws IOException {
+		if (function instanceof BinaryKernelMachineClassifier) {
+			BinaryKernelMachineClassifier classifier = (BinaryKernelMachineClassifier) function;
+			BinaryKernelMachineClassifier prepared = new BinaryKernelMachineClassifier();
+			prepared.setModel(prepare(classifier.getModel()));
+			prepared.setLabels(classifier.getLabels());
+			return prepared;
+		}
+		if (function instanceof OneVsAllClassifier) {
+			OneVsAllClassifier classifier = (OneVsAllClassifier) function;
+			List<BinaryClassifier> binaryClassifiers = new ArrayList<BinaryClassifier>();
+			for (BinaryClassifier binaryClassifier : classifier.getBinaryClassifiers()) {
+				binaryClassifiers.add((BinaryClassifier) prepare(binaryClassifier));
+			}
+			OneVsAllClassifier prepared = new OneVsAllClassifier();
+			prepared.setLabels(classifier.getLabels());
+			prepared.setBinaryClassifiers(binaryClassifiers.toArray(new BinaryClassifier[binaryClassifiers.size()]));
+			return prepared;
+		}
+		return function;
+	}
+
+	/**
+	 * Returns a prepared copy of a kernel machine model
+	 *
+	 * @param model
+	 *            the model to be prepared
+	 * @return the prepared model, whose support vectors are aliases of the
+	 *         original ones
+	 * @throws IOException
+	 *             if the kernel function cannot be copied
+	 */
+	public static BinaryKernelMachineModel prepare(BinaryKernelMachineModel model) throws IOException {
+		BinaryKernelMachineModel prepared = new BinaryKernelMachineModel();
+		List<Example> aliases = new ArrayList<Example>(model.getSupportVectors().size());
+		for (SupportVector supportVector : model.getSupportVectors()) {
+			Example alias = alias(supportVector.getInstance());
+			aliases.add(alias);
+			prepared.addExample(supportVector.getWeight(), alias);
+		}
+		prepared.setKernel(prepare(model.getKernel(), aliases));
+		prepared.setBias(model.getBias());
+		return prepared;
+	}
+
+	/**
+	 * Returns a copy of a kernel function prepared for operating on a set of
+	 * examples, e.g. the support vectors pooled from several models: the
+	 * squared norm caches of the copy pin the norms of the examples. The
+	 * copies of the returned kernel obtained through
+	 * {@link KernelUtils#copyForConcurrentUse(Kernel)} share the pinned norms.
+	 *
+	 * @param kernel
+	 *            the kernel function
+	 * @param instances
+	 *            the examples to be prepared, typically aliases obtained
+	 *            through {@link #alias(Example)}
+	 * @return the prepared copy of the kernel function
+	 * @throws IOException
+	 *             if the kernel function cannot be copied
+	 */
+	public static Kernel prepare(Kernel kernel, Collection<Example> instances) throws IOException {
+		Kernel prepared = KernelUtils.copyForConcurrentUse(kernel);
+		List<Kernel> kernels = KernelUtils.getAllKernels(prepared);
+		List<PinnedSquaredNormCache> caches = new ArrayList<PinnedSquaredNormCache>();
+		for (Kernel component : kernels) {
+			PinnedSquaredNormCache pinnedCache = new PinnedSquaredNormCache();
+			component.setSquaredNormCache(pinnedCache);
+			caches.add(pinnedCache);
+		}
+
+		for (Example instance : instances) {
+			if (instance instanceof MappedExample) {
+				for (PinnedSquaredNormCache cache : caches) {
+					cache.reserve(instance);
+				}
+			} else {
+				for (Kernel component : kernels) {
+					component.squaredNorm(instance);
+				}
+			}
+		}
+
+		for (PinnedSquaredNormCache cache : caches) {
+			cache.setPinning(false);
+		}
+		return prepared;
+	}
+
+	/**
+	 * Returns an alias of a support vector, i.e. a new example with a new id
+	 * sharing the labels and the representations of the support vector. The
+	 * examples of a memory-mapped model, whose ids are assigned when the model
+	 * is opened, and the examples that are not <code>SimpleExample</code>s
+	 * are returned as they are.
+	 *
+	 * @param instance
+	 *            the support vector
+	 * @return the alias of the support vector
+	 */
+	public static Example alias(Example instance) {
+		if (instance instanceof MappedExample || !(instance instanceof SimpleExample)) {
+			return instance;
+		}
+		SimpleExample alias = new SimpleExample();
+		alias.setLabels(instance.getLabels());
+		for (Map.Entry<String, Representation> representation : ((SimpleExample) instance).getRepresentations()
+				.entrySet()) {
+			alias.addRepresentation(representation.getKey(), representation.getValue());
+		}
+		return alias;
+	}
+
+	/**
+	 * Returns the kernel machine models contained in a prediction function
+	 *
+	 * @param function
+	 *            a <code>BinaryKernelMachineClassifier</code> or a
+	 *            <code>OneVsAllClassifier</code>
+	 * @return the kernel machine models of the prediction function
+	 */
+	public static List<BinaryKernelMachineModel> getKernelMachineModels(PredictionFunction function) {
+		List<BinaryKernelMachineModel> models = new ArrayList<BinaryKernelMachineModel>();
+		if (function instanceof BinaryKernelMachineClassifier) {
+			models.add(((BinaryKernelMachineClassifier) function).getModel());
+		} else if (function instanceof OneVsAllClassifier) {
+			for (BinaryClassifier binaryClassifier : ((OneVsAllClassifier) function).getBinaryClassifiers()) {
+				models.addAll(getKernelMachineModels(binaryClassifier));
+			}
+		}
+		return models;
+	}
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.predictionfunction.classifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.KernelUtils;
+import it.uniroma2.sag.kelp.predictionfunction.PredictionFunction;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.multiclass.OneVsAllClassificationOutput;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.multiclass.OneVsAllClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryKernelMachineModel;
+import it.uniroma2.sag.kelp.utils.DaemonThreadFactory;
+
+/**
+ * Classifies examples with a kernel machine, i.e. a
+ * <code>BinaryKernelMachineClassifier</code> or a
+ * <code>OneVsAllClassifier</code> of kernel machines, splitting the
+ * evaluation of the kernel function over the support vectors among multiple
+ * threads. The latency of a single prediction thus decreases with the
+ * number of available cores, which is useful with expensive kernels, such as
+ * the tree kernels.
+ * <p>
+ * Kernel functions are not thread-safe in general (e.g. tree kernels reuse
+ * internal matrices), so each thread operates on its own copy of the kernels
+ * (see {@link KernelUtils#copyForConcurrentUse(Kernel)}). The support
+ * vectors of the binary models are merged in a {@link SupportVectorPool},
+ * so that an example being a support vector of several models requires a
+ * single kernel computation per prediction. The squared norms of the pooled
+ * support vectors are pinned and shared by all the kernel copies.
+ * <p>
+ * The produced outputs are the same of the wrapped classifier, i.e.
+ * <code>BinaryMarginClassifierOutput</code>s or
+ * <code>OneVsAllClassificationOutput</code>s. The <code>predict</code>
+ * method can be invoked concurrently by multiple threads.
+ */
+public class ParallelKernelClassifier {
+
+	private final boolean multiclass;
+	private final List<Label> labels = new ArrayList<Label>();
+	private final SupportVectorPool pool;
+
+	private final int parallelism;
+	private final ExecutorService executor;
+	private final boolean ownedExecutor;
+	private final BlockingQueue<Kernel[]> kernelSets;
+
+	/**
+	 * @param classifier
+	 *            a <code>BinaryKernelMachineClassifier</code> or a
+	 *            <code>OneVsAllClassifier</code> of kernel machines
+	 * @param parallelism
+	 *            the number of threads evaluating the kernel function
+	 * @throws IOException
+	 *             if the kernel functions cannot be copied
+	 */
+	public ParallelKernelClassifier(PredictionFunction classifier, int parallelism) throws IOException {
+		this(classifier, parallelism, null, true);
+	}
+
+	/**
+	 * Creates a classifier whose single predictions are split among the
+	 * threads of a given executor. Without an executor, each prediction of
+	 * {@link #score(Example)} is computed in the calling thread, while up to
+	 * <code>parallelism</code> threads can invoke the methods of the
+	 * classifier concurrently, e.g. the threads scoring different blocks of
+	 * examples through {@link #score(List)}.
+	 *
+	 * @param classifier
+	 *            a <code>BinaryKernelMachineClassifier</code> or a
+	 *            <code>OneVsAllClassifier</code> of kernel machines
+	 * @param parallelism
+	 *            the number of threads evaluating the kernel function
+	 * @param executor
+	 *            the executor evaluating the kernel function, that is not
+	 *            shut down by {@link #close()}, or <code>null</code>
+	 * @throws IOException
+	 *             if the kernel functions cannot be copied
+	 */
+	public ParallelKernelClassifier(PredictionFunction classifier, int parallelism, ExecutorService executor)
+			throws IOException {
+		this(classifier, parallelism, executor, false);
+	}
+
+	/**
+	 * @param ownedExecutor
+	 *            whether the executor is created, and shut down, by this
+	 *            classifier
+	 */
+	private ParallelKernelClassifier(PredictionFunction classifier, int parallelism, ExecutorService executor,
+			boolean ownedExecutor) throws IOException {
+		this.ownedExecutor = ownedExecutor;
+		List<BinaryKernelMachineModel> models = new ArrayList<BinaryKernelMachineModel>();
+		if (classifier instanceof BinaryKernelMachineClassifier) {
+			multiclass = false;
+			models.add(((BinaryKernelMachineClassifier) classifier).getModel());
+			labels.add(((BinaryKernelMachineClassifier) classifier).getLabels().get(0));
+		} else if (classifier instanceof OneVsAllClassifier) {
+			multiclass = true;
+			for (BinaryClassifier binaryClassifier : ((OneVsAllClassifier) classifier).getBinaryClassifiers()) {
+				if (!(binaryClassifier instanceof BinaryKernelMachineClassifier)) {
+					throw new IllegalArgumentException("The OneVsAllClassifier must be made of kernel machines");
+				}
+				models.add(((BinaryKernelMachineClassifier) binaryClassifier).getModel());
+				labels.add(binaryClassifier.getLabels().get(0));
+			}
+		} else {
+			throw new IllegalArgumentException("Unsupported classifier " + classifier.getClass().getName());
+		}
+		pool = SupportVectorPool.of(models);
+
+		this.parallelism = Math.max(1, parallelism);
+		List<Kernel> kernels = pool.getKernels();
+		kernelSets = new ArrayBlockingQueue<Kernel[]>(this.parallelism);
+		for (int t = 0; t < this.parallelism; t++) {
+			Kernel[] kernelSet = new Kernel[kernels.size()];
+			for (int k = 0; k < kernels.size(); k++) {
+				kernelSet[k] = KernelUtils.copyForConcurrentUse(kernels.get(k));
+			}
+			kernelSets.add(kernelSet);
+		}
+		if (ownedExecutor) {
+			this.executor = this.parallelism > 1
+					? Executors.newFixedThreadPool(this.parallelism, new DaemonThreadFactory("kelp-kernel-classifier"))
+					: null;
+		} else {
+			this.executor = executor;
+		}
+	}
+
+	/**
+	 * @return the labels predicted by the binary models
+	 */
+	public List<Label> getLabels() {
+		return labels;
+	}
+
+	/**
+	 * @return the pool of the support vectors of the binary models
+	 */
+	public SupportVectorPool getSupportVectorPool() {
+		return pool;
+	}
+
+	/**
+	 * Classifies an example
+	 *
+	 * @param example
+	 *            the example to be classified
+	 * @return a <code>BinaryMarginClassifierOutput</code> or a
+	 *         <code>OneVsAllClassificationOutput</code>, according to the
+	 *         wrapped classifier
+	 */
+	public ClassificationOutput predict(Example example) {
+		return toOutput(score(example));
+	}
+
+	ClassificationOutput toOutput(float[] scores) {
+		if (!multiclass) {
+			return new BinaryMarginClassifierOutput(labels.get(0), scores[0]);
+		}
+		OneVsAllClassificationOutput output = new OneVsAllClassificationOutput();
+		for (int i = 0; i < scores.length; i++) {
+			output.addBinaryPrediction(labels.get(i), scores[i]);
+		}
+		return output;
+	}
+
+	/**
+	 * Computes the scores of the binary models on an example
+	 *
+	 * @param example
+	 *            the example to be classified
+	 * @return the scores of the binary models, in the order of
+	 *         {@link #getLabels()}
+	 */
+	public float[] score(final Example example) {
+		// the norms and the lazily computed structures of the example are
+		// computed once, before the concurrent kernel evaluations
+		Kernel[] kernelSet = borrowKernels();
+		try {
+			for (Kernel kernel : kernelSet) {
+				for (Kernel component : KernelUtils.getAllKernels(kernel)) {
+					component.squaredNorm(example);
+				}
+			}
+		} finally {
+			kernelSets.add(kernelSet);
+		}
+
+		float[] scores = new float[pool.getNumberOfModels()];
+		for (int m = 0; m < scores.length; m++) {
+			scores[m] = pool.getBias(m);
+		}
+		int numberOfSupportVectors = pool.getNumberOfSupportVectors();
+		int tasks = executor == null ? 1 : Math.min(parallelism, numberOfSupportVectors);
+		if (tasks <= 1) {
+			add(scores, new ScoringTask(example, 0, numberOfSupportVectors).call());
+			return scores;
+		}
+		List<Future<float[]>> partialScores = new ArrayList<Future<float[]>>(tasks);
+		int chunkSize = (numberOfSupportVectors + tasks - 1) / tasks;
+		for (int from = 0; from < numberOfSupportVectors; from += chunkSize) {
+			partialScores.add(executor.submit(new ScoringTask(example, from,
+					Math.min(numberOfSupportVectors, from + chunkSize))));
+		}
+		for (Future<float[]> partialScore : partialScores) {
+			add(scores, waitFor(partialScore));
+		}
+		return scores;
+	}
+
+	/**
+	 * Computes the scores of the binary models on a block of examples in the
+	 * calling thread. Each support vector is compared with all the examples
+	 * of the block before moving to the next one, so that its data structures
+	 * are reused while they are in the processor caches. This method can be
+	 * invoked concurrently by at most <code>parallelism</code> threads without
+	 * waiting.
+	 *
+	 * @param examples
+	 *            the examples to be classified
+	 * @return the scores of the binary models on each example, in the order
+	 *         of {@link #getLabels()}
+	 */
+	public float[][] score(List<Example> examples) {
+		float[][] scores = new float[examples.size()][pool.getNumberOfModels()];
+		Kernel[] kernelSet = borrowKernels();
+		try {
+			for (int e = 0; e < examples.size(); e++) {
+				for (Kernel kernel : kernelSet) {
+					for (Kernel component : KernelUtils.getAllKernels(kernel)) {
+						component.squaredNorm(examples.get(e));
+					}
+				}
+				for (int m = 0; m < pool.getNumberOfModels(); m++) {
+					scores[e][m] = pool.getBias(m);
+				}
+			}
+			for (int i = 0; i < pool.getNumberOfSupportVectors(); i++) {
+				Kernel kernel = kernelSet[pool.getKernelIndex(i)];
+				Example instance = pool.getInstance(i);
+				for (int e = 0; e < examples.size(); e++) {
+					pool.addContribution(i, kernel.innerProduct(instance, examples.get(e)), scores[e]);
+				}
+			}
+		} finally {
+			kernelSets.add(kernelSet);
+		}
+		return scores;
+	}
+
+	private static void add(float[] scores, float[] partialScores) {
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] += partialScores[i];
+		}
+	}
+
+	private Kernel[] borrowKernels() {
+		try {
+			return kernelSets.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a kernel", e);
+		}
+	}
+
+	private static <T> T waitFor(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while classifying an example", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error while classifying an example: " + e.getCause().getMessage(),
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Computes the contribution of a range of support vectors to the scores
+	 */
+	private class ScoringTask implements Callable<float[]> {
+		private final Example example;
+		private final int from;
+		private final int to;
+
+		public ScoringTask(Example example, int from, int to) {
+			this.example = example;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public float[] call() {
+			float[] partialScores = new float[pool.getNumberOfModels()];
+			Kernel[] kernelSet = borrowKernels();
+			try {
+				for (int i = from; i < to; i++) {
+					float kernelValue = kernelSet[pool.getKernelIndex(i)].innerProduct(pool.getInstance(i), example);
+					pool.addContribution(i, kernelValue, partialScores);
+				}
+			} finally {
+				kernelSets.add(kernelSet);
+			}
+			return partialScores;
+		}
+	}
+
+	/**
+	 * Stops the threads evaluating the kernel function, if the executor has
+	 * been created by this classifier
+	 */
+	public void close() {
+		if (executor != null && ownedExecutor) {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.predictionfunction.classifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.uniroma2.sag.kelp.data.dataset.MappedExample;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFingerprint;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.KernelUtils;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryKernelMachineModel;
+import it.uniroma2.sag.kelp.predictionfunction.model.SupportVector;
+import it.uniroma2.sag.kelp.utils.JacksonSerializerWrapper;
+
+/**
+ * The support vectors of a set of kernel machines, e.g. the binary models of
+ * a one-vs-all classifier, merged in a single pool.
+ * <p>
+ * A training example is often a support vector of several binary models. In
+ * the pool, it appears only once, associated with a vector of coefficients,
+ * one for each model, so that the scores of all the models on an example
+ * require a single kernel computation per distinct support vector.
+ * <p>
+ * Two support vectors are merged when they are the same object or they have
+ * the same content (see {@link ExampleFingerprint}), and their models adopt
+ * the same kernel function, i.e. kernels having the same JSON description.
+ * Models with different kernel functions can coexist in the same pool, but
+ * their support vectors are not merged. The content of a
+ * <code>MappedExample</code>, i.e. a support vector of a memory-mapped model,
+ * is not inspected: the binary models already store each example once, and
+ * the representations are not decoded only to be compared.
+ */
+public class SupportVectorPool {
+
+	private final int numberOfModels;
+	private final float[] biases;
+	private final List<Kernel> kernels;
+	private final Example[] instances;
+	private final int[] kernelIndexes;
+	// row-major matrix of the coefficients, one row for each support vector
+	private final float[] coefficients;
+	private final int numberOfModelSupportVectors;
+
+	private SupportVectorPool(int numberOfModels, float[] biases, List<Kernel> kernels, List<Example> instances,
+			List<Integer> kernelIndexes, List<float[]> coefficients, int numberOfModelSupportVectors) {
+		this.numberOfModels = numberOfModels;
+		this.biases = biases;
+		this.kernels = kernels;
+		this.instances = instances.toArray(new Example[instances.size()]);
+		this.kernelIndexes = new int[instances.size()];
+		this.coefficients = new float[instances.size() * numberOfModels];
+		for (int i = 0; i < this.instances.length; i++) {
+			this.kernelIndexes[i] = kernelIndexes.get(i);
+			System.arraycopy(coefficients.get(i), 0, this.coefficients, i * numberOfModels, numberOfModels);
+		}
+		this.numberOfModelSupportVectors = numberOfModelSupportVectors;
+	}
+
+	/**
+	 * Builds the pool of the support vectors of a list of kernel machines.
+	 * <p>
+	 * The pool operates on aliases of the support vectors and on copies of
+	 * the kernel functions prepared for prediction through
+	 * {@link ClassifierPreparation#prepare(Kernel, java.util.Collection)}:
+	 * the aliases have new ids and their squared norms are pinned in the
+	 * kernels of the pool, while the models are left untouched.
+	 *
+	 * @param models
+	 *            the kernel machines
+	 * @return the pool of their support vectors
+	 * @throws IOException
+	 *             if the kernel functions cannot be copied
+	 */
+	public static SupportVectorPool of(List<BinaryKernelMachineModel> models) throws IOException {
+		JacksonSerializerWrapper serializer = new JacksonSerializerWrapper();
+		List<Kernel> kernels = new ArrayList<Kernel>();
+		Map<String, Integer> kernelPositions = new HashMap<String, Integer>();
+		List<Map<Long, Integer>> poolPositions = new ArrayList<Map<Long, Integer>>();
+		List<Map<Example, Integer>> identityPositions = new ArrayList<Map<Example, Integer>>();
+		List<List<Example>> kernelInstances = new ArrayList<List<Example>>();
+
+		List<Example> instances = new ArrayList<Example>();
+		List<Integer> kernelIndexes = new ArrayList<Integer>();
+		List<float[]> coefficients = new ArrayList<float[]>();
+		float[] biases = new float[models.size()];
+		int numberOfModelSupportVectors = 0;
+
+		for (int m = 0; m < models.size(); m++) {
+			BinaryKernelMachineModel model = models.get(m);
+			biases[m] = model.getBias();
+			// the copy has no caches, thus it only describes the kernel function
+			String description = serializer.writeValueAsString(KernelUtils.copyForConcurrentUse(model.getKernel()));
+			Integer kernelIndex = kernelPositions.get(description);
+			if (kernelIndex == null) {
+				kernelIndex = kernels.size();
+				kernelPositions.put(description, kernelIndex);
+				kernels.add(model.getKernel());
+				poolPositions.add(new HashMap<Long, Integer>());
+				identityPositions.add(new IdentityHashMap<Example, Integer>());
+				kernelInstances.add(new ArrayList<Example>());
+			}
+			Map<Long, Integer> positions = poolPositions.get(kernelIndex);
+			Map<Example, Integer> identities = identityPositions.get(kernelIndex);
+
+			for (SupportVector supportVector : model.getSupportVectors()) {
+				numberOfModelSupportVectors++;
+				Example instance = supportVector.getInstance();
+				Integer position = identities.get(instance);
+				if (position == null && !(instance instanceof MappedExample)) {
+					long fingerprint = ExampleFingerprint.of(instance);
+					position = positions.get(fingerprint);
+					if (position == null) {
+						positions.put(fingerprint, instances.size());
+					}
+				}
+				if (position == null) {
+					position = instances.size();
+					Example alias = ClassifierPreparation.alias(instance);
+					instances.add(alias);
+					kernelIndexes.add(kernelIndex);
+					coefficients.add(new float[models.size()]);
+					kernelInstances.get(kernelIndex).add(alias);
+				}
+				identities.put(instance, position);
+				coefficients.get(position)[m] += supportVector.getWeight();
+			}
+		}
+
+		for (int k = 0; k < kernels.size(); k++) {
+			kernels.set(k, ClassifierPreparation.prepare(kernels.get(k), kernelInstances.get(k)));
+		}
+		return new SupportVectorPool(models.size(), biases, kernels, instances, kernelIndexes, coefficients,
+				numberOfModelSupportVectors);
+	}
+
+	/**
+	 * @return the number of models sharing the pool
+	 */
+	public int getNumberOfModels() {
+		return numberOfModels;
+	}
+
+	/**
+	 * @return the number of distinct support vectors in the pool
+	 */
+	public int getNumberOfSupportVectors() {
+		return instances.length;
+	}
+
+	/**
+	 * @return the total number of support vectors of the models, i.e. the
+	 *         number of kernel computations per prediction without the pool
+	 */
+	public int getNumberOfModelSupportVectors() {
+		return numberOfModelSupportVectors;
+	}
+
+	/**
+	 * @return the distinct kernel functions of the models
+	 */
+	public List<Kernel> getKernels() {
+		return kernels;
+	}
+
+	/**
+	 * @param supportVector
+	 *            the position of a support vector in the pool
+	 * @return the position in {@link #getKernels()} of the kernel function
+	 *         of the support vector
+	 */
+	public int getKernelIndex(int supportVector) {
+		return kernelIndexes[supportVector];
+	}
+
+	/**
+	 * @param supportVector
+	 *            the position of a support vector in the pool
+	 * @return the support vector
+	 */
+	public Example getInstance(int supportVector) {
+		return instances[supportVector];
+	}
+
+	/**
+	 * @param supportVector
+	 *            the position of a support vector in the pool
+	 * @param model
+	 *            the position of a model
+	 * @return the weight of the support vector in the model, that is zero if
+	 *         the example is not a support vector of the model
+	 */
+	public float getCoefficient(int supportVector, int model) {
+		return coefficients[supportVector * numberOfModels + model];
+	}
+
+	/**
+	 * @param model
+	 *            the position of a model
+	 * @return the bias of the model
+	 */
+	public float getBias(int model) {
+		return biases[model];
+	}
+
+	/**
+	 * Adds the contribution of a support vector to the scores of the models
+	 *
+	 * @param supportVector
+	 *            the position of a support vector in the pool
+	 * @param kernelValue
+	 *            the kernel value between the support vector and the
+	 *            classified example
+	 * @param scores
+	 *            the scores of the models, to be updated
+	 */
+	public void addContribution(int supportVector, float kernelValue, float[] scores) {
+		int offset = supportVector * numberOfModels;
+		for (int m = 0; m < numberOfModels; m++) {
+			scores[m] += coefficients[offset + m] * kernelValue;
+		}
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.uniroma2.sag.kelp.data.dataset.BinaryDatasetReader;
+import it.uniroma2.sag.kelp.data.dataset.BinaryDatasetWriter;
+import it.uniroma2.sag.kelp.data.dataset.MappedDataset;
+import it.uniroma2.sag.kelp.data.dataset.MappedExample;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.SimpleExample;
+import it.uniroma2.sag.kelp.predictionfunction.PredictionFunction;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.ClassifierPreparation;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryKernelMachineModel;
+import it.uniroma2.sag.kelp.predictionfunction.model.SupportVector;
+
+/**
+ * A serializer writing files in a compact binary format, that is much
+ * smaller and faster to load than the JSON produced by
+ * {@link JacksonSerializerWrapper}, in particular for kernel machines with
+ * many support vectors.
+ * <p>
+ * A binary file has the following layout:
+ * <ul>
+ * <li>header: magic number, format version, flags (reserved) and length of
+ * the JSON skeleton</li>
+ * <li>JSON skeleton: the JSON description of the object, where the instances
+ * of the support vectors are replaced by references</li>
+ * <li>support vectors: a binary dataset block (see
+ * <code>BinaryDatasetFormat</code>) containing the referenced instances,
+ * each one stored once even if it is a support vector of several
+ * models</li>
+ * </ul>
+ * The support vectors are extracted from the kernel machines of binary and
+ * one-vs-all classifiers; any other object is entirely stored in the JSON
+ * skeleton. The <code>readValue</code> methods operating on files accept
+ * both binary and JSON files, while the methods operating on strings always
+ * adopt the JSON format.
+ */
+public class BinarySerializerWrapper extends JacksonSerializerWrapper {
+
+	/**
+	 * The magic number identifying a binary model ("KLPM")
+	 */
+	public static final int MAGIC = 0x4B4C504D;
+
+	/**
+	 * The current version of the format
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The suggested extension for binary models
+	 */
+	public static final String FILE_EXTENSION = ".klpm";
+
+	/**
+	 * The size in bytes of the header: magic, version, flags and length of the
+	 * JSON skeleton
+	 */
+	public static final int HEADER_SIZE = 16;
+
+	private static final String ENCODING = "UTF-8";
+
+	/**
+	 * Checks whether a file is a binary model, looking at its magic number
+	 *
+	 * @param file
+	 *            the file to be checked
+	 * @return <code>true</code> if the file starts with the binary model
+	 *         magic number, <code>false</code> otherwise
+	 * @throws IOException
+	 */
+	public static boolean isBinaryModel(File file) throws IOException {
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return false;
+		}
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			return in.readInt() == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes an object on a file in the binary format
+	 *
+	 * @param obj
+	 *            the object to be written
+	 * @param outputFilePath
+	 *            the path of the file
+	 * @throws IOException
+	 */
+	@Override
+	public void writeValueOnFile(Object obj, String outputFilePath) throws IOException {
+		List<SupportVector> supportVectors = getSupportVectors(obj);
+		List<Example> originalInstances = new ArrayList<Example>(supportVectors.size());
+		List<Example> storedInstances = new ArrayList<Example>();
+		Map<Example, Integer> references = new IdentityHashMap<Example, Integer>();
+		String json;
+		try {
+			// the instances are temporarily replaced by placeholders, whose ids
+			// refer to the position of the instances in the binary block
+			for (SupportVector supportVector : supportVectors) {
+				Example instance = supportVector.getInstance();
+				originalInstances.add(instance);
+				Integer reference = references.get(instance);
+				if (reference == null) {
+					reference = storedInstances.size();
+					references.put(instance, reference);
+					storedInstances.add(instance);
+				}
+				SimpleExample placeholder = new SimpleExample();
+				placeholder.setId(reference);
+				supportVector.setInstance(placeholder);
+			}
+			json = writeValueAsString(obj);
+		} finally {
+			for (int i = 0; i < originalInstances.size(); i++) {
+				supportVectors.get(i).setInstance(originalInstances.get(i));
+			}
+		}
+
+		byte[] jsonBytes = json.getBytes(ENCODING);
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(outputFilePath), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(0);
+			out.writeInt(jsonBytes.length);
+			out.write(jsonBytes);
+			// the binary block extends to the end of the file
+			BinaryDatasetWriter writer = new BinaryDatasetWriter(out);
+			for (Example instance : storedInstances) {
+				writer.write(instance);
+			}
+			writer.finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads an object from a file, either in the binary or in the JSON format
+	 *
+	 * @param file
+	 *            the file
+	 * @param valueType
+	 *            the class of the object
+	 * @return the object
+	 * @throws IOException
+	 */
+	@Override
+	public <T> T readValue(File file, Class<T> valueType) throws IOException {
+		if (!isBinaryModel(file)) {
+			return super.readValue(file, valueType);
+		}
+		String json = readSkeleton(file);
+		T value = readValue(json, valueType);
+
+		long blockStart = HEADER_SIZE + json.getBytes(ENCODING).length;
+		BinaryDatasetReader reader = new BinaryDatasetReader(file, blockStart, file.length() - blockStart);
+		List<Example> storedInstances = new ArrayList<Example>(reader.getNumberOfExamples());
+		try {
+			while (reader.hasNext()) {
+				storedInstances.add(reader.readNextExample());
+			}
+		} finally {
+			reader.close();
+		}
+		restoreInstances(value, storedInstances);
+		return value;
+	}
+
+	/**
+	 * Opens a binary model through a read-only memory mapping of its file.
+	 * The structure of the model is deserialized, while the support vectors
+	 * are {@link MappedExample}s whose representations are decoded from the
+	 * mapped file only when they are used, and can be reclaimed by the
+	 * garbage collector afterwards. Therefore, the model starts faster and
+	 * requires less heap than a model read by
+	 * {@link #readValue(File, Class)}, and multiple JVMs opening the same
+	 * model share its pages through the cache of the operating system.
+	 * <p>
+	 * The file must not be modified while the model is in use.
+	 *
+	 * @param file
+	 *            a binary model
+	 * @param valueType
+	 *            the class of the model
+	 * @return the model
+	 * @throws IOException
+	 */
+	public <T> T readMappedValue(File file, Class<T> valueType) throws IOException {
+		if (!isBinaryModel(file)) {
+			throw new IOException("Only binary models can be memory-mapped: " + file);
+		}
+		String json = readSkeleton(file);
+		T value = readValue(json, valueType);
+
+		long blockStart = HEADER_SIZE + json.getBytes(ENCODING).length;
+		MappedDataset storedInstances = new MappedDataset(file, blockStart, file.length() - blockStart);
+		restoreInstances(value, storedInstances.getExamples());
+		return value;
+	}
+
+	/**
+	 * Reads a model from a file, memory-mapping it if it is a binary model
+	 * (see {@link #readMappedValue(File, Class)}) and reading it entirely
+	 * otherwise
+	 *
+	 * @param file
+	 *            a binary or JSON model
+	 * @param valueType
+	 *            the class of the model
+	 * @return the model
+	 * @throws IOException
+	 */
+	public <T> T openModel(File file, Class<T> valueType) throws IOException {
+		if (isBinaryModel(file)) {
+			return readMappedValue(file, valueType);
+		}
+		return readValue(file, valueType);
+	}
+
+	/**
+	 * Reads the JSON skeleton of a binary model
+	 */
+	static String readSkeleton(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("The file is not a KeLP binary model");
+			}
+			int version = in.readInt();
+			if (version > VERSION) {
+				throw new IOException("Unsupported binary model version " + version);
+			}
+			in.readInt();
+			byte[] jsonBytes = new byte[in.readInt()];
+			in.readFully(jsonBytes);
+			return new String(jsonBytes, ENCODING);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Replaces the placeholders of the support vectors with the stored
+	 * instances they refer to
+	 */
+	static void restoreInstances(Object value, List<? extends Example> storedInstances) throws IOException {
+		for (SupportVector supportVector : getSupportVectors(value)) {
+			long reference = supportVector.getInstance().getId();
+			if (reference < 0 || reference >= storedInstances.size()) {
+				throw new IOException("Invalid support vector reference " + reference);
+			}
+			supportVector.setInstance(storedInstances.get((int) reference));
+		}
+	}
+
+	private static List<SupportVector> getSupportVectors(Object obj) {
+		List<SupportVector> supportVectors = new ArrayList<SupportVector>();
+		if (obj instanceof PredictionFunction) {
+			for (BinaryKernelMachineModel model : ClassifierPreparation
+					.getKernelMachineModels((PredictionFunction) obj)) {
+				supportVectors.addAll(model.getSupportVectors());
+			}
+		}
+		return supportVectors;
+	}
+}
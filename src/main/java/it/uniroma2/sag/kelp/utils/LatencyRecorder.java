@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.utils;
+
+import java.util.Arrays;
+
+/**
+ * Records the latencies of a sequence of operations, e.g. the requests
+ * served by a prediction server, and computes their percentiles. Only the
+ * most recent <code>window</code> latencies are considered, so that the
+ * memory is bounded and the percentiles reflect the current load.
+ * <p>
+ * The recorder can be accessed concurrently by multiple threads.
+ */
+public class LatencyRecorder {
+
+	/**
+	 * The default number of recent latencies considered in the percentiles
+	 */
+	public static final int DEFAULT_WINDOW = 10000;
+
+	private final long[] latencies;
+	private int next;
+	private long count;
+	private long totalNanos;
+
+	public LatencyRecorder() {
+		this(DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param window
+	 *            the number of recent latencies considered in the percentiles
+	 */
+	public LatencyRecorder(int window) {
+		latencies = new long[window];
+	}
+
+	/**
+	 * Records the latency of an operation
+	 *
+	 * @param nanos
+	 *            the latency in nanoseconds
+	 */
+	public synchronized void record(long nanos) {
+		latencies[next] = nanos;
+		next = (next + 1) % latencies.length;
+		count++;
+		totalNanos += nanos;
+	}
+
+	/**
+	 * @return the number of recorded operations
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the mean latency of all the recorded operations, in
+	 *         milliseconds
+	 */
+	public synchronized double getMeanMillis() {
+		return count == 0 ? 0 : totalNanos / 1e6 / count;
+	}
+
+	/**
+	 * Returns a percentile of the recent latencies, according to the
+	 * nearest-rank method
+	 *
+	 * @param percentile
+	 *            the percentile, in (0, 100]
+	 * @return the percentile of the recent latencies in milliseconds, or 0 if
+	 *         no operation has been recorded
+	 */
+	public double getPercentileMillis(double percentile) {
+		long[] recent;
+		synchronized (this) {
+			recent = Arrays.copyOf(latencies, (int) Math.min(count, latencies.length));
+		}
+		if (recent.length == 0) {
+			return 0;
+		}
+		Arrays.sort(recent);
+		int rank = (int) Math.ceil(percentile / 100 * recent.length);
+		return recent[Math.max(0, Math.min(recent.length, rank) - 1)] / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d, mean=%.3fms, p50=%.3fms, p99=%.3fms", getCount(), getMeanMillis(),
+				getPercentileMillis(50), getPercentileMillis(99));
+	}
+}
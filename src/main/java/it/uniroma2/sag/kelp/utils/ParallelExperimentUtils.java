@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.KernelUtils;
+import it.uniroma2.sag.kelp.learningalgorithm.KernelMethod;
+import it.uniroma2.sag.kelp.learningalgorithm.LearningAlgorithm;
+import it.uniroma2.sag.kelp.learningalgorithm.LinearMethod;
+import it.uniroma2.sag.kelp.learningalgorithm.classification.multiclassification.OneVsAllLearning;
+import it.uniroma2.sag.kelp.predictionfunction.PredictionFunction;
+import it.uniroma2.sag.kelp.utils.evaluation.Evaluator;
+
+/**
+ * Experimental utilities learning the folds of a cross validation
+ * concurrently, each one with its own copy of the learning algorithm.
+ * <p>
+ * When the learning algorithm is a kernel method, or a one-vs-all schema of
+ * kernel methods, each fold operates on its own copy of the kernel function,
+ * while the kernel values are shared among all the folds through thread-safe
+ * caches (see
+ * {@link KernelUtils#copiesSharingCaches(Kernel, int, java.util.Collection)}):
+ * a kernel value computed in a fold is reused by the other ones. The folds
+ * are the same of a sequential cross validation, and each evaluator only
+ * receives the predictions of its fold, thus the results do not depend on
+ * the number of threads.
+ * <p>
+ * The folds are learned concurrently only when the kernel function of the
+ * learning algorithm can be copied as above, or when the learning algorithm
+ * (or the base algorithm of a one-vs-all schema) is a linear method, that
+ * does not adopt a kernel function. Any other learning algorithm, e.g. a
+ * one-vs-one or a multi-epoch schema wrapping a kernel method, would share
+ * the same kernel function, and its caches, among the folds: in this case
+ * the folds are learned sequentially.
+ */
+public class ParallelExperimentUtils {
+
+	/**
+	 * Performs an n-fold cross validation, learning up to
+	 * <code>parallelism</code> folds concurrently
+	 *
+	 * @param nFold
+	 *            the number of folds
+	 * @param learningAlgorithm
+	 *            the learning algorithm, that is duplicated for each fold
+	 * @param dataset
+	 *            the dataset to be split in folds
+	 * @param evaluator
+	 *            the evaluator, that is duplicated for each fold
+	 * @param parallelism
+	 *            the maximum number of folds learned concurrently
+	 * @return the evaluators of the folds, in the order of the folds
+	 */
+	public static <T extends Evaluator> List<T> nFoldCrossValidation(int nFold, LearningAlgorithm learningAlgorithm,
+			SimpleDataset dataset, T evaluator, int parallelism) {
+		final SimpleDataset[] folds = dataset.nFolding(nFold);
+		List<LearningAlgorithm> learners = new ArrayList<LearningAlgorithm>(folds.length);
+		for (int f = 0; f < folds.length; f++) {
+			learners.add(learningAlgorithm.duplicate());
+		}
+		Kernel kernel = getKernel(learningAlgorithm);
+		boolean concurrent = parallelism > 1 && (kernel != null || isLinear(learningAlgorithm));
+		if (kernel != null && concurrent) {
+			List<Kernel> copies;
+			try {
+				copies = KernelUtils.copiesSharingCaches(kernel, folds.length, dataset.getExamples());
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to copy the kernel function: " + e.getMessage(), e);
+			}
+			for (int f = 0; f < folds.length; f++) {
+				setKernel(learners.get(f), copies.get(f));
+			}
+		}
+
+		List<FoldTask<T>> tasks = new ArrayList<FoldTask<T>>(folds.length);
+		for (int f = 0; f < folds.length; f++) {
+			SimpleDataset trainingSet = new SimpleDataset();
+			for (int i = 0; i < folds.length; i++) {
+				if (i != f) {
+					for (Example example : folds[i].getExamples()) {
+						trainingSet.addExample(example);
+					}
+				}
+			}
+			@SuppressWarnings("unchecked")
+			T foldEvaluator = (T) evaluator.duplicate();
+			tasks.add(new FoldTask<T>(learners.get(f), trainingSet, folds[f], foldEvaluator));
+		}
+
+		List<T> evaluators = new ArrayList<T>(folds.length);
+		int threads = concurrent ? Math.min(parallelism, folds.length) : 1;
+		if (threads <= 1) {
+			for (FoldTask<T> task : tasks) {
+				evaluators.add(task.call());
+			}
+			return evaluators;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new DaemonThreadFactory("kelp-cross-validation"));
+		try {
+			List<Future<T>> results = new ArrayList<Future<T>>(folds.length);
+			for (FoldTask<T> task : tasks) {
+				results.add(executor.submit(task));
+			}
+			for (Future<T> result : results) {
+				evaluators.add(waitFor(result));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return evaluators;
+	}
+
+	/**
+	 * Performs an n-fold cross validation, learning the folds concurrently
+	 * with as many threads as the available processors
+	 *
+	 * @param nFold
+	 *            the number of folds
+	 * @param learningAlgorithm
+	 *            the learning algorithm, that is duplicated for each fold
+	 * @param dataset
+	 *            the dataset to be split in folds
+	 * @param evaluator
+	 *            the evaluator, that is duplicated for each fold
+	 * @return the evaluators of the folds, in the order of the folds
+	 */
+	public static <T extends Evaluator> List<T> nFoldCrossValidation(int nFold, LearningAlgorithm learningAlgorithm,
+			SimpleDataset dataset, T evaluator) {
+		return nFoldCrossValidation(nFold, learningAlgorithm, dataset, evaluator,
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @return the kernel of a kernel method, or of the base algorithm of a
+	 *         one-vs-all schema, or <code>null</code>
+	 */
+	private static Kernel getKernel(LearningAlgorithm learningAlgorithm) {
+		if (learningAlgorithm instanceof KernelMethod) {
+			return ((KernelMethod) learningAlgorithm).getKernel();
+		}
+		if (learningAlgorithm instanceof OneVsAllLearning) {
+			LearningAlgorithm baseAlgorithm = ((OneVsAllLearning) learningAlgorithm).getBaseAlgorithm();
+			if (baseAlgorithm instanceof KernelMethod) {
+				return ((KernelMethod) baseAlgorithm).getKernel();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return whether the learning algorithm, or the base algorithm of a
+	 *         one-vs-all schema, is a linear method
+	 */
+	private static boolean isLinear(LearningAlgorithm learningAlgorithm) {
+		if (learningAlgorithm instanceof OneVsAllLearning) {
+			return ((OneVsAllLearning) learningAlgorithm).getBaseAlgorithm() instanceof LinearMethod;
+		}
+		return learningAlgorithm instanceof LinearMethod;
+	}
+
+	private static void setKernel(LearningAlgorithm learningAlgorithm, Kernel kernel) {
+		if (learningAlgorithm instanceof KernelMethod) {
+			((KernelMethod) learningAlgorithm).setKernel(kernel);
+			return;
+		}
+		// the binary learners are created again, so that they adopt the kernel
+		OneVsAllLearning oneVsAll = (OneVsAllLearning) learningAlgorithm;
+		LearningAlgorithm baseAlgorithm = oneVsAll.getBaseAlgorithm();
+		((KernelMethod) baseAlgorithm).setKernel(kernel);
+		oneVsAll.setBaseAlgorithm(baseAlgorithm);
+		if (oneVsAll.getLabels() != null) {
+			oneVsAll.setLabels(oneVsAll.getLabels());
+		}
+	}
+
+	private static <T> T waitFor(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while learning the folds", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error while learning a fold: " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Learns a fold and evaluates it on its test set
+	 */
+	private static class FoldTask<T extends Evaluator> implements Callable<T> {
+		private final LearningAlgorithm learner;
+		private final SimpleDataset trainingSet;
+		private final SimpleDataset testSet;
+		private final T evaluator;
+
+		public FoldTask(LearningAlgorithm learner, SimpleDataset trainingSet, SimpleDataset testSet, T evaluator) {
+			this.learner = learner;
+			this.trainingSet = trainingSet;
+			this.testSet = testSet;
+			this.evaluator = evaluator;
+		}
+
+		@Override
+		public T call() {
+			learner.learn(trainingSet);
+			PredictionFunction predictionFunction = learner.getPredictionFunction();
+			for (Example example : testSet.getExamples()) {
+				evaluator.addCount(example, predictionFunction.predict(example));
+			}
+			return evaluator;
+		}
+	}
+}
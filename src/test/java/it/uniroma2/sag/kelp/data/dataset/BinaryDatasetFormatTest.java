@@ -0,0 +1,160 @@
+package it.uniroma2.sag.kelp.data.dataset;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.data.representation.tree.TreeRepresentation;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.tree.PartialTreeKernel;
+import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
+
+public class BinaryDatasetFormatTest {
+
+	private static final float TOLERANCE = 0.0001f;
+
+	@Test
+	public void convertAndReadBack() throws Exception {
+		String textPath = "src/test/resources/dataset_reader_test.klp.gz";
+		File binaryFile = File.createTempFile("dataset_reader_test", BinaryDatasetFormat.FILE_EXTENSION);
+		binaryFile.deleteOnExit();
+
+		int converted = DatasetLoader.convertToBinary(textPath, binaryFile.getAbsolutePath(), false);
+		Assert.assertTrue(BinaryDatasetFormat.isBinaryDataset(binaryFile));
+		Assert.assertFalse(BinaryDatasetFormat.isBinaryDataset(new File(textPath)));
+
+		SimpleDataset original = new SimpleDataset();
+		original.populate(textPath);
+		SimpleDataset decoded = new SimpleDataset();
+		DatasetLoader.populate(decoded, binaryFile.getAbsolutePath());
+
+		Assert.assertEquals(original.getNumberOfExamples(), converted);
+		Assert.assertEquals(original.getNumberOfExamples(), decoded.getNumberOfExamples());
+
+		Kernel kernel = new LinearKernel("0");
+		for (int i = 0; i < original.getNumberOfExamples(); i++) {
+			Example a = original.getExample(i);
+			Example b = decoded.getExample(i);
+			for (Label label : a.getClassificationLabels()) {
+				Assert.assertTrue(b.isExampleOf(label));
+			}
+			Assert.assertEquals(kernel.innerProduct(a, a), kernel.innerProduct(a, b), TOLERANCE);
+			Assert.assertEquals(kernel.innerProduct(a, a), kernel.innerProduct(b, b), TOLERANCE);
+		}
+	}
+
+	@Test
+	public void mappedDatasetDecodesLazily() throws Exception {
+		String textPath = "src/test/resources/dataset_reader_test.klp.gz";
+		File binaryFile = File.createTempFile("dataset_reader_test", BinaryDatasetFormat.FILE_EXTENSION);
+		binaryFile.deleteOnExit();
+		DatasetLoader.convertToBinary(textPath, binaryFile.getAbsolutePath(), false);
+
+		SimpleDataset original = new SimpleDataset();
+		original.populate(textPath);
+		MappedDataset mapped = new MappedDataset(binaryFile.getAbsolutePath());
+
+		Assert.assertEquals(original.getNumberOfExamples(), mapped.getNumberOfExamples());
+		Kernel kernel = new LinearKernel("0");
+		for (int i = 0; i < original.getNumberOfExamples(); i++) {
+			Example a = original.getExample(i);
+			Example b = mapped.getExample(i);
+			Assert.assertTrue(b instanceof MappedExample);
+			Assert.assertEquals(a.getRepresentations().keySet(), b.getRepresentations().keySet());
+			Assert.assertEquals(kernel.innerProduct(a, a), kernel.innerProduct(a, b), TOLERANCE);
+		}
+	}
+
+	@Test
+	public void treesAreRebuiltFromTheirNodes() throws Exception {
+		String textPath = "src/main/resources/qc/TREC_10.coarse.klp.gz";
+		File binaryFile = File.createTempFile("trec_10", BinaryDatasetFormat.FILE_EXTENSION);
+		binaryFile.deleteOnExit();
+		DatasetLoader.convertToBinary(textPath, binaryFile.getAbsolutePath(), false);
+
+		SimpleDataset original = new SimpleDataset();
+		original.populate(textPath);
+		SimpleDataset decoded = new SimpleDataset();
+		DatasetLoader.populate(decoded, binaryFile.getAbsolutePath());
+		MappedDataset mapped = new MappedDataset(binaryFile.getAbsolutePath());
+
+		Assert.assertEquals(original.getNumberOfExamples(), decoded.getNumberOfExamples());
+		Kernel kernel = new PartialTreeKernel(0.4f, 0.4f, 5f, "grct");
+		for (int i = 0; i < original.getNumberOfExamples(); i++) {
+			Example a = original.getExample(i);
+			for (Example b : new Example[] { decoded.getExample(i), mapped.getExample(i) }) {
+				Assert.assertTrue(b.getRepresentation("grct") instanceof TreeRepresentation);
+				Assert.assertEquals(a.getRepresentation("grct").getTextFromData(),
+						b.getRepresentation("grct").getTextFromData());
+				Assert.assertEquals(((TreeRepresentation) a.getRepresentation("grct")).getNumberOfNodes(),
+						((TreeRepresentation) b.getRepresentation("grct")).getNumberOfNodes());
+				Assert.assertEquals(kernel.innerProduct(a, a), kernel.innerProduct(a, b), TOLERANCE);
+				Assert.assertEquals(kernel.innerProduct(a, a), kernel.innerProduct(b, b), TOLERANCE);
+			}
+		}
+	}
+
+	/**
+	 * Writes a dataset made of many distinct copies of the test dataset, so
+	 * that it spans several chunks of the parallel parser
+	 */
+	private static String createLargeDataset(int copies) throws Exception {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new FileInputStream("src/test/resources/dataset_reader_test.klp.gz")), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() != 0) {
+					lines.add(line);
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		File textFile = File.createTempFile("dataset_reader_test_large", ".klp");
+		textFile.deleteOnExit();
+		PrintWriter out = new PrintWriter(textFile, "UTF-8");
+		try {
+			for (int copy = 0; copy < copies; copy++) {
+				for (String line : lines) {
+					out.println(line.replace("|EV|", "1000000:" + (copy + 1) + " |EV|"));
+				}
+			}
+		} finally {
+			out.close();
+		}
+		return textFile.getAbsolutePath();
+	}
+
+	@Test
+	public void parallelPopulationPreservesOrderAndIds() throws Exception {
+		// more than three chunks, the last one being partial
+		String textPath = createLargeDataset(200);
+		SimpleDataset sequential = new SimpleDataset();
+		sequential.populate(textPath);
+		SimpleDataset parallel = new SimpleDataset();
+		DatasetLoader.populate(parallel, textPath, 4);
+
+		Assert.assertEquals(sequential.getNumberOfExamples(), parallel.getNumberOfExamples());
+		Kernel kernel = new LinearKernel("0");
+		long idOffset = parallel.getExample(0).getId() - sequential.getExample(0).getId();
+		for (int i = 0; i < sequential.getNumberOfExamples(); i++) {
+			Example a = sequential.getExample(i);
+			Example b = parallel.getExample(i);
+			Assert.assertEquals(a.getId() + idOffset, b.getId());
+			Assert.assertEquals(kernel.innerProduct(a, a), kernel.innerProduct(a, b), TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package it.uniroma2.sag.kelp.data.dataset;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.data.label.StringLabel;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
+import it.uniroma2.sag.kelp.learningalgorithm.classification.passiveaggressive.LinearPassiveAggressiveClassification;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.Classifier;
+
+public class StreamingDatasetTest {
+
+	private static final float TOLERANCE = 0.0001f;
+
+	private static final Label POSITIVE = new StringLabel("+1");
+
+	/**
+	 * Writes a linearly separable (up to some noise) binary dataset
+	 */
+	private static String createDataset(int size) throws Exception {
+		Random random = new Random(7);
+		File textFile = File.createTempFile("streaming_dataset_test", ".klp");
+		textFile.deleteOnExit();
+		PrintWriter out = new PrintWriter(textFile, "UTF-8");
+		try {
+			for (int i = 0; i < size; i++) {
+				float x1 = random.nextFloat();
+				float x2 = random.nextFloat();
+				float x3 = random.nextFloat();
+				boolean positive = x1 - x2 + 0.2f * (random.nextFloat() - 0.5f) > 0;
+				out.println((positive ? "+1" : "-1") + " |BV| 1:" + x1 + " 2:" + x2 + " 3:" + x3 + " |EV|");
+			}
+		} finally {
+			out.close();
+		}
+		return textFile.getAbsolutePath();
+	}
+
+	@Test
+	public void allExamplesAreReadAtEachPass() throws Exception {
+		String textPath = "src/test/resources/dataset_reader_test.klp.gz";
+		SimpleDataset original = new SimpleDataset();
+		original.populate(textPath);
+
+		StreamingDataset streaming = new StreamingDataset(textPath, 4);
+		Kernel kernel = new LinearKernel("0");
+		for (int pass = 0; pass < 2; pass++) {
+			int i = 0;
+			while (streaming.hasNextExample()) {
+				Example a = original.getExample(i++);
+				Example b = streaming.getNextExample();
+				Assert.assertEquals(kernel.innerProduct(a, a), kernel.innerProduct(a, b), TOLERANCE);
+			}
+			Assert.assertEquals(original.getNumberOfExamples(), i);
+			Assert.assertEquals(original.getNumberOfExamples(), streaming.getNumberOfExamples());
+			streaming.reset();
+		}
+		streaming.close();
+	}
+
+	@Test
+	public void datasetFromAStreamCanBeReadOnce() throws Exception {
+		String text = "+1 |BV| 1:0.5 |EV|\n\n-1 |BV| 2:0.5 |EV|\n";
+		StreamingDataset streaming = new StreamingDataset(new ByteArrayInputStream(text.getBytes("UTF-8")), 1);
+		Assert.assertTrue(streaming.getNextExample().isExampleOf(POSITIVE));
+		Assert.assertFalse(streaming.getNextExample().isExampleOf(POSITIVE));
+		Assert.assertNull(streaming.getNextExample());
+		Assert.assertEquals(2, streaming.getNumberOfExamples());
+		streaming.reset();
+		Assert.assertFalse(streaming.hasNextExample());
+	}
+
+	@Test
+	public void passiveAggressiveLearnsTheSameModelFromTheStream() throws Exception {
+		String textPath = createDataset(2000);
+		SimpleDataset inMemory = new SimpleDataset();
+		inMemory.populate(textPath);
+		StreamingDataset streaming = new StreamingDataset(textPath, 16);
+
+		LinearPassiveAggressiveClassification expectedLearner = createPassiveAggressive();
+		LinearPassiveAggressiveClassification actualLearner = createPassiveAggressive();
+		// two epochs, the second one restarting the reading of the file
+		for (int epoch = 0; epoch < 2; epoch++) {
+			inMemory.reset();
+			expectedLearner.learn(inMemory);
+			streaming.reset();
+			actualLearner.learn(streaming);
+		}
+		streaming.close();
+
+		Classifier expected = expectedLearner.getPredictionFunction();
+		Classifier actual = actualLearner.getPredictionFunction();
+		for (Example example : inMemory.getExamples()) {
+			Assert.assertEquals(expected.predict(example).getScore(POSITIVE), actual.predict(example).getScore(POSITIVE),
+					TOLERANCE);
+		}
+	}
+
+	private static LinearPassiveAggressiveClassification createPassiveAggressive() {
+		LinearPassiveAggressiveClassification learner = new LinearPassiveAggressiveClassification();
+		learner.setRepresentation("0");
+		learner.setC(1f);
+		learner.setLabels(Arrays.asList(POSITIVE));
+		return learner;
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void samplingIsNotSupported() throws Exception {
+		new StreamingDataset(createDataset(10)).getRandExamples(2);
+	}
+}
@@ -0,0 +1,154 @@
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.SimpleExample;
+
+public class ConcurrentKernelCacheTest {
+
+	private static final int THREADS = 32;
+	private static final int EXAMPLES = 500;
+	private static final int OPERATIONS_PER_THREAD = 100000;
+
+	/**
+	 * The index of the unordered pair of the <code>i</code>-th and the
+	 * <code>j</code>-th example, used as the kernel value of the pair. It is
+	 * below <code>EXAMPLES * EXAMPLES</code> &lt; 2^24, hence it is exactly
+	 * represented by a float and no two pairs share the same value.
+	 */
+	private static float expectedValue(int i, int j) {
+		return Math.min(i, j) * EXAMPLES + Math.max(i, j);
+	}
+
+	private static Example[] createExamples() {
+		Example[] examples = new Example[EXAMPLES];
+		for (int i = 0; i < EXAMPLES; i++) {
+			examples[i] = new SimpleExample();
+		}
+		return examples;
+	}
+
+	/**
+	 * Reads and writes random pairs of examples from <code>threads</code>
+	 * threads started at the same time, flushing the cache from time to time.
+	 * The throughput is printed, without asserting anything on it.
+	 *
+	 * @return the number of values read from the cache
+	 */
+	private static int run(final KernelCache cache, final Example[] examples, int threads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+		for (int t = 0; t < threads; t++) {
+			final long seed = t;
+			results.add(executor.submit(new Callable<int[]>() {
+				@Override
+				public int[] call() throws InterruptedException {
+					start.await();
+					Random random = new Random(seed);
+					int hits = 0;
+					int wrongValues = 0;
+					for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+						int ia = random.nextInt(examples.length);
+						int ib = random.nextInt(examples.length);
+						Example a = examples[ia];
+						Example b = examples[ib];
+						Float value = cache.getKernelValue(a, b);
+						if (value == null) {
+							cache.setKernelValue(a, b, expectedValue(ia, ib));
+						} else if (value.floatValue() != expectedValue(ia, ib)) {
+							wrongValues++;
+						} else {
+							hits++;
+						}
+						if (seed == 0 && i % 10000 == 0) {
+							cache.flushCache();
+						}
+					}
+					return new int[] { hits, wrongValues };
+				}
+			}));
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		int hits = 0;
+		int wrongValues = 0;
+		try {
+			for (Future<int[]> result : results) {
+				hits += result.get()[0];
+				wrongValues += result.get()[1];
+			}
+		} finally {
+			executor.shutdown();
+		}
+		long elapsed = System.nanoTime() - begin;
+		System.out.println(String.format("%s, %d threads: %.0f ops/s", cache.getClass().getSimpleName(),
+				threads, (double) threads * OPERATIONS_PER_THREAD * 1e9 / elapsed));
+		Assert.assertEquals(0, wrongValues);
+
+		// after the contention, every stored value belongs to its pair
+		for (int i = 0; i < examples.length; i++) {
+			for (int j = 0; j < examples.length; j++) {
+				Float value = cache.getKernelValue(examples[i], examples[j]);
+				if (value != null) {
+					Assert.assertEquals(expectedValue(i, j), value.floatValue(), 0);
+				}
+			}
+		}
+		return hits;
+	}
+
+	@Test
+	public void concurrentAccessesReturnConsistentValues() throws Exception {
+		Example[] examples = createExamples();
+		// a table smaller than the number of pairs, so that the threads
+		// continuously replace each other's entries
+		Assert.assertTrue(run(new ConcurrentKernelCache(EXAMPLES * 10, 4), examples, THREADS) > 0);
+		Assert.assertTrue(run(new ConcurrentKernelCache(EXAMPLES * EXAMPLES), examples, THREADS) > 0);
+	}
+
+	@Test
+	public void synchronizedKernelCacheReturnsConsistentValues() throws Exception {
+		Example[] examples = createExamples();
+		Assert.assertTrue(run(new SynchronizedKernelCache(new LruKernelCache(1L << 16)), examples, THREADS) > 0);
+	}
+
+	/**
+	 * Reports the throughput of the concurrent and of the single-lock cache
+	 * from 1 to <code>THREADS</code> threads. Only the consistency of the
+	 * values is asserted, as the timings depend on the machine.
+	 */
+	@Test
+	public void throughputIsReportedPerThreadCount() throws Exception {
+		Example[] examples = createExamples();
+		for (int threads = 1; threads <= THREADS; threads *= 2) {
+			run(new ConcurrentKernelCache(EXAMPLES * EXAMPLES), examples, threads);
+			run(new SynchronizedKernelCache(new LruKernelCache(1L << 24)), examples, threads);
+		}
+	}
+
+	@Test
+	public void defaultConstructorCreatesAUsableCache() throws Exception {
+		Example[] examples = createExamples();
+		ConcurrentKernelCache cache = new ConcurrentKernelCache();
+		Assert.assertEquals(ConcurrentKernelCache.DEFAULT_SIZE, cache.getSize());
+		cache.setKernelValue(examples[0], examples[1], 3);
+		Assert.assertEquals(3, cache.getKernelValue(examples[1], examples[0]), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void emptyCachesAreRejected() {
+		new ConcurrentKernelCache(0);
+	}
+}
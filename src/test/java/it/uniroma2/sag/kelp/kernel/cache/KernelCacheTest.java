@@ -0,0 +1,348 @@
+package it.uniroma2.sag.kelp.kernel.cache;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFactory;
+import it.uniroma2.sag.kelp.data.example.ExampleFingerprint;
+import it.uniroma2.sag.kelp.data.example.SimpleExample;
+
+public class KernelCacheTest {
+
+	private static final float TOLERANCE = 0.0001f;
+
+	private static Example[] createExamples(int n) {
+		Example[] examples = new Example[n];
+		for (int i = 0; i < n; i++) {
+			examples[i] = new SimpleExample();
+		}
+		return examples;
+	}
+
+	/**
+	 * Stores a value for each pair of examples and checks that all of them
+	 * are returned, in both orders
+	 */
+	private static void checkStoresAllPairs(KernelCache cache, Example[] examples) {
+		for (int i = 0; i < examples.length; i++) {
+			for (int j = 0; j <= i; j++) {
+				Assert.assertNull(cache.getKernelValue(examples[i], examples[j]));
+				cache.setKernelValue(examples[i], examples[j], i * 1000 + j);
+			}
+		}
+		for (int i = 0; i < examples.length; i++) {
+			for (int j = 0; j <= i; j++) {
+				Assert.assertEquals(i * 1000 + j, cache.getKernelValue(examples[i], examples[j]), TOLERANCE);
+				Assert.assertEquals(i * 1000 + j, cache.getKernelValue(examples[j], examples[i]), TOLERANCE);
+			}
+		}
+		cache.flushCache();
+		Assert.assertNull(cache.getKernelValue(examples[0], examples[0]));
+	}
+
+	@Test
+	public void offHeapKernelCache() {
+		Example[] examples = createExamples(50);
+		checkStoresAllPairs(new OffHeapKernelCache(examples.length), examples);
+
+		// when the cache is full, the oldest examples are discarded
+		OffHeapKernelCache cache = new OffHeapKernelCache(10);
+		for (int i = 0; i < examples.length; i++) {
+			cache.setKernelValue(examples[i], examples[i], i);
+		}
+		Assert.assertNull(cache.getKernelValue(examples[0], examples[0]));
+		Assert.assertEquals(examples.length - 1,
+				cache.getKernelValue(examples[examples.length - 1], examples[examples.length - 1]), TOLERANCE);
+
+		// the recycled slot of an example discards its values with the others
+		cache = new OffHeapKernelCache(3);
+		cache.setKernelValue(examples[0], examples[1], 1);
+		cache.setKernelValue(examples[2], examples[1], 2);
+		cache.setKernelValue(examples[3], examples[1], 3);
+		Assert.assertNull(cache.getKernelValue(examples[0], examples[1]));
+		Assert.assertEquals(2, cache.getKernelValue(examples[1], examples[2]), TOLERANCE);
+		Assert.assertEquals(3, cache.getKernelValue(examples[1], examples[3]), TOLERANCE);
+	}
+
+	@Test
+	public void symmetricFixIndexKernelCache() {
+		Example[] examples = createExamples(50);
+		checkStoresAllPairs(new SymmetricFixIndexKernelCache(examples.length), examples);
+
+		// an example replacing another one in its slot discards its values
+		SymmetricFixIndexKernelCache cache = new SymmetricFixIndexKernelCache(10);
+		Example a = examples[0];
+		Example b = null;
+		Example c = null;
+		for (Example example : examples) {
+			if (example.getId() % 10 == a.getId() % 10 && example != a) {
+				c = example;
+			} else if (example.getId() % 10 != a.getId() % 10) {
+				b = example;
+			}
+		}
+		cache.setKernelValue(a, b, 1);
+		Assert.assertEquals(1, cache.getKernelValue(b, a), TOLERANCE);
+		cache.setKernelValue(c, c, 2);
+		Assert.assertNull(cache.getKernelValue(a, b));
+		Assert.assertEquals(2, cache.getKernelValue(c, c), TOLERANCE);
+	}
+
+	@Test
+	public void persistentKernelCacheIsReloadedByContent() throws Exception {
+		File file = File.createTempFile("kernel_cache_test", PersistentKernelCache.FILE_EXTENSION);
+		file.delete();
+		file.deleteOnExit();
+		String a = "+1 |BV:v| 1:1.0 2:2.0 |EV|";
+		String b = "-1 |BV:v| 1:3.0 3:1.0 |EV|";
+
+		PersistentKernelCache cache = new PersistentKernelCache(file.getPath());
+		cache.setKernelValue(ExampleFactory.parseExample(a), ExampleFactory.parseExample(b), 3);
+		cache.save();
+
+		// examples with the same content and different ids share the values
+		PersistentKernelCache reloaded = new PersistentKernelCache(file.getPath());
+		Assert.assertEquals(1, reloaded.getNumberOfStoredValues());
+		Assert.assertEquals(3, reloaded.getKernelValue(ExampleFactory.parseExample(b), ExampleFactory.parseExample(a)),
+				TOLERANCE);
+		Assert.assertNull(reloaded.getKernelValue(ExampleFactory.parseExample(a), ExampleFactory.parseExample(a)));
+	}
+
+	/**
+	 * Fills a cache with three values, accesses the first one twice and adds
+	 * a fourth value
+	 */
+	private static Example[] fillAndOverflow(BoundedKernelCache cache) {
+		Example[] examples = createExamples(4);
+		for (int i = 0; i < 3; i++) {
+			cache.setKernelValue(examples[i], examples[i], i);
+		}
+		cache.getKernelValue(examples[0], examples[0]);
+		cache.getKernelValue(examples[0], examples[0]);
+		cache.getKernelValue(examples[2], examples[2]);
+		cache.setKernelValue(examples[3], examples[3], 3);
+		Assert.assertEquals(3, cache.getNumberOfStoredValues());
+		Assert.assertEquals(3 * cache.getBytesPerValue(), cache.getUsedBytes());
+		return examples;
+	}
+
+	@Test
+	public void boundedKernelCachesEvictAccordingToTheirPolicy() {
+		Example[] examples = createExamples(20);
+		checkStoresAllPairs(new LruKernelCache(BoundedKernelCache.DEFAULT_MAX_BYTES), examples);
+		checkStoresAllPairs(new LfuKernelCache(BoundedKernelCache.DEFAULT_MAX_BYTES), examples);
+		checkStoresAllPairs(new ClockKernelCache(BoundedKernelCache.DEFAULT_MAX_BYTES), examples);
+
+		// the least recently used value is the second one
+		LruKernelCache lru = new LruKernelCache();
+		lru.setMaxBytes(3 * lru.getBytesPerValue());
+		examples = fillAndOverflow(lru);
+		Assert.assertNull(lru.getKernelValue(examples[1], examples[1]));
+		Assert.assertNotNull(lru.getKernelValue(examples[0], examples[0]));
+
+		// the least frequently used values are the second and the fourth one
+		LfuKernelCache lfu = new LfuKernelCache();
+		lfu.setMaxBytes(3 * lfu.getBytesPerValue());
+		examples = fillAndOverflow(lfu);
+		Assert.assertNull(lfu.getKernelValue(examples[1], examples[1]));
+		Assert.assertNotNull(lfu.getKernelValue(examples[0], examples[0]));
+
+		// all the values are referenced: the clock hand clears all the bits
+		// and discards the first value
+		ClockKernelCache clock = new ClockKernelCache();
+		clock.setMaxBytes(3 * clock.getBytesPerValue());
+		examples = fillAndOverflow(clock);
+		Assert.assertNull(clock.getKernelValue(examples[0], examples[0]));
+		Assert.assertNotNull(clock.getKernelValue(examples[3], examples[3]));
+	}
+
+	@Test
+	public void monitoredKernelCacheCountsHitsMissesAndEvictions() {
+		LruKernelCache lru = new LruKernelCache();
+		lru.setMaxBytes(2 * lru.getBytesPerValue());
+		MonitoredKernelCache cache = new MonitoredKernelCache(lru);
+		Example[] examples = createExamples(3);
+		for (Example example : examples) {
+			Assert.assertNull(cache.getKernelValue(example, example));
+			cache.setKernelValue(example, example, 1);
+		}
+		Assert.assertNotNull(cache.getKernelValue(examples[2], examples[2]));
+
+		CacheStats stats = cache.getStats();
+		Assert.assertEquals(1, stats.getHits());
+		Assert.assertEquals(3, stats.getMisses());
+		Assert.assertEquals(1, stats.getEvictions());
+		Assert.assertEquals(2 * lru.getBytesPerValue(), stats.getUsedBytes());
+		Assert.assertEquals(0.25, stats.getHitRate(), TOLERANCE);
+	}
+
+	@Test
+	public void monitoredCachesReportTheMemoryOfFixedSizeCaches() {
+		MonitoredKernelCache kernelCache = new MonitoredKernelCache(new FixIndexKernelCache(10));
+		MonitoredSquaredNormCache normCache = new MonitoredSquaredNormCache(new FixIndexSquaredNormCache(10));
+		Example[] examples = createExamples(2);
+		for (Example example : examples) {
+			Assert.assertNull(normCache.getSquaredNorm(example));
+			normCache.setSquaredNormValue(example, 2);
+		}
+		Assert.assertEquals(2, normCache.getSquaredNorm(examples[0]), TOLERANCE);
+
+		Assert.assertEquals(1, normCache.getStats().getHits());
+		Assert.assertEquals(2, normCache.getStats().getMisses());
+		Assert.assertEquals(10 * (4 + 8), normCache.getStats().getUsedBytes());
+		Assert.assertEquals(10 * 10 * 4 + 10 * 8, kernelCache.getStats().getUsedBytes());
+		// the overwrites of the caches of KeLP are not observable
+		Assert.assertEquals(-1, kernelCache.getStats().getEvictions());
+		Assert.assertTrue(kernelCache.getStats().toString().contains("usedBytes="));
+		Assert.assertFalse(kernelCache.getStats().toString().contains("evictions="));
+	}
+
+	@Test
+	public void slotCachesReportEvictionsAndUsedMemory() {
+		// three examples with consecutive ids, the first and the last one
+		// falling in the same slot of a two-slot cache
+		Example[] examples = createExamples(3);
+		MeasurableCache[] caches = new MeasurableCache[] { new SymmetricFixIndexKernelCache(2),
+				new OffHeapKernelCache(2), new ConcurrentKernelCache(1) };
+		long[] usedBytes = new long[] { 3 * 4 + 2 * 8, 3 * 4 + 2 * 8, 20 };
+		for (int c = 0; c < caches.length; c++) {
+			KernelCache cache = (KernelCache) caches[c];
+			Assert.assertEquals(0, caches[c].getUsedBytes());
+			for (Example example : examples) {
+				cache.setKernelValue(example, example, 1);
+			}
+			Assert.assertEquals(usedBytes[c], caches[c].getUsedBytes());
+			Assert.assertTrue(caches[c].getEvictions() > 0);
+			MonitoredKernelCache monitored = new MonitoredKernelCache(cache);
+			Assert.assertEquals(caches[c].getEvictions(), monitored.getStats().getEvictions());
+			Assert.assertTrue(monitored.getStats().toString().contains("evictions="));
+		}
+	}
+
+	@Test
+	public void statisticsArePublishedAsMBeans() throws Exception {
+		String name = "kernelCacheTest-norms";
+		MonitoredSquaredNormCache cache = new MonitoredSquaredNormCache(new FixIndexSquaredNormCache(10), name);
+		Example example = createExamples(1)[0];
+		cache.getSquaredNorm(example);
+		cache.setSquaredNormValue(example, 3);
+		cache.getSquaredNorm(example);
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName(CacheStats.JMX_DOMAIN + ":type=Cache,name=" + ObjectName.quote(name));
+		try {
+			Assert.assertTrue(server.isRegistered(objectName));
+			Assert.assertEquals(1L, server.getAttribute(objectName, "Hits"));
+			Assert.assertEquals(1L, server.getAttribute(objectName, "Misses"));
+			Assert.assertEquals(10L * (4 + 8), server.getAttribute(objectName, "UsedBytes"));
+			server.invoke(objectName, "reset", new Object[0], new String[0]);
+			Assert.assertEquals(0, cache.getStats().getHits());
+		} finally {
+			server.unregisterMBean(objectName);
+		}
+	}
+
+	@Test
+	public void contentHashKernelCacheIgnoresIdCollisions() throws Exception {
+		Example a = ExampleFactory.parseExample("+1 |BV:v| 1:1.0 2:2.0 |EV|");
+		Example b = ExampleFactory.parseExample("-1 |BV:v| 1:3.0 3:1.0 |EV|");
+		Example sameAsA = ExampleFactory.parseExample("-1 |BV:v| 1:1.0 2:2.0 |EV|");
+
+		ContentHashKernelCache cache = new ContentHashKernelCache(new SymmetricFixIndexKernelCache(100));
+		cache.setKernelValue(a, a, 5);
+		Assert.assertEquals(5, cache.getKernelValue(sameAsA, sameAsA), TOLERANCE);
+
+		// an example with the id of a, but a different content
+		b.setId(a.getId());
+		Assert.assertNull(cache.getKernelValue(b, b));
+	}
+
+	@Test
+	public void fingerprintsDoNotDependOnTheOrderOfTheFeatures() throws Exception {
+		StringBuilder forward = new StringBuilder();
+		StringBuilder backward = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			forward.append(" w").append(i).append(':').append(i + 1);
+			backward.insert(0, " w" + i + ":" + (i + 1));
+		}
+		Example a = ExampleFactory.parseExample("+1 |BV:v|" + forward + " |EV|");
+		Example b = ExampleFactory.parseExample("+1 |BV:v|" + backward + " |EV|");
+		Assert.assertEquals(ExampleFingerprint.of(a), ExampleFingerprint.of(b));
+
+		Example c = ExampleFactory.parseExample("+1 |BV:v| w0:2" + forward.substring(" w0:1".length()) + " |EV|");
+		Assert.assertNotEquals(ExampleFingerprint.of(a), ExampleFingerprint.of(c));
+	}
+
+	@Test
+	public void contentIdentitiesAreBounded() throws Exception {
+		Example a = ExampleFactory.parseExample("+1 |BV:v| 1:1.0 2:2.0 |EV|");
+		Example b = ExampleFactory.parseExample("-1 |BV:v| 1:3.0 3:1.0 |EV|");
+		Example c = ExampleFactory.parseExample("-1 |BV:v| 2:3.0 4:1.0 |EV|");
+		Example sameAsA = ExampleFactory.parseExample("-1 |BV:v| 1:1.0 2:2.0 |EV|");
+		Example sameAsC = ExampleFactory.parseExample("+1 |BV:v| 2:3.0 4:1.0 |EV|");
+
+		ContentIdentities identities = new ContentIdentities(2);
+		Example identityOfA = identities.getIdentity(a);
+		identities.getIdentity(b);
+		Example identityOfC = identities.getIdentity(c);
+		Assert.assertEquals(2, identities.size());
+
+		// the identity of a has been discarded, the one of c is still known
+		Assert.assertNotSame(identityOfA, identities.getIdentity(sameAsA));
+		Assert.assertSame(identityOfC, identities.getIdentity(sameAsC));
+		Assert.assertEquals(2, identities.size());
+	}
+
+	@Test
+	public void contentIdentitiesAreConsistentAmongThreads() throws Exception {
+		// more instances than the memo of the previous implementation, two
+		// instances for each content
+		final int contents = 6000;
+		final Example[] examples = new Example[contents * 2];
+		for (int i = 0; i < examples.length; i++) {
+			examples[i] = ExampleFactory.parseExample("+1 |BV:v| " + (i % contents) + ":1.0 |EV|");
+		}
+		final ContentIdentities identities = new ContentIdentities(ContentIdentities.DEFAULT_MAX_IDENTITIES);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Example[]>> results = new ArrayList<Future<Example[]>>();
+		for (int t = 0; t < 8; t++) {
+			final int offset = t * 1000;
+			results.add(executor.submit(new Callable<Example[]>() {
+				@Override
+				public Example[] call() {
+					Example[] found = new Example[examples.length];
+					for (int i = 0; i < examples.length; i++) {
+						int index = (i + offset) % examples.length;
+						found[index] = identities.getIdentity(examples[index]);
+					}
+					return found;
+				}
+			}));
+		}
+		try {
+			Example[] expected = results.get(0).get();
+			for (int i = 0; i < contents; i++) {
+				Assert.assertSame(expected[i], expected[i + contents]);
+			}
+			for (Future<Example[]> result : results) {
+				Assert.assertArrayEquals(expected, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(contents, identities.size());
+	}
+}
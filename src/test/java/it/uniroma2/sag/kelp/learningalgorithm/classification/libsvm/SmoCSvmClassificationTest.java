@@ -0,0 +1,253 @@
+package it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFactory;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.data.label.StringLabel;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.cache.FixSizeKernelCache;
+import it.uniroma2.sag.kelp.kernel.cache.KernelCache;
+import it.uniroma2.sag.kelp.kernel.standard.RbfKernel;
+import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
+import it.uniroma2.sag.kelp.predictionfunction.PredictionFunction;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BinaryKernelMachineClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryKernelMachineModel;
+import it.uniroma2.sag.kelp.predictionfunction.model.SupportVector;
+import it.uniroma2.sag.kelp.utils.JacksonSerializerWrapper;
+
+public class SmoCSvmClassificationTest {
+
+	private static final Label POSITIVE = new StringLabel("+1");
+
+	// the solutions are optimal up to the tolerance of the termination
+	// criterion of the solvers
+	private static final float TOLERANCE = 0.02f;
+
+	private static SimpleDataset createDataset(int size) throws Exception {
+		Random random = new Random(3);
+		SimpleDataset dataset = new SimpleDataset();
+		for (int i = 0; i < size; i++) {
+			float x1 = random.nextFloat();
+			float x2 = random.nextFloat();
+			boolean positive = x1 + x2 + 0.4f * (random.nextFloat() - 0.5f) > 1;
+			dataset.addExample(ExampleFactory
+					.parseExample((positive ? "+1" : "-1") + " |BV| 1:" + x1 + " 2:" + x2 + " |EV|"));
+		}
+		return dataset;
+	}
+
+	private static Kernel createKernel() {
+		return new RbfKernel(2f, new LinearKernel("0"));
+	}
+
+	private static SmoCSvmClassification createLearner(Kernel kernel, float c, int parallelism) {
+		SmoCSvmClassification learner = new SmoCSvmClassification(kernel, POSITIVE, c, c);
+		learner.setParallelism(parallelism);
+		return learner;
+	}
+
+	/**
+	 * @return the weight <code>y_i a_i</code> of each training example
+	 */
+	private static float[] getWeights(BinaryKernelMachineClassifier classifier, List<Example> examples) {
+		Map<Example, Float> weights = new IdentityHashMap<Example, Float>();
+		for (SupportVector supportVector : classifier.getModel().getSupportVectors()) {
+			weights.put(supportVector.getInstance(), supportVector.getWeight());
+		}
+		float[] result = new float[examples.size()];
+		for (int i = 0; i < result.length; i++) {
+			Float weight = weights.get(examples.get(i));
+			result[i] = weight == null ? 0 : weight;
+		}
+		return result;
+	}
+
+	private static void assertSameSolution(BinaryKernelMachineClassifier expected,
+			BinaryKernelMachineClassifier actual, List<Example> examples, float tolerance) {
+		Assert.assertArrayEquals(getWeights(expected, examples), getWeights(actual, examples), tolerance);
+		Assert.assertEquals(expected.getModel().getBias(), actual.getModel().getBias(), tolerance);
+	}
+
+	/**
+	 * @return the value of the dual objective function
+	 *         <code>0.5 a'Qa - e'a</code> at the solution of a classifier
+	 */
+	private static double getObjective(BinaryKernelMachineClassifier classifier, List<Example> examples) {
+		Kernel kernel = createKernel();
+		float[] weights = getWeights(classifier, examples);
+		double objective = 0;
+		for (int i = 0; i < weights.length; i++) {
+			if (weights[i] == 0) {
+				continue;
+			}
+			objective -= Math.abs(weights[i]);
+			for (int j = 0; j < weights.length; j++) {
+				if (weights[j] != 0) {
+					objective += 0.5 * weights[i] * weights[j] * kernel.innerProduct(examples.get(i), examples.get(j));
+				}
+			}
+		}
+		return objective;
+	}
+
+	private static BinaryKernelMachineClassifier learn(SmoCSvmClassification learner, SimpleDataset dataset) {
+		learner.learn(dataset);
+		return (BinaryKernelMachineClassifier) learner.getPredictionFunction();
+	}
+
+	@Test
+	public void solutionMatchesBinaryCSvmClassification() throws Exception {
+		SimpleDataset dataset = createDataset(60);
+		BinaryCSvmClassification reference = new BinaryCSvmClassification(createKernel(), POSITIVE, 1, 1);
+		reference.learn(dataset);
+		BinaryKernelMachineClassifier expected = (BinaryKernelMachineClassifier) reference.getPredictionFunction();
+
+		BinaryKernelMachineClassifier actual = learn(createLearner(createKernel(), 1, 1), dataset);
+
+		assertSameSolution(expected, actual, dataset.getExamples(), TOLERANCE);
+	}
+
+	@Test
+	public void parallelComputationGivesTheSameModel() throws Exception {
+		SimpleDataset dataset = createDataset(300);
+		BinaryKernelMachineClassifier sequential = learn(createLearner(createKernel(), 1, 1), dataset);
+		BinaryKernelMachineClassifier parallel = learn(createLearner(createKernel(), 1, 4), dataset);
+
+		assertSameSolution(sequential, parallel, dataset.getExamples(), 0);
+	}
+
+	@Test
+	public void allHeuristicsConvergeToTheSameSolution() throws Exception {
+		SimpleDataset dataset = createDataset(200);
+		List<Example> examples = dataset.getExamples();
+		BinaryKernelMachineClassifier expected = null;
+		for (boolean shrinking : new boolean[] { true, false }) {
+			for (boolean secondOrderSelection : new boolean[] { true, false }) {
+				SmoCSvmClassification learner = createLearner(createKernel(), 1, 1);
+				learner.setShrinking(shrinking);
+				learner.setSecondOrderSelection(secondOrderSelection);
+				BinaryKernelMachineClassifier actual = learn(learner, dataset);
+				if (expected == null) {
+					expected = actual;
+					continue;
+				}
+				Assert.assertEquals(getObjective(expected, examples), getObjective(actual, examples),
+						TOLERANCE * Math.abs(getObjective(expected, examples)));
+				Assert.assertEquals(expected.getModel().getBias(), actual.getModel().getBias(), TOLERANCE);
+			}
+		}
+	}
+
+	@Test
+	public void warmStartFromTheSameCRequiresFewerIterations() throws Exception {
+		SimpleDataset dataset = createDataset(200);
+		SmoCSvmClassification cold = createLearner(createKernel(), 1, 1);
+		BinaryKernelMachineClassifier expected = learn(cold, dataset);
+
+		SmoCSvmClassification warm = createLearner(createKernel(), 1, 1);
+		warm.setWarmStart(expected);
+		BinaryKernelMachineClassifier actual = learn(warm, dataset);
+
+		assertSameSolution(expected, actual, dataset.getExamples(), TOLERANCE);
+		Assert.assertTrue(warm.getIterations() < cold.getIterations());
+	}
+
+	@Test
+	public void warmStartFromASmallerCRequiresFewerIterations() throws Exception {
+		SimpleDataset dataset = createDataset(200);
+		SmoCSvmClassification cold = createLearner(createKernel(), 2, 1);
+		BinaryKernelMachineClassifier expected = learn(cold, dataset);
+
+		SmoCSvmClassification warm = createLearner(createKernel(), 2, 1);
+		warm.setWarmStart(learn(createLearner(createKernel(), 1, 1), dataset));
+		BinaryKernelMachineClassifier actual = learn(warm, dataset);
+
+		assertSameSolution(expected, actual, dataset.getExamples(), TOLERANCE);
+		Assert.assertTrue(warm.getIterations() < cold.getIterations());
+	}
+
+	@Test
+	public void warmStartFromADeserializedModelMatchesTheExamplesByContent() throws Exception {
+		SimpleDataset dataset = createDataset(200);
+		SmoCSvmClassification cold = createLearner(createKernel(), 1, 1);
+		BinaryKernelMachineClassifier expected = learn(cold, dataset);
+
+		JacksonSerializerWrapper serializer = new JacksonSerializerWrapper();
+		BinaryKernelMachineClassifier deserialized = (BinaryKernelMachineClassifier) serializer
+				.readValue(serializer.writeValueAsString(expected), PredictionFunction.class);
+		// the support vectors are copies of the training examples, none of
+		// them is found by identity
+		Assert.assertArrayEquals(new float[dataset.getNumberOfExamples()],
+				getWeights(deserialized, dataset.getExamples()), 0);
+
+		SmoCSvmClassification warm = createLearner(createKernel(), 1, 1);
+		warm.setWarmStart(deserialized);
+		BinaryKernelMachineClassifier actual = learn(warm, dataset);
+
+		assertSameSolution(expected, actual, dataset.getExamples(), TOLERANCE);
+		Assert.assertTrue(warm.getIterations() < cold.getIterations());
+	}
+
+	@Test
+	public void duplicateKeepsTheWarmStart() throws Exception {
+		SimpleDataset dataset = createDataset(60);
+		BinaryKernelMachineClassifier classifier = learn(createLearner(createKernel(), 1, 1), dataset);
+		SmoCSvmClassification learner = createLearner(createKernel(), 1, 1);
+		learner.setWarmStart(classifier);
+
+		Assert.assertSame(classifier, learner.duplicate().getWarmStart());
+	}
+
+	@Test
+	public void regularizationPathMatchesIndependentTrainings() throws Exception {
+		SimpleDataset dataset = createDataset(200);
+		List<Float> cValues = Arrays.asList(0.1f, 0.5f, 1f, 4f);
+		List<BinaryKernelMachineClassifier> path = new RegularizationPath(createLearner(createKernel(), 1, 1),
+				cValues).learn(dataset);
+
+		Assert.assertEquals(cValues.size(), path.size());
+		for (int k = 0; k < cValues.size(); k++) {
+			BinaryKernelMachineClassifier expected = learn(createLearner(createKernel(), cValues.get(k), 1), dataset);
+			assertSameSolution(expected, path.get(k), dataset.getExamples(), TOLERANCE * Math.max(1, cValues.get(k)));
+		}
+	}
+
+	@Test
+	public void computedKernelValuesAreWrittenToTheKernelCaches() throws Exception {
+		SimpleDataset dataset = createDataset(300);
+		List<Example> examples = dataset.getExamples();
+		for (int parallelism : new int[] { 1, 4 }) {
+			LinearKernel linear = new LinearKernel("0");
+			Kernel kernel = new RbfKernel(2f, linear);
+			KernelCache rbfCache = new FixSizeKernelCache(examples.size());
+			KernelCache linearCache = new FixSizeKernelCache(examples.size());
+			kernel.setKernelCache(rbfCache);
+			linear.setKernelCache(linearCache);
+
+			// without shrinking, the columns of the support vectors are
+			// computed on all the examples
+			SmoCSvmClassification learner = createLearner(kernel, 1, parallelism);
+			learner.setShrinking(false);
+			BinaryKernelMachineModel model = learn(learner, dataset).getModel();
+
+			Kernel reference = createKernel();
+			Example first = model.getSupportVectors().get(0).getInstance();
+			for (SupportVector supportVector : model.getSupportVectors()) {
+				Example other = supportVector.getInstance();
+				Assert.assertEquals(reference.innerProduct(first, other), rbfCache.getKernelValue(first, other),
+						0.00001f);
+				Assert.assertNotNull(linearCache.getKernelValue(first, other));
+			}
+		}
+	}
+}
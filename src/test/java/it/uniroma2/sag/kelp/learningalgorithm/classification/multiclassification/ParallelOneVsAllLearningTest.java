@@ -0,0 +1,174 @@
+package it.uniroma2.sag.kelp.learningalgorithm.classification.multiclassification;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFactory;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.cache.ConcurrentKernelCache;
+import it.uniroma2.sag.kelp.kernel.cache.FixIndexSquaredNormCache;
+import it.uniroma2.sag.kelp.kernel.cache.FixSizeKernelCache;
+import it.uniroma2.sag.kelp.kernel.cache.KernelCache;
+import it.uniroma2.sag.kelp.kernel.standard.PolynomialKernel;
+import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
+import it.uniroma2.sag.kelp.learningalgorithm.LearningAlgorithm;
+import it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm.BinaryCSvmClassification;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BinaryClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BinaryKernelMachineClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.ClassificationOutput;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.multiclass.OneVsAllClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryKernelMachineModel;
+import it.uniroma2.sag.kelp.predictionfunction.model.SupportVector;
+import it.uniroma2.sag.kelp.utils.JacksonSerializerWrapper;
+
+public class ParallelOneVsAllLearningTest {
+
+	private static final float TOLERANCE = 0.00001f;
+	private static final int PARALLELISM = 3;
+
+	private static SimpleDataset createDataset(int size, long seed) throws Exception {
+		String[] classes = new String[] { "a", "b", "c", "d" };
+		Random random = new Random(seed);
+		SimpleDataset dataset = new SimpleDataset();
+		for (int i = 0; i < size; i++) {
+			float[] features = new float[classes.length];
+			int best = 0;
+			for (int f = 0; f < features.length; f++) {
+				features[f] = random.nextFloat();
+				if (features[f] > features[best]) {
+					best = f;
+				}
+			}
+			StringBuilder line = new StringBuilder(classes[best]).append(" |BV|");
+			for (int f = 0; f < features.length; f++) {
+				line.append(' ').append(f + 1).append(':').append(features[f]);
+			}
+			dataset.addExample(ExampleFactory.parseExample(line.append(" |EV|").toString()));
+		}
+		return dataset;
+	}
+
+	private static Kernel createKernel(KernelCache kernelCache) {
+		LinearKernel linear = new LinearKernel("0");
+		linear.setSquaredNormCache(new FixIndexSquaredNormCache(1000));
+		Kernel kernel = new PolynomialKernel(2f, linear);
+		kernel.setKernelCache(kernelCache);
+		return kernel;
+	}
+
+	private static <T extends OneVsAllLearning> T configure(T learner, KernelCache kernelCache,
+			List<Label> labels) {
+		BinaryCSvmClassification svm = new BinaryCSvmClassification();
+		svm.setKernel(createKernel(kernelCache));
+		svm.setCp(1);
+		svm.setCn(2);
+		learner.setBaseAlgorithm(svm);
+		learner.setLabels(labels);
+		return learner;
+	}
+
+	private static float[] getWeights(BinaryKernelMachineModel model, List<Example> examples) {
+		Map<Example, Float> weights = new IdentityHashMap<Example, Float>();
+		for (SupportVector supportVector : model.getSupportVectors()) {
+			weights.put(supportVector.getInstance(), supportVector.getWeight());
+		}
+		float[] result = new float[examples.size()];
+		for (int i = 0; i < result.length; i++) {
+			Float weight = weights.get(examples.get(i));
+			result[i] = weight == null ? 0 : weight;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks that the binary models, and the predictions, of two one-vs-all
+	 * classifiers learned on the same dataset are the same
+	 */
+	private static void assertSameClassifiers(OneVsAllClassifier expected, OneVsAllClassifier actual,
+			SimpleDataset trainingSet, SimpleDataset testSet) {
+		BinaryClassifier[] expectedModels = expected.getBinaryClassifiers();
+		BinaryClassifier[] actualModels = actual.getBinaryClassifiers();
+		Assert.assertEquals(expectedModels.length, actualModels.length);
+		for (int i = 0; i < expectedModels.length; i++) {
+			Assert.assertEquals(expectedModels[i].getLabels(), actualModels[i].getLabels());
+			BinaryKernelMachineModel expectedModel = ((BinaryKernelMachineClassifier) expectedModels[i]).getModel();
+			BinaryKernelMachineModel actualModel = ((BinaryKernelMachineClassifier) actualModels[i]).getModel();
+			Assert.assertArrayEquals(getWeights(expectedModel, trainingSet.getExamples()),
+					getWeights(actualModel, trainingSet.getExamples()), TOLERANCE);
+			Assert.assertEquals(expectedModel.getBias(), actualModel.getBias(), TOLERANCE);
+		}
+		for (Example example : testSet.getExamples()) {
+			ClassificationOutput expectedOutput = expected.predict(example);
+			ClassificationOutput actualOutput = actual.predict(example);
+			Assert.assertEquals(expectedOutput.getPredictedClasses(), actualOutput.getPredictedClasses());
+			for (Label label : expected.getLabels()) {
+				Assert.assertEquals(expectedOutput.getScore(label), actualOutput.getScore(label), TOLERANCE);
+			}
+		}
+	}
+
+	private static OneVsAllClassifier learnSequentially(SimpleDataset trainingSet) {
+		OneVsAllLearning sequential = configure(new OneVsAllLearning(), new FixSizeKernelCache(1000),
+				trainingSet.getClassificationLabels());
+		sequential.learn(trainingSet);
+		return sequential.getPredictionFunction();
+	}
+
+	@Test
+	public void parallelTrainingGivesTheSameClassifiers() throws Exception {
+		SimpleDataset trainingSet = createDataset(300, 1);
+		SimpleDataset testSet = createDataset(100, 2);
+		OneVsAllClassifier expected = learnSequentially(trainingSet);
+
+		// a thread-safe cache is shared as it is, any other cache behind a lock
+		for (KernelCache kernelCache : new KernelCache[] { new ConcurrentKernelCache(100000),
+				new FixSizeKernelCache(1000) }) {
+			ParallelOneVsAllLearning parallel = configure(new ParallelOneVsAllLearning(PARALLELISM), kernelCache,
+					trainingSet.getClassificationLabels());
+			parallel.learn(trainingSet);
+			assertSameClassifiers(expected, parallel.getPredictionFunction(), trainingSet, testSet);
+		}
+	}
+
+	@Test
+	public void duplicateLearnsTheSameClassifiers() throws Exception {
+		SimpleDataset trainingSet = createDataset(300, 1);
+		SimpleDataset testSet = createDataset(100, 2);
+		OneVsAllClassifier expected = learnSequentially(trainingSet);
+
+		ParallelOneVsAllLearning parallel = configure(new ParallelOneVsAllLearning(PARALLELISM),
+				new ConcurrentKernelCache(100000), trainingSet.getClassificationLabels());
+		ParallelOneVsAllLearning copy = parallel.duplicate();
+		Assert.assertEquals(PARALLELISM, copy.getParallelism());
+		copy.learn(trainingSet);
+		assertSameClassifiers(expected, copy.getPredictionFunction(), trainingSet, testSet);
+	}
+
+	@Test
+	public void jsonDescriptionLearnsTheSameClassifiers() throws Exception {
+		SimpleDataset trainingSet = createDataset(300, 1);
+		SimpleDataset testSet = createDataset(100, 2);
+		OneVsAllClassifier expected = learnSequentially(trainingSet);
+
+		ParallelOneVsAllLearning parallel = configure(new ParallelOneVsAllLearning(PARALLELISM),
+				new ConcurrentKernelCache(100000), trainingSet.getClassificationLabels());
+		JacksonSerializerWrapper serializer = new JacksonSerializerWrapper();
+		String description = serializer.writeValueAsString(parallel);
+		Assert.assertTrue(description.contains("\"parallelOneVsAll\""));
+
+		LearningAlgorithm deserialized = serializer.readValue(description, LearningAlgorithm.class);
+		Assert.assertTrue(deserialized instanceof ParallelOneVsAllLearning);
+		Assert.assertEquals(PARALLELISM, ((ParallelOneVsAllLearning) deserialized).getParallelism());
+		deserialized.learn(trainingSet);
+		assertSameClassifiers(expected, ((ParallelOneVsAllLearning) deserialized).getPredictionFunction(),
+				trainingSet, testSet);
+	}
+}
@@ -0,0 +1,208 @@
+package it.uniroma2.sag.kelp.main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFactory;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.data.label.StringLabel;
+import it.uniroma2.sag.kelp.data.representation.Vector;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BinaryLinearClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BinaryMarginClassifierOutput;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryLinearModel;
+
+public class PredictionServerTest {
+
+	private static final float TOLERANCE = 0.0001f;
+	private static final Label LABEL = new StringLabel("a");
+
+	/**
+	 * A classifier whose predictions wait until they are released
+	 */
+	private static class BlockingClassifier extends BinaryLinearClassifier {
+		private final CountDownLatch entered = new CountDownLatch(1);
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		@Override
+		public BinaryMarginClassifierOutput predict(Example example) {
+			entered.countDown();
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return (BinaryMarginClassifierOutput) super.predict(example);
+		}
+	}
+
+	private static class Response {
+		private final int status;
+		private final String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+
+	private static String createLine(Random random) {
+		return "a |BV| 1:" + (random.nextFloat() - 0.5f) + " 2:" + (random.nextFloat() - 0.5f) + " 3:"
+				+ (random.nextFloat() - 0.5f) + " |EV|";
+	}
+
+	private static <T extends BinaryLinearClassifier> T initialize(T classifier) throws Exception {
+		BinaryLinearModel model = new BinaryLinearModel();
+		model.setRepresentation("0");
+		model.setHyperplane((Vector) ExampleFactory.parseExample(createLine(new Random(0))).getRepresentation("0"));
+		model.setBias(0.1f);
+		classifier.setModel(model);
+		classifier.setLabels(Arrays.asList(LABEL));
+		return classifier;
+	}
+
+	private static Response request(PredictionServer server, String method, String path, String body)
+			throws Exception {
+		URL url = new URL("http://127.0.0.1:" + server.getPort() + path);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod(method);
+		if (body != null) {
+			connection.setDoOutput(true);
+			OutputStream out = connection.getOutputStream();
+			out.write(body.getBytes("UTF-8"));
+			out.close();
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		if (in != null) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			in.close();
+		}
+		connection.disconnect();
+		return new Response(status, bytes.toString("UTF-8"));
+	}
+
+	private static Future<Response> requestInBackground(ExecutorService executor, final PredictionServer server,
+			final String body) {
+		return executor.submit(new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return request(server, "POST", "/predict", body);
+			}
+		});
+	}
+
+	@Test
+	public void concurrentRequestsAreClassifiedAsByTheClassifier() throws Exception {
+		final BinaryLinearClassifier classifier = initialize(new BinaryLinearClassifier());
+		final PredictionServer server = new PredictionServer(classifier, 4, 16, 2);
+		server.start(0);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<List<String>> requests = new ArrayList<List<String>>();
+			List<Future<Response>> responses = new ArrayList<Future<Response>>();
+			Random random = new Random(1);
+			for (int r = 0; r < 32; r++) {
+				List<String> lines = new ArrayList<String>();
+				StringBuilder body = new StringBuilder();
+				for (int i = 0; i < 1 + r % 7; i++) {
+					String line = createLine(random);
+					lines.add(line);
+					body.append(line).append('\n');
+				}
+				requests.add(lines);
+				responses.add(requestInBackground(executor, server, body.toString()));
+			}
+
+			for (int r = 0; r < requests.size(); r++) {
+				Response response = responses.get(r).get();
+				Assert.assertEquals(200, response.status);
+				String[] outputs = response.body.split("\n");
+				List<String> lines = requests.get(r);
+				Assert.assertEquals(lines.size(), outputs.length);
+				for (int i = 0; i < lines.size(); i++) {
+					float expected = classifier.predict(ExampleFactory.parseExample(lines.get(i))).getScore(LABEL);
+					String prefix = LABEL + ":";
+					Assert.assertTrue(outputs[i].startsWith(prefix));
+					Assert.assertEquals(expected, Float.parseFloat(outputs[i].substring(prefix.length())), TOLERANCE);
+				}
+			}
+
+			Response stats = request(server, "GET", "/stats", null);
+			Assert.assertEquals(200, stats.status);
+			Assert.assertTrue(stats.body.contains("queued\t0\n"));
+		} finally {
+			executor.shutdown();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void invalidRequestsAreRejected() throws Exception {
+		PredictionServer server = new PredictionServer(initialize(new BinaryLinearClassifier()), 2, 16, 2, 4);
+		server.start(0);
+		try {
+			Assert.assertEquals(405, request(server, "GET", "/predict", null).status);
+			Assert.assertEquals(400, request(server, "POST", "/predict", "\n \n").status);
+
+			StringBuilder body = new StringBuilder();
+			Random random = new Random(2);
+			for (int i = 0; i < 5; i++) {
+				body.append(createLine(random)).append('\n');
+			}
+			Assert.assertEquals(413, request(server, "POST", "/predict", body.toString()).status);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void requestsAreRejectedWhenTheQueueIsFull() throws Exception {
+		BlockingClassifier classifier = initialize(new BlockingClassifier());
+		PredictionServer server = new PredictionServer(classifier, 1, 1, 0, 2);
+		server.start(0);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Random random = new Random(3);
+			// the first example is being classified, the second one waits
+			Future<Response> first = requestInBackground(executor, server, createLine(random));
+			classifier.entered.await();
+			Future<Response> second = requestInBackground(executor, server, createLine(random));
+			while (server.getQueuedExamples() < 1) {
+				Thread.sleep(1);
+			}
+
+			// only one of these examples can be queued
+			Response rejected = request(server, "POST", "/predict", createLine(random) + "\n" + createLine(random));
+			Assert.assertEquals(503, rejected.status);
+
+			classifier.released.countDown();
+			Assert.assertEquals(200, first.get().status);
+			Assert.assertEquals(200, second.get().status);
+		} finally {
+			classifier.released.countDown();
+			executor.shutdown();
+			server.stop();
+		}
+	}
+}
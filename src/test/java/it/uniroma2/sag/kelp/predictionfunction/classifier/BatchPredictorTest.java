@@ -0,0 +1,182 @@
+package it.uniroma2.sag.kelp.predictionfunction.classifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFactory;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.data.label.StringLabel;
+import it.uniroma2.sag.kelp.data.representation.Vector;
+import it.uniroma2.sag.kelp.kernel.standard.PolynomialKernel;
+import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.multiclass.OneVsAllClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryKernelMachineModel;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryLinearModel;
+
+public class BatchPredictorTest {
+
+	private static final float TOLERANCE = 0.0001f;
+	private static final int PARALLELISM = 4;
+	private static final int BLOCK_SIZE = 16;
+
+	private static final List<Label> LABELS = Arrays.<Label> asList(new StringLabel("a"), new StringLabel("b"),
+			new StringLabel("c"));
+
+	private static List<Example> createExamples(int size, long seed) throws Exception {
+		Random random = new Random(seed);
+		List<Example> examples = new ArrayList<Example>();
+		for (int i = 0; i < size; i++) {
+			examples.add(ExampleFactory.parseExample("a |BV| 1:" + (random.nextFloat() - 0.5f) + " 2:"
+					+ (random.nextFloat() - 0.5f) + " 3:" + (random.nextFloat() - 0.5f) + " |EV|"));
+		}
+		return examples;
+	}
+
+	private static BinaryLinearClassifier createLinearClassifier(Label label, long seed) throws Exception {
+		BinaryLinearModel model = new BinaryLinearModel();
+		model.setRepresentation("0");
+		model.setHyperplane((Vector) createExamples(1, seed).get(0).getRepresentation("0"));
+		model.setBias(0.05f * seed);
+		BinaryLinearClassifier classifier = new BinaryLinearClassifier();
+		classifier.setModel(model);
+		classifier.setLabels(Arrays.asList(label));
+		return classifier;
+	}
+
+	private static BinaryKernelMachineClassifier createKernelClassifier(Label label, long seed) throws Exception {
+		BinaryKernelMachineModel model = new BinaryKernelMachineModel();
+		model.setKernel(new PolynomialKernel(2f, new LinearKernel("0")));
+		List<Example> supportVectors = createExamples(30, seed);
+		for (int i = 0; i < supportVectors.size(); i++) {
+			model.addExample(i % 2 == 0 ? 0.5f : -0.3f, supportVectors.get(i));
+		}
+		model.setBias(-0.1f * seed);
+		BinaryKernelMachineClassifier classifier = new BinaryKernelMachineClassifier();
+		classifier.setModel(model);
+		classifier.setLabels(Arrays.asList(label));
+		return classifier;
+	}
+
+	private static OneVsAllClassifier createOneVsAll(BinaryClassifier... binaryClassifiers) {
+		OneVsAllClassifier classifier = new OneVsAllClassifier();
+		classifier.setLabels(LABELS);
+		classifier.setBinaryClassifiers(binaryClassifiers);
+		return classifier;
+	}
+
+	/**
+	 * Checks that both <code>predict</code> and <code>predictAll</code> give
+	 * the outputs of the classifier, in the order of the examples
+	 */
+	private static void assertSamePredictions(Classifier classifier, List<Label> labels) throws Exception {
+		assertSamePredictions(new BatchPredictor(classifier, PARALLELISM, BLOCK_SIZE), labels);
+	}
+
+	private static void assertSamePredictions(BatchPredictor predictor, List<Label> labels) throws Exception {
+		Classifier classifier = predictor.getClassifier();
+		List<Example> examples = createExamples(10 * BLOCK_SIZE + 3, 11);
+		SimpleDataset dataset = new SimpleDataset();
+		for (Example example : examples) {
+			dataset.addExample(example);
+		}
+
+		Assert.assertTrue(predictor.isThreadSafe());
+		List<ClassificationOutput> outputs = predictor.predict(examples);
+		List<ClassificationOutput> datasetOutputs = predictor.predictAll(dataset);
+		predictor.close();
+
+		Assert.assertEquals(examples.size(), outputs.size());
+		Assert.assertEquals(examples.size(), datasetOutputs.size());
+		for (int i = 0; i < examples.size(); i++) {
+			ClassificationOutput expected = classifier.predict(examples.get(i));
+			for (Label label : labels) {
+				Assert.assertEquals(expected.getScore(label), outputs.get(i).getScore(label), TOLERANCE);
+				Assert.assertEquals(expected.getScore(label), datasetOutputs.get(i).getScore(label), TOLERANCE);
+			}
+			Assert.assertEquals(expected.getPredictedClasses(), outputs.get(i).getPredictedClasses());
+		}
+	}
+
+	@Test
+	public void linearClassifier() throws Exception {
+		assertSamePredictions(createLinearClassifier(LABELS.get(0), 1), LABELS.subList(0, 1));
+	}
+
+	@Test
+	public void kernelMachine() throws Exception {
+		assertSamePredictions(createKernelClassifier(LABELS.get(0), 1), LABELS.subList(0, 1));
+	}
+
+	@Test
+	public void oneVsAllOfLinearClassifiers() throws Exception {
+		assertSamePredictions(createOneVsAll(createLinearClassifier(LABELS.get(0), 1),
+				createLinearClassifier(LABELS.get(1), 2), createLinearClassifier(LABELS.get(2), 3)), LABELS);
+	}
+
+	@Test
+	public void oneVsAllOfKernelMachines() throws Exception {
+		assertSamePredictions(createOneVsAll(createKernelClassifier(LABELS.get(0), 1),
+				createKernelClassifier(LABELS.get(1), 2), createKernelClassifier(LABELS.get(2), 3)), LABELS);
+	}
+
+	@Test
+	public void givenExecutorsAreNotShutDown() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+		try {
+			assertSamePredictions(new BatchPredictor(createKernelClassifier(LABELS.get(0), 1), PARALLELISM,
+					BLOCK_SIZE, executor), LABELS.subList(0, 1));
+			Assert.assertFalse(executor.isShutdown());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Without an executor, the blocks are classified by the threads invoking
+	 * the predictor, as the workers of Classify do
+	 */
+	@Test
+	public void blocksAreClassifiedByTheCallingThreads() throws Exception {
+		Classifier classifier = createOneVsAll(createKernelClassifier(LABELS.get(0), 1),
+				createKernelClassifier(LABELS.get(1), 2), createKernelClassifier(LABELS.get(2), 3));
+		final BatchPredictor predictor = new BatchPredictor(classifier, PARALLELISM, BLOCK_SIZE, null);
+		List<Example> examples = createExamples(10 * BLOCK_SIZE + 3, 12);
+		ExecutorService workers = Executors.newFixedThreadPool(PARALLELISM);
+		List<Future<List<ClassificationOutput>>> blocks = new ArrayList<Future<List<ClassificationOutput>>>();
+		try {
+			for (int from = 0; from < examples.size(); from += BLOCK_SIZE) {
+				final List<Example> block = examples.subList(from, Math.min(examples.size(), from + BLOCK_SIZE));
+				blocks.add(workers.submit(new Callable<List<ClassificationOutput>>() {
+					@Override
+					public List<ClassificationOutput> call() {
+						return predictor.predict(block);
+					}
+				}));
+			}
+			int i = 0;
+			for (Future<List<ClassificationOutput>> block : blocks) {
+				for (ClassificationOutput output : block.get()) {
+					ClassificationOutput expected = classifier.predict(examples.get(i++));
+					for (Label label : LABELS) {
+						Assert.assertEquals(expected.getScore(label), output.getScore(label), TOLERANCE);
+					}
+				}
+			}
+			Assert.assertEquals(examples.size(), i);
+		} finally {
+			workers.shutdown();
+		}
+		assertSamePredictions(predictor, LABELS);
+	}
+}
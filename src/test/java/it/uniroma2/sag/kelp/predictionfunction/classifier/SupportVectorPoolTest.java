@@ -0,0 +1,108 @@
+package it.uniroma2.sag.kelp.predictionfunction.classifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.ExampleFactory;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.data.label.StringLabel;
+import it.uniroma2.sag.kelp.kernel.standard.PolynomialKernel;
+import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.multiclass.OneVsAllClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryKernelMachineModel;
+
+public class SupportVectorPoolTest {
+
+	private static final float TOLERANCE = 0.0001f;
+
+	private static final List<Label> LABELS = Arrays.<Label> asList(new StringLabel("a"), new StringLabel("b"),
+			new StringLabel("c"));
+
+	private static List<String> createLines(int size, long seed) {
+		Random random = new Random(seed);
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < size; i++) {
+			lines.add("a |BV| 1:" + random.nextFloat() + " 2:" + random.nextFloat() + " 3:" + random.nextFloat()
+					+ " |EV|");
+		}
+		return lines;
+	}
+
+	private static List<Example> parse(List<String> lines) throws Exception {
+		List<Example> examples = new ArrayList<Example>();
+		for (String line : lines) {
+			examples.add(ExampleFactory.parseExample(line));
+		}
+		return examples;
+	}
+
+	private static BinaryKernelMachineClassifier createClassifier(Label label, List<Example> supportVectors,
+			float bias) {
+		BinaryKernelMachineModel model = new BinaryKernelMachineModel();
+		// each model has its own kernel object, with the same description
+		model.setKernel(new PolynomialKernel(2f, new LinearKernel("0")));
+		for (int i = 0; i < supportVectors.size(); i++) {
+			model.addExample(i % 3 == 0 ? -0.5f : 0.25f + i * 0.01f, supportVectors.get(i));
+		}
+		model.setBias(bias);
+		BinaryKernelMachineClassifier classifier = new BinaryKernelMachineClassifier();
+		classifier.setModel(model);
+		classifier.setLabels(Arrays.asList(label));
+		return classifier;
+	}
+
+	@Test
+	public void sharedSupportVectorsAreMergedByIdentityAndByContent() throws Exception {
+		List<String> lines = createLines(15, 5);
+		List<Example> examples = parse(lines);
+		// content copies of the same examples, i.e. different objects
+		List<Example> copies = parse(lines);
+
+		// a: examples 0-9
+		// b: the same objects 0-4, content copies 5-9, examples 10-14
+		// c: content copies 10-14
+		List<Example> a = examples.subList(0, 10);
+		List<Example> b = new ArrayList<Example>(examples.subList(0, 5));
+		b.addAll(copies.subList(5, 10));
+		b.addAll(examples.subList(10, 15));
+		List<Example> c = copies.subList(10, 15);
+
+		OneVsAllClassifier classifier = new OneVsAllClassifier();
+		classifier.setLabels(LABELS);
+		classifier.setBinaryClassifiers(new BinaryClassifier[] { createClassifier(LABELS.get(0), a, 0.1f),
+				createClassifier(LABELS.get(1), b, -0.2f), createClassifier(LABELS.get(2), c, 0.3f) });
+
+		ParallelKernelClassifier parallel = new ParallelKernelClassifier(classifier, 4);
+		SupportVectorPool pool = parallel.getSupportVectorPool();
+		Assert.assertEquals(a.size() + b.size() + c.size(), pool.getNumberOfModelSupportVectors());
+		Assert.assertEquals(examples.size(), pool.getNumberOfSupportVectors());
+		Assert.assertTrue(pool.getNumberOfSupportVectors() < pool.getNumberOfModelSupportVectors());
+
+		for (Example example : parse(createLines(40, 6))) {
+			ClassificationOutput expected = classifier.predict(example);
+			ClassificationOutput actual = parallel.predict(example);
+			for (Label label : LABELS) {
+				Assert.assertEquals(expected.getScore(label), actual.getScore(label), TOLERANCE);
+			}
+		}
+		parallel.close();
+	}
+
+	@Test
+	public void supportVectorsOfDifferentKernelsAreNotMerged() throws Exception {
+		List<Example> examples = parse(createLines(10, 5));
+		BinaryKernelMachineClassifier first = createClassifier(LABELS.get(0), examples, 0);
+		BinaryKernelMachineClassifier second = createClassifier(LABELS.get(1), examples, 0);
+		second.getModel().setKernel(new PolynomialKernel(3f, new LinearKernel("0")));
+
+		SupportVectorPool pool = SupportVectorPool.of(Arrays.asList(first.getModel(), second.getModel()));
+		Assert.assertEquals(2 * examples.size(), pool.getNumberOfSupportVectors());
+		Assert.assertEquals(2, pool.getKernels().size());
+	}
+}
@@ -0,0 +1,67 @@
+package it.uniroma2.sag.kelp.utils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.dataset.MappedExample;
+import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.kernel.standard.NormalizationKernel;
+import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BatchPredictor;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.BinaryKernelMachineClassifier;
+import it.uniroma2.sag.kelp.predictionfunction.classifier.ClassificationOutput;
+import it.uniroma2.sag.kelp.predictionfunction.model.BinaryKernelMachineModel;
+import it.uniroma2.sag.kelp.predictionfunction.model.SupportVector;
+
+public class BinarySerializerWrapperTest {
+
+	private static final float TOLERANCE = 0.0001f;
+
+	@Test
+	public void mappedModelIsDecodedOnlyAtTheFirstPrediction() throws Exception {
+		SimpleDataset dataset = new SimpleDataset();
+		dataset.populate("src/test/resources/dataset_reader_test.klp.gz");
+		Label label = dataset.getExample(0).getLabels()[0];
+
+		BinaryKernelMachineModel model = new BinaryKernelMachineModel();
+		model.setKernel(new NormalizationKernel(new LinearKernel("0")));
+		for (int i = 0; i < dataset.getNumberOfExamples(); i++) {
+			model.addExample(i % 2 == 0 ? 0.5f : -0.25f, dataset.getExample(i));
+		}
+		model.setBias(0.1f);
+		BinaryKernelMachineClassifier classifier = new BinaryKernelMachineClassifier();
+		classifier.setModel(model);
+		classifier.setLabels(Arrays.asList(label));
+
+		File modelFile = File.createTempFile("mapped_model", BinarySerializerWrapper.FILE_EXTENSION);
+		modelFile.deleteOnExit();
+		BinarySerializerWrapper serializer = new BinarySerializerWrapper();
+		serializer.writeValueOnFile(classifier, modelFile.getAbsolutePath());
+
+		BinaryKernelMachineClassifier mapped = serializer.openModel(modelFile, BinaryKernelMachineClassifier.class);
+		List<SupportVector> supportVectors = mapped.getModel().getSupportVectors();
+		Assert.assertEquals(dataset.getNumberOfExamples(), supportVectors.size());
+
+		BatchPredictor predictor = new BatchPredictor(mapped);
+		for (SupportVector supportVector : supportVectors) {
+			Assert.assertTrue(supportVector.getInstance() instanceof MappedExample);
+			Assert.assertFalse(((MappedExample) supportVector.getInstance()).isDecoded());
+		}
+
+		Example example = dataset.getExample(0);
+		List<ClassificationOutput> outputs = predictor.predict(Arrays.asList(example));
+		boolean decoded = false;
+		for (SupportVector supportVector : supportVectors) {
+			decoded |= ((MappedExample) supportVector.getInstance()).isDecoded();
+		}
+		Assert.assertTrue(decoded);
+		Assert.assertEquals(classifier.predict(example).getScore(label), outputs.get(0).getScore(label), TOLERANCE);
+		predictor.close();
+	}
+}
@@ -0,0 +1,48 @@
+package it.uniroma2.sag.kelp.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyRecorderTest {
+
+	private static final double TOLERANCE = 0.000001;
+	private static final long MILLISECOND = 1000000;
+
+	@Test
+	public void percentilesFollowTheNearestRankMethod() {
+		LatencyRecorder recorder = new LatencyRecorder();
+		// recorded in a shuffled order
+		for (int i = 0; i < 100; i++) {
+			recorder.record(((i * 37) % 100 + 1) * MILLISECOND);
+		}
+		Assert.assertEquals(100, recorder.getCount());
+		Assert.assertEquals(50.5, recorder.getMeanMillis(), TOLERANCE);
+		Assert.assertEquals(1, recorder.getPercentileMillis(1), TOLERANCE);
+		Assert.assertEquals(50, recorder.getPercentileMillis(50), TOLERANCE);
+		Assert.assertEquals(51, recorder.getPercentileMillis(50.5), TOLERANCE);
+		Assert.assertEquals(99, recorder.getPercentileMillis(99), TOLERANCE);
+		Assert.assertEquals(100, recorder.getPercentileMillis(100), TOLERANCE);
+	}
+
+	@Test
+	public void percentilesConsiderOnlyTheRecentLatencies() {
+		LatencyRecorder recorder = new LatencyRecorder(10);
+		for (int i = 1; i <= 20; i++) {
+			recorder.record(i * MILLISECOND);
+		}
+		// the mean covers all the latencies, the percentiles the last 10
+		Assert.assertEquals(20, recorder.getCount());
+		Assert.assertEquals(10.5, recorder.getMeanMillis(), TOLERANCE);
+		Assert.assertEquals(11, recorder.getPercentileMillis(1), TOLERANCE);
+		Assert.assertEquals(15, recorder.getPercentileMillis(50), TOLERANCE);
+		Assert.assertEquals(20, recorder.getPercentileMillis(99), TOLERANCE);
+	}
+
+	@Test
+	public void emptyRecordersReportZero() {
+		LatencyRecorder recorder = new LatencyRecorder();
+		Assert.assertEquals(0, recorder.getCount());
+		Assert.assertEquals(0, recorder.getMeanMillis(), TOLERANCE);
+		Assert.assertEquals(0, recorder.getPercentileMillis(99), TOLERANCE);
+	}
+}
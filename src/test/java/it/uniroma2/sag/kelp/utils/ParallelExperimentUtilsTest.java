@@ -0,0 +1,102 @@
+package it.uniroma2.sag.kelp.utils;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.dataset.SimpleDataset;
+import it.uniroma2.sag.kelp.data.example.ExampleFactory;
+import it.uniroma2.sag.kelp.data.label.Label;
+import it.uniroma2.sag.kelp.data.label.StringLabel;
+import it.uniroma2.sag.kelp.kernel.Kernel;
+import it.uniroma2.sag.kelp.kernel.cache.FixSizeKernelCache;
+import it.uniroma2.sag.kelp.kernel.standard.PolynomialKernel;
+import it.uniroma2.sag.kelp.kernel.vector.LinearKernel;
+import it.uniroma2.sag.kelp.learningalgorithm.classification.libsvm.BinaryCSvmClassification;
+import it.uniroma2.sag.kelp.learningalgorithm.classification.multiclassification.OneVsAllLearning;
+import it.uniroma2.sag.kelp.learningalgorithm.classification.passiveaggressive.KernelizedPassiveAggressiveClassification;
+import it.uniroma2.sag.kelp.utils.evaluation.BinaryClassificationEvaluator;
+import it.uniroma2.sag.kelp.utils.evaluation.MulticlassClassificationEvaluator;
+
+public class ParallelExperimentUtilsTest {
+
+	private static final int FOLDS = 4;
+	private static final float TOLERANCE = 0.00001f;
+
+	private static SimpleDataset createDataset(String[] classes, int size) throws Exception {
+		Random random = new Random(17);
+		SimpleDataset dataset = new SimpleDataset();
+		for (int i = 0; i < size; i++) {
+			StringBuilder line = new StringBuilder();
+			float[] features = new float[classes.length * 2];
+			int best = 0;
+			for (int f = 0; f < features.length; f++) {
+				features[f] = random.nextFloat();
+				if (f % 2 == 0 && features[f] > features[best]) {
+					best = f;
+				}
+			}
+			line.append(classes[best / 2]).append(" |BV|");
+			for (int f = 0; f < features.length; f++) {
+				line.append(' ').append(f + 1).append(':').append(features[f]);
+			}
+			line.append(" |EV|");
+			dataset.addExample(ExampleFactory.parseExample(line.toString()));
+		}
+		return dataset;
+	}
+
+	private static Kernel createKernel() {
+		Kernel kernel = new PolynomialKernel(2f, new LinearKernel("0"));
+		kernel.setKernelCache(new FixSizeKernelCache(1000));
+		return kernel;
+	}
+
+	@Test
+	public void parallelBinaryFoldsMatchSequentialCrossValidation() throws Exception {
+		SimpleDataset dataset = createDataset(new String[] { "+1", "-1" }, 80);
+		Label positive = new StringLabel("+1");
+
+		List<BinaryClassificationEvaluator> sequential = ExperimentUtils.nFoldCrossValidation(FOLDS,
+				new BinaryCSvmClassification(createKernel(), positive, 1, 1), dataset,
+				new BinaryClassificationEvaluator(positive));
+		List<BinaryClassificationEvaluator> parallel = ParallelExperimentUtils.nFoldCrossValidation(FOLDS,
+				new BinaryCSvmClassification(createKernel(), positive, 1, 1), dataset,
+				new BinaryClassificationEvaluator(positive), FOLDS);
+
+		Assert.assertEquals(sequential.size(), parallel.size());
+		for (int f = 0; f < sequential.size(); f++) {
+			Assert.assertEquals(sequential.get(f).getAccuracy(), parallel.get(f).getAccuracy(), TOLERANCE);
+			Assert.assertEquals(sequential.get(f).getPrecision(), parallel.get(f).getPrecision(), TOLERANCE);
+			Assert.assertEquals(sequential.get(f).getRecall(), parallel.get(f).getRecall(), TOLERANCE);
+		}
+	}
+
+	@Test
+	public void parallelOneVsAllFoldsMatchSequentialCrossValidation() throws Exception {
+		SimpleDataset dataset = createDataset(new String[] { "a", "b", "c" }, 90);
+		List<Label> classes = dataset.getClassificationLabels();
+
+		List<MulticlassClassificationEvaluator> sequential = ExperimentUtils.nFoldCrossValidation(FOLDS,
+				createOneVsAll(classes), dataset, new MulticlassClassificationEvaluator(classes));
+		List<MulticlassClassificationEvaluator> parallel = ParallelExperimentUtils.nFoldCrossValidation(FOLDS,
+				createOneVsAll(classes), dataset, new MulticlassClassificationEvaluator(classes), FOLDS);
+
+		Assert.assertEquals(sequential.size(), parallel.size());
+		for (int f = 0; f < sequential.size(); f++) {
+			Assert.assertEquals(sequential.get(f).getAccuracy(), parallel.get(f).getAccuracy(), TOLERANCE);
+		}
+	}
+
+	private static OneVsAllLearning createOneVsAll(List<Label> classes) {
+		KernelizedPassiveAggressiveClassification passiveAggressive = new KernelizedPassiveAggressiveClassification();
+		passiveAggressive.setC(2f);
+		passiveAggressive.setKernel(createKernel());
+		OneVsAllLearning oneVsAll = new OneVsAllLearning();
+		oneVsAll.setBaseAlgorithm(passiveAggressive);
+		oneVsAll.setLabels(classes);
+		return oneVsAll;
+	}
+}